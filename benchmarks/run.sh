@@ -0,0 +1,12 @@
+#! /usr/bin/env bash
+
+# Run the benchmarks and write a JSON report named after the date and the commit to results/.
+# Arguments are passed to JMH, e.g. ./run.sh TurnWeightBenchmark -prof gc
+
+set -euo pipefail
+
+cd "$(dirname "$0")"
+mkdir -p results
+REPORT=results/$(date -u +%Y%m%dT%H%M%SZ)-$(git rev-parse --short HEAD).json
+java -jar target/benchmarks.jar -rf json -rff "$REPORT" "$@"
+echo "Report written to $REPORT"
@@ -0,0 +1,116 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.util.FlagEncoder;
+
+import de.geofabrik.railway_routing.RailFlagEncoderFactory;
+import de.geofabrik.railway_routing.util.MultiValueChecker;
+
+/**
+ * Cost of the access check of a way for an increasing number of profiles.
+ *
+ * Every invocation evaluates fresh copies of the ways because the parsed tags are cached in the
+ * way. The <code>legacy</code> benchmark parses the tags for every encoder like the previous
+ * implementation did.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessBenchmark {
+
+    /** tags of typical railway tracks in Europe */
+    static final String[][] WAY_TAGS = {
+            {"railway", "rail", "gauge", "1435", "electrified", "contact_line", "voltage", "15000", "frequency", "16.7"},
+            {"railway", "rail", "gauge", "1435", "electrified", "contact_line", "voltage", "25000", "frequency", "50"},
+            {"railway", "rail", "gauge", "1435", "electrified", "contact_line", "voltage", "1500", "frequency", "0"},
+            {"railway", "rail", "gauge", "1435", "electrified", "contact_line", "voltage", "3000", "frequency", "0"},
+            {"railway", "rail", "gauge", "1435;1668", "electrified", "contact_line", "voltage", "25000;3000", "frequency", "50;0"},
+            {"railway", "rail", "gauge", "1435", "electrified", "no", "service", "siding"},
+            {"railway", "rail", "gauge", "1000", "electrified", "contact_line", "voltage", "11000", "frequency", "16.7"},
+            {"railway", "rail", "gauge", "1520", "electrified", "contact_line", "voltage", "3000", "frequency", "0"},
+            {"railway", "rail", "gauge", "1435", "service", "yard"},
+            {"railway", "rail", "gauge", "1435", "electrified", "rail", "voltage", "750", "frequency", "0"},
+    };
+
+    @Param({"1", "2", "5"})
+    public int profiles;
+
+    private FlagEncoder[] encoders;
+    private ReaderWay[] ways;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] names = RailFlagEncoderFactory.getKnownEncoderNames();
+        encoders = new FlagEncoder[profiles];
+        for (int i = 0; i < profiles; ++i) {
+            encoders[i] = RailFlagEncoderFactory.createFlagEncoder(names[i % names.length]);
+        }
+        ways = new ReaderWay[WAY_TAGS.length];
+    }
+
+    @Setup(Level.Invocation)
+    public void createWays() {
+        for (int i = 0; i < WAY_TAGS.length; ++i) {
+            ways[i] = createWay(i, WAY_TAGS[i]);
+        }
+    }
+
+    static ReaderWay createWay(long id, String[] tags) {
+        ReaderWay way = new ReaderWay(id);
+        for (int t = 0; t < tags.length; t += 2) {
+            way.setTag(tags[t], tags[t + 1]);
+        }
+        return way;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void sharedAttributes(Blackhole bh) {
+        for (ReaderWay way : ways) {
+            for (FlagEncoder encoder : encoders) {
+                bh.consume(encoder.getAccess(way));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void legacy(Blackhole bh) {
+        ArrayList<Integer> gauges = new ArrayList<Integer>(Arrays.asList(1435));
+        ArrayList<Integer> voltages = new ArrayList<Integer>(Arrays.asList(15000, 25000));
+        ArrayList<Double> frequencies = new ArrayList<Double>(Arrays.asList(16.7, 16.67, 50.0));
+        for (ReaderWay way : ways) {
+            for (int e = 0; e < encoders.length; ++e) {
+                Map<String, Object> tags = way.getTags();
+                boolean access = tags.containsKey("railway")
+                        && MultiValueChecker.tagContainsInt(way.getTag("gauge"), gauges, true)
+                        && MultiValueChecker.tagContainsInt(way.getTag("voltage"), voltages, true)
+                        && MultiValueChecker.tagContainsDouble(way.getTag("frequency"), frequencies, true);
+                bh.consume(access);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.matching.Observation;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.http.TrackMatcher;
+import de.geofabrik.railway_routing.util.GpxTrackReader;
+
+/**
+ * Throughput of map matching in tracks per second, one track after another like the single
+ * track endpoint and in parallel like the batch endpoint.
+ *
+ * The tracks are read from the GPX files in the directory given by
+ * <code>benchmark.gpx_dir</code>. They have to be located within the extract. The throughput is
+ * reported as secondary result <code>tracks</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 30)
+@Measurement(iterations = 3, time = 30)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class BatchMatchingBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int threads;
+
+    private RailwayHopper hopper;
+    private List<List<Observation>> tracks;
+    private ExecutorService executor;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long tracks;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String location = System.getProperty("benchmark.graph_location", "./benchmark-graphs") + "/flexible";
+        hopper = CountryExtract.importOrLoad(location, "no");
+        String dir = System.getProperty("benchmark.gpx_dir");
+        if (dir == null) {
+            throw new IllegalStateException("Please set the directory containing the GPX tracks using -Dbenchmark.gpx_dir=<dir>");
+        }
+        tracks = new ArrayList<List<Observation>>();
+        File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".gpx"));
+        for (File f : files) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+                for (GpxTrackReader.Track trk : GpxTrackReader.read(in)) {
+                    tracks.add(TrackMatcher.toObservations(trk.getPoints()));
+                }
+            }
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        hopper.close();
+    }
+
+    private TrackMatcher createMatcher() {
+        return new TrackMatcher(hopper, hopper.getEncodingManager())
+                .setVehicle(CountryExtract.getProfile())
+                .setInstructions(false);
+    }
+
+    private static boolean matchOrFail(TrackMatcher matcher, List<Observation> track) {
+        try {
+            matcher.match(track);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Match all tracks one after another like single requests to /match.
+     */
+    @Benchmark
+    public int singleRequests(Counters counters) {
+        int matched = 0;
+        for (List<Observation> track : tracks) {
+            if (matchOrFail(createMatcher(), track)) {
+                ++matched;
+            }
+        }
+        counters.tracks += tracks.size();
+        return matched;
+    }
+
+    /**
+     * Match all tracks in parallel like a request to /match/batch.
+     */
+    @Benchmark
+    public int batch(Counters counters) throws InterruptedException, ExecutionException {
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(tracks.size());
+        for (List<Observation> track : tracks) {
+            futures.add(executor.submit(() -> matchOrFail(createMatcher(), track)));
+        }
+        int matched = 0;
+        for (Future<Boolean> f : futures) {
+            if (f.get()) {
+                ++matched;
+            }
+        }
+        counters.tracks += tracks.size();
+        return matched;
+    }
+}
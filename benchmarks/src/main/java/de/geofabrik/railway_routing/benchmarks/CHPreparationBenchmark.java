@@ -0,0 +1,60 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.util.Helper;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+
+/**
+ * Duration of the import of a country extract with and without the preparation of edge-based
+ * contraction hierarchies. The difference is the preparation time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class CHPreparationBenchmark {
+
+    @Param({"no", "fastest"})
+    public String chWeightings;
+
+    private File location;
+
+    @Setup(Level.Iteration)
+    public void createDirectory() throws IOException {
+        location = Files.createTempDirectory("railway_routing-ch").toFile();
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeDirectory() {
+        Helper.removeDir(location);
+    }
+
+    @Benchmark
+    public int importAndPrepare() {
+        RailwayHopper hopper = CountryExtract.importOrLoad(location.getAbsolutePath(), chWeightings);
+        int nodes = hopper.getGraphHopperStorage().getNodes();
+        hopper.close();
+        return nodes;
+    }
+}
@@ -0,0 +1,65 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.Collections;
+
+import com.graphhopper.util.CmdArgs;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.http.FlagEncoderConfiguration;
+
+/**
+ * Graphs of a real OSM extract for the routing benchmarks.
+ *
+ * The extract is given by the system property <code>benchmark.osm_file</code>, the profile by
+ * <code>benchmark.profile</code> (default: freight_diesel).
+ */
+class CountryExtract {
+
+    static final String OSM_FILE_PROPERTY = "benchmark.osm_file";
+    static final String PROFILE_PROPERTY = "benchmark.profile";
+
+    static String getOSMFile() {
+        String file = System.getProperty(OSM_FILE_PROPERTY);
+        if (file == null || file.isEmpty()) {
+            throw new IllegalStateException("Please set the path to an OSM extract using -D" + OSM_FILE_PROPERTY + "=<file>");
+        }
+        return file;
+    }
+
+    static String getProfile() {
+        return System.getProperty(PROFILE_PROPERTY, "freight_diesel");
+    }
+
+    /**
+     * Import the extract or load the graph if it exists already.
+     *
+     * @param location graph directory
+     * @param chWeightings value of prepare.ch.weightings, "no" disables CH
+     */
+    static RailwayHopper importOrLoad(String location, String chWeightings) {
+        return importOrLoad(location, chWeightings, "no");
+    }
+
+    /**
+     * Import the extract or load the graph if it exists already.
+     *
+     * @param location graph directory
+     * @param chWeightings value of prepare.ch.weightings, "no" disables CH
+     * @param lmWeightings value of prepare.lm.weightings, "no" disables landmarks
+     */
+    static RailwayHopper importOrLoad(String location, String chWeightings, String lmWeightings) {
+        CmdArgs args = new CmdArgs();
+        args.put("datareader.file", getOSMFile());
+        args.put("graph.location", location);
+        args.put("profiles", getProfile());
+        args.put("prepare.ch.weightings", chWeightings);
+        args.put("prepare.ch.edge_based", "edge_or_node");
+        args.put("prepare.lm.weightings", lmWeightings);
+        args.put("routing.lm.disabling_allowed", true);
+        args.put("prepare.min_network_size", 0);
+        RailwayHopper hopper = new RailwayHopper(args, Collections.<FlagEncoderConfiguration>emptyList());
+        hopper.setGraphHopperLocation(location);
+        hopper.importOrLoad();
+        return hopper;
+    }
+}
@@ -0,0 +1,117 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.railway_routing.http.CsvPathOutput;
+
+/**
+ * CSV output of a matched path with 100,000 points.
+ *
+ * <code>stringBuilder</code> is a copy of the previous implementation which built the whole
+ * response as string. The output is written to a stream which only counts the bytes. The
+ * secondary result <code>bytes</code> is the throughput in bytes per second. Run with
+ * <code>-prof gc</code> to get the allocation per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvOutputBenchmark {
+
+    private static final int POINTS = 100_000;
+
+    private PathWrapper path;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Output stream discarding everything.
+     */
+    static class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        PointList points = new PointList(POINTS, false);
+        double lat = 52.5;
+        double lon = 13.4;
+        for (int i = 0; i < POINTS; ++i) {
+            lat += 0.00013579;
+            lon += 0.00024681;
+            points.add(lat, lon);
+        }
+        path = new PathWrapper();
+        path.setPoints(points);
+    }
+
+    private static String getCSVOutput(PathWrapper path, char separator) {
+        PointList points = path.getPoints();
+        StringBuilder str = new StringBuilder(points.getSize() * 2 * 15);
+        str.append("longitude").append(separator).append("latitude\n");
+        for (int i = 0; i < points.getSize(); ++i) {
+            str.append(Double.toString(points.getLon(i)))
+                .append(separator)
+                .append(Double.toString(points.getLat(i)))
+                .append('\n');
+        }
+        return str.toString();
+    }
+
+    @Benchmark
+    public long stringBuilder(Counters counters) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        out.write(getCSVOutput(path, ';').getBytes(StandardCharsets.UTF_8));
+        counters.bytes += out.count;
+        return out.count;
+    }
+
+    @Benchmark
+    public long streaming(Counters counters) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        new CsvPathOutput(path, ';', Collections.<String>emptyList()).write(out);
+        counters.bytes += out.count;
+        return out.count;
+    }
+}
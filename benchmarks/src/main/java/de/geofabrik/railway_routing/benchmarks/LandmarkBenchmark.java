@@ -0,0 +1,116 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Parameters;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+
+/**
+ * Visited nodes and latency of long routes with landmarks (hybrid mode) compared with plain
+ * bidirectional A* on the same graph.
+ *
+ * The routes are given by the system property <code>benchmark.routes</code> as
+ * <code>lat,lon,lat,lon;lat,lon,lat,lon;...</code>, e.g. routes crossing a border. Otherwise
+ * random routes longer than 200 km are used. The sum of the visited nodes of all requests of an
+ * iteration is reported as secondary result <code>visitedNodes</code>. Divide it by the number of
+ * operations to compare both modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class LandmarkBenchmark {
+
+    private static final int RANDOM_ROUTES = 200;
+    private static final double MIN_RANDOM_DISTANCE = 200_000;
+
+    @Param({"astarbi", "lm"})
+    public String mode;
+
+    private RailwayHopper hopper;
+    private List<GHRequest> requests;
+    private int next = 0;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long visitedNodes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String location = System.getProperty("benchmark.graph_location", "./benchmark-graphs") + "/lm";
+        hopper = CountryExtract.importOrLoad(location, "no", "fastest");
+        String routes = System.getProperty("benchmark.routes", "");
+        requests = new ArrayList<GHRequest>();
+        if (!routes.isEmpty()) {
+            for (String route : routes.split(";")) {
+                String[] c = route.split(",");
+                requests.add(createRequest(Double.parseDouble(c[0]), Double.parseDouble(c[1]),
+                        Double.parseDouble(c[2]), Double.parseDouble(c[3])));
+            }
+            return;
+        }
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        DistanceCalcEarth distanceCalc = new DistanceCalcEarth();
+        Random random = new Random(42);
+        for (int attempts = 0; requests.size() < RANDOM_ROUTES && attempts < 100 * RANDOM_ROUTES; ++attempts) {
+            int from = random.nextInt(graph.getNodes());
+            int to = random.nextInt(graph.getNodes());
+            double fromLat = nodeAccess.getLat(from), fromLon = nodeAccess.getLon(from);
+            double toLat = nodeAccess.getLat(to), toLon = nodeAccess.getLon(to);
+            if (distanceCalc.calcDist(fromLat, fromLon, toLat, toLon) >= MIN_RANDOM_DISTANCE) {
+                requests.add(createRequest(fromLat, fromLon, toLat, toLon));
+            }
+        }
+    }
+
+    private GHRequest createRequest(double fromLat, double fromLon, double toLat, double toLon) {
+        GHRequest request = new GHRequest(fromLat, fromLon, toLat, toLon)
+                .setVehicle(CountryExtract.getProfile())
+                .setAlgorithm(Parameters.Algorithms.ASTAR_BI);
+        request.getHints().put(Parameters.Landmark.DISABLE, !mode.equals("lm"));
+        return request;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+    }
+
+    @Benchmark
+    public GHResponse route(Counters counters) {
+        GHRequest request = requests.get(next);
+        next = (next + 1) % requests.size();
+        GHResponse response = hopper.route(request);
+        counters.visitedNodes += response.getHints().getLong("visited_nodes.sum", 0);
+        return response;
+    }
+}
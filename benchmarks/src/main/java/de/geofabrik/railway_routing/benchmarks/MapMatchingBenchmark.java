@@ -0,0 +1,154 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.railway_routing.HeadingFilter;
+import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.http.FlagEncoderConfiguration;
+
+/**
+ * Latency of the complete map matching of noisy traces on the {@link SyntheticOsmExtract}.
+ *
+ * The extract is imported into a temporary directory. The traces follow routes on the main line
+ * (including changes of the track at crossovers) and on the branch line across the railway
+ * crossings. Every second point of a route is kept and moved by Gaussian noise with a standard
+ * deviation of 10 m. The traces are identical in every run. With lookupTable=true the turn costs
+ * are read from the in-memory TurnCostTable. With headingTolerance > 0 candidates on edges which do
+ * not run in the direction of the trace are dropped by a HeadingFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MapMatchingBenchmark {
+
+    private static final String PROFILE = "freight_diesel";
+    private static final int TRACES = 100;
+    private static final int MAX_VISITED_NODES = 10000;
+    /** standard deviation of the GPS noise in degrees (about 10 m) */
+    private static final double NOISE = 0.00009;
+
+    @Param({"false", "true"})
+    public boolean lookupTable;
+
+    @Param({"0", "45"})
+    public double headingTolerance;
+
+    private File directory;
+    private RailwayHopper hopper;
+    private List<List<Observation>> traces;
+    private List<PointList> tracePoints;
+    private int next = 0;
+
+    private GHPoint randomPoint(Random random) {
+        if (random.nextInt(4) == 0) {
+            // on the branch line
+            double km = (random.nextDouble() * 2 - 1) * (SyntheticOsmExtract.BRANCH_KM - 0.1);
+            return new GHPoint(SyntheticOsmExtract.getBranchLat(km), SyntheticOsmExtract.getLon(SyntheticOsmExtract.CROSSING_KM));
+        }
+        double km = random.nextDouble() * SyntheticOsmExtract.LENGTH_KM;
+        return new GHPoint(SyntheticOsmExtract.getTrackLat(random.nextInt(2)), SyntheticOsmExtract.getLon(km));
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("map-matching-benchmark").toFile();
+        File osmFile = new File(directory, "extract.osm");
+        SyntheticOsmExtract.write(osmFile);
+        CmdArgs args = new CmdArgs();
+        args.put("datareader.file", osmFile.getPath());
+        args.put("graph.location", new File(directory, "graph").getPath());
+        args.put("profiles", PROFILE);
+        args.put("prepare.ch.weightings", "no");
+        args.put("prepare.min_network_size", 0);
+        args.put("routing.turn_costs.lookup_table", lookupTable);
+        hopper = new RailwayHopper(args, Collections.<FlagEncoderConfiguration>emptyList());
+        hopper.setGraphHopperLocation(new File(directory, "graph").getPath());
+        hopper.importOrLoad();
+
+        Random random = new Random(42);
+        traces = new ArrayList<List<Observation>>(TRACES);
+        tracePoints = new ArrayList<PointList>(TRACES);
+        int attempts = 0;
+        while (traces.size() < TRACES && attempts < 100 * TRACES) {
+            ++attempts;
+            GHPoint from = randomPoint(random);
+            GHPoint to = randomPoint(random);
+            GHResponse response = hopper.route(new GHRequest(from, to).setVehicle(PROFILE));
+            if (response.hasErrors() || response.getBest().getDistance() < 3000) {
+                continue;
+            }
+            PointList points = response.getBest().getPoints();
+            List<Observation> trace = new ArrayList<Observation>();
+            PointList noisyPoints = new PointList(points.getSize() / 2 + 1, false);
+            for (int i = 0; i < points.getSize(); i += 2) {
+                noisyPoints.add(points.getLat(i) + NOISE * random.nextGaussian(),
+                        points.getLon(i) + NOISE * random.nextGaussian());
+                trace.add(new Observation(new GHPoint(noisyPoints.getLat(noisyPoints.getSize() - 1),
+                        noisyPoints.getLon(noisyPoints.getSize() - 1))));
+            }
+            traces.add(trace);
+            tracePoints.add(noisyPoints);
+        }
+        if (traces.isEmpty()) {
+            throw new IllegalStateException("Could not create any trace on the synthetic extract.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+        Helper.removeDir(directory);
+    }
+
+    @Benchmark
+    public MatchResult match() {
+        List<Observation> trace = traces.get(next);
+        PointList points = tracePoints.get(next);
+        next = (next + 1) % traces.size();
+        MapMatching mapMatching = new MapMatching(hopper, hopper.getMatchingOptions(PROFILE, MAX_VISITED_NODES));
+        mapMatching.setMeasurementErrorSigma(20);
+        if (headingTolerance <= 0) {
+            return mapMatching.doWork(trace, true);
+        }
+        hopper.getRailLocationIndex().setHeadingFilter(new HeadingFilter(points, null, headingTolerance));
+        try {
+            return mapMatching.doWork(trace, true);
+        } finally {
+            hopper.getRailLocationIndex().setHeadingFilter(null);
+        }
+    }
+}
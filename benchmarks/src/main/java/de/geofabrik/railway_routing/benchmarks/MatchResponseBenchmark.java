@@ -0,0 +1,87 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.railway_routing.http.MatchResource;
+import de.geofabrik.railway_routing.http.PbfMatchOutput;
+import de.geofabrik.railway_routing.http.TrackMatcher;
+
+/**
+ * Serialization of a matched path with 10,000 points as JSON (with and without encoded points)
+ * and as Protocol Buffers message. The secondary result <code>payloadBytes</code> is the size of
+ * the response in bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchResponseBenchmark {
+
+    private static final int POINTS = 10_000;
+
+    @Param({"true", "false"})
+    public boolean pointsEncoded;
+
+    private TrackMatcher.Result result;
+    private ObjectMapper objectMapper;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long payloadBytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        PointList points = new PointList(POINTS, false);
+        double lat = 52.5;
+        double lon = 13.4;
+        for (int i = 0; i < POINTS; ++i) {
+            lat += 0.00013579;
+            lon += 0.00024681;
+            points.add(lat, lon);
+        }
+        PathWrapper path = new PathWrapper();
+        path.setPoints(points);
+        path.setDistance(250000);
+        path.setTime(9000000);
+        result = new TrackMatcher.Result(path, Collections.<MatchResult>emptyList(), POINTS, 0.1f);
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public byte[] json(Counters counters) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(MatchResource.toJson(result, false, true, pointsEncoded, false, false, 0.1f));
+        counters.payloadBytes = payload.length;
+        return payload;
+    }
+
+    @Benchmark
+    public byte[] pbf(Counters counters) {
+        byte[] payload = new PbfMatchOutput(result, false, null, 0.1f).toProtobuf().toByteArray();
+        counters.payloadBytes = payload.length;
+        return payload;
+    }
+}
@@ -0,0 +1,117 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+
+/**
+ * Latency (p50, p99) of matching short traces with map matching options created per request
+ * and taken from the cache of {@link RailwayHopper#getMatchingOptions(String, int)}.
+ *
+ * The traces are created by routing between random nodes 5 to 20 km apart and keeping every
+ * fifth point of the route.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class MatchingLatencyBenchmark {
+
+    private static final int TRACES = 200;
+    private static final int MAX_VISITED_NODES = 3000;
+
+    @Param({"perRequest", "cached"})
+    public String options;
+
+    private RailwayHopper hopper;
+    private String profile;
+    private List<List<Observation>> traces;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String location = System.getProperty("benchmark.graph_location", "./benchmark-graphs") + "/flexible";
+        hopper = CountryExtract.importOrLoad(location, "no");
+        profile = CountryExtract.getProfile();
+        NodeAccess nodeAccess = hopper.getGraphHopperStorage().getNodeAccess();
+        int nodes = hopper.getGraphHopperStorage().getNodes();
+        Random random = new Random(42);
+        traces = new ArrayList<List<Observation>>(TRACES);
+        int attempts = 0;
+        while (traces.size() < TRACES && attempts < 100 * TRACES) {
+            ++attempts;
+            int from = random.nextInt(nodes);
+            int to = random.nextInt(nodes);
+            GHRequest request = new GHRequest(nodeAccess.getLat(from), nodeAccess.getLon(from),
+                    nodeAccess.getLat(to), nodeAccess.getLon(to)).setVehicle(profile);
+            GHResponse response = hopper.route(request);
+            if (response.hasErrors()) {
+                continue;
+            }
+            double distance = response.getBest().getDistance();
+            if (distance < 5000 || distance > 20000) {
+                continue;
+            }
+            PointList points = response.getBest().getPoints();
+            List<Observation> trace = new ArrayList<Observation>();
+            for (int i = 0; i < points.getSize(); i += 5) {
+                trace.add(new Observation(new GHPoint(points.getLat(i), points.getLon(i))));
+            }
+            if (trace.size() >= 2) {
+                traces.add(trace);
+            }
+        }
+        if (traces.isEmpty()) {
+            throw new IllegalStateException("Could not create any trace of 5 to 20 km on the extract.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+    }
+
+    @Benchmark
+    public MatchResult match() {
+        List<Observation> trace = traces.get(next);
+        next = (next + 1) % traces.size();
+        AlgorithmOptions opts;
+        if (options.equals("cached")) {
+            opts = hopper.getMatchingOptions(profile, MAX_VISITED_NODES);
+        } else {
+            opts = hopper.createMatchingOptions(profile, MAX_VISITED_NODES);
+        }
+        MapMatching mapMatching = new MapMatching(hopper, opts);
+        mapMatching.setMeasurementErrorSigma(40);
+        return mapMatching.doWork(trace, true);
+    }
+}
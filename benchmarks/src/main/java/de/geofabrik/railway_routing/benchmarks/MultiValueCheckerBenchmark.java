@@ -0,0 +1,141 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.carrotsearch.hppc.IntHashSet;
+
+import de.geofabrik.railway_routing.util.MultiValueChecker;
+
+/**
+ * Check of gauge, voltage and frequency tag values against the values accepted by a profile.
+ *
+ * The tag values are taken from typical railway tracks, including lists and a few malformed
+ * values. The <code>splitAndParse</code> benchmark is a copy of the previous implementation
+ * which split the value with String.split and used exceptions to detect malformed numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiValueCheckerBenchmark {
+
+    static final String[] GAUGES = {"1435", "1435", "1435;1668", "1000", "1520", "1435;1000",
+            "1435", "600", "1435", "broad"};
+    static final String[] VOLTAGES = {"15000", "25000", "1500", "3000", "25000;3000", "750",
+            "11000", "15000;25000", "3000", "600;750"};
+    static final String[] FREQUENCIES = {"16.7", "50", "0", "0", "50;0", "0", "16.7", "16.7;50",
+            "16.67", "dc"};
+
+    private int[] sortedGauges = {1435};
+    private int[] sortedVoltages = {15000, 25000};
+    private double[] sortedFrequencies = {16.67, 16.7, 50.0};
+    private IntHashSet voltageSet;
+    private ArrayList<Integer> gaugeList;
+    private ArrayList<Integer> voltageList;
+    private ArrayList<Double> frequencyList;
+
+    @Setup
+    public void setUp() {
+        voltageSet = IntHashSet.from(sortedVoltages);
+        gaugeList = new ArrayList<Integer>(Arrays.asList(1435));
+        voltageList = new ArrayList<Integer>(Arrays.asList(15000, 25000));
+        frequencyList = new ArrayList<Double>(Arrays.asList(16.67, 16.7, 50.0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void sortedArrays(Blackhole bh) {
+        for (int i = 0; i < GAUGES.length; ++i) {
+            bh.consume(MultiValueChecker.tagContainsInt(GAUGES[i], sortedGauges, true));
+            bh.consume(MultiValueChecker.tagContainsInt(VOLTAGES[i], sortedVoltages, true));
+            bh.consume(MultiValueChecker.tagContainsDouble(FREQUENCIES[i], sortedFrequencies, true));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void intHashSet(Blackhole bh) {
+        for (int i = 0; i < VOLTAGES.length; ++i) {
+            bh.consume(MultiValueChecker.tagContainsInt(VOLTAGES[i], voltageSet, true));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void parseOnce(Blackhole bh) {
+        for (int i = 0; i < GAUGES.length; ++i) {
+            bh.consume(MultiValueChecker.parseIntValues(GAUGES[i]));
+            bh.consume(MultiValueChecker.parseIntValues(VOLTAGES[i]));
+            bh.consume(MultiValueChecker.parseDoubleValues(FREQUENCIES[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void boxedLists(Blackhole bh) {
+        for (int i = 0; i < GAUGES.length; ++i) {
+            bh.consume(MultiValueChecker.tagContainsInt(GAUGES[i], gaugeList, true));
+            bh.consume(MultiValueChecker.tagContainsInt(VOLTAGES[i], voltageList, true));
+            bh.consume(MultiValueChecker.tagContainsDouble(FREQUENCIES[i], frequencyList, true));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void splitAndParse(Blackhole bh) {
+        for (int i = 0; i < GAUGES.length; ++i) {
+            bh.consume(legacyContainsInt(GAUGES[i], gaugeList, true));
+            bh.consume(legacyContainsInt(VOLTAGES[i], voltageList, true));
+            bh.consume(legacyContainsDouble(FREQUENCIES[i], frequencyList, true));
+        }
+    }
+
+    private static boolean legacyContainsInt(String tagValue, ArrayList<Integer> acceptedValues, boolean resultIfNull) {
+        if (tagValue == null || acceptedValues.isEmpty() || tagValue.equals("")) {
+            return resultIfNull;
+        }
+        try {
+            for (String v : tagValue.split(";")) {
+                if (acceptedValues.contains(Integer.parseInt(v))) {
+                    return true;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private static boolean legacyContainsDouble(String tagValue, ArrayList<Double> acceptedValues, boolean resultIfNull) {
+        if (tagValue == null || acceptedValues.isEmpty() || tagValue.equals("")) {
+            return resultIfNull;
+        }
+        try {
+            for (String v : tagValue.split(";")) {
+                if (acceptedValues.contains(Double.parseDouble(v))) {
+                    return true;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,80 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+
+/**
+ * Latency of routing requests between random nodes of a country extract with and without
+ * edge-based contraction hierarchies.
+ *
+ * The graphs are written to <code>benchmark.graph_location</code> (default: ./benchmark-graphs)
+ * and reused by later runs. Delete them after changing the extract or the profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class RoutingBenchmark {
+
+    /** number of random requests, they are repeated in the same order */
+    private static final int REQUESTS = 1000;
+
+    @Param({"flexible", "ch"})
+    public String mode;
+
+    private RailwayHopper hopper;
+    private GHRequest[] requests;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String location = System.getProperty("benchmark.graph_location", "./benchmark-graphs") + "/" + mode;
+        hopper = CountryExtract.importOrLoad(location, mode.equals("ch") ? "fastest" : "no");
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        Random random = new Random(42);
+        requests = new GHRequest[REQUESTS];
+        for (int i = 0; i < REQUESTS; ++i) {
+            int from = random.nextInt(graph.getNodes());
+            int to = random.nextInt(graph.getNodes());
+            requests[i] = new GHRequest(nodeAccess.getLat(from), nodeAccess.getLon(from),
+                    nodeAccess.getLat(to), nodeAccess.getLon(to))
+                    .setVehicle(CountryExtract.getProfile());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+    }
+
+    @Benchmark
+    public GHResponse route() {
+        GHRequest request = requests[next];
+        next = (next + 1) % REQUESTS;
+        return hopper.route(request);
+    }
+}
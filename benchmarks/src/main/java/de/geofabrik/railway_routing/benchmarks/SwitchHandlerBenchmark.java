@@ -0,0 +1,138 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.railway_routing.RailFlagEncoder;
+import de.geofabrik.railway_routing.SwitchHandler;
+import de.geofabrik.railway_routing.TurnCostBuffer;
+
+/**
+ * Time and allocation rate per node of the turn cost computation at switches.
+ *
+ * Run with <code>-prof gc</code> to get the allocation rate. The <code>legacy</code> benchmark
+ * is a copy of the implementation which used boxed lists and fetched the geometry of an edge
+ * once per pair of edges.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwitchHandlerBenchmark {
+    private static final int SWITCHES = 10000;
+
+    @Param({"2", "3", "4", "6"})
+    public int degree;
+
+    private SyntheticRailNetwork network;
+    private SwitchHandler switchHandler;
+    private TurnCostBuffer turnCosts;
+    private EdgeExplorer explorer;
+    private AngleCalc angleCalc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        network = new SyntheticRailNetwork(SWITCHES, degree,
+                new RailFlagEncoder(5, 5, 3, "freight"), new RailFlagEncoder(5, 5, 3, "passenger"));
+        GraphHopperStorage ghs = network.getGraph();
+        // The legacy implementation computes turn costs at nodes with two edges, too.
+        switchHandler = new SwitchHandler(ghs, network.getEncodingManager().fetchEdgeEncoders(), network.getCrossings())
+                .setSwitchesOnly(false);
+        turnCosts = new TurnCostBuffer();
+        explorer = ghs.createEdgeExplorer();
+        angleCalc = new AngleCalc();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SWITCHES)
+    public void scratchBuffers(Blackhole bh) {
+        for (int node = 0; node < SWITCHES; ++node) {
+            switchHandler.handleSwitch(node, turnCosts);
+            bh.consume(turnCosts.size());
+            turnCosts.clear();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SWITCHES)
+    public void legacy(Blackhole bh) {
+        GraphHopperStorage ghs = network.getGraph();
+        for (int node = 0; node < SWITCHES; ++node) {
+            legacyHandleSwitch(explorer.setBaseNode(node), ghs, node);
+            bh.consume(turnCosts.size());
+            turnCosts.clear();
+        }
+    }
+
+    private void legacyAddTurnCosts(int fromEdge, int viaNode, int toEdge, double angleDiff, boolean crossing) {
+        EncodingManager em = network.getEncodingManager();
+        long flags = 0;
+        for (FlagEncoder encoder : em.fetchEdgeEncoders()) {
+            if (!encoder.supports(TurnWeighting.class)) {
+                continue;
+            }
+            if (crossing && (angleDiff < 0.92 * Math.PI || angleDiff > 1.08 * Math.PI)) {
+                flags = flags | encoder.getTurnFlags(true, 0);
+            } else if (crossing) {
+                continue;
+            }
+            if (angleDiff < 0.3 * Math.PI || angleDiff > 1.7 * Math.PI) {
+                flags = flags | encoder.getTurnFlags(false, ((RailFlagEncoder) encoder).getMaxTurnCosts() - 1);
+            } else if (angleDiff < 0.75 * Math.PI || angleDiff > 1.25 * Math.PI) {
+                flags = flags | encoder.getTurnFlags(true, 0);
+            }
+        }
+        turnCosts.add(fromEdge, viaNode, toEdge, flags);
+        turnCosts.add(toEdge, viaNode, fromEdge, flags);
+    }
+
+    private void legacyHandleSwitch(EdgeIterator iter, GraphHopperStorage ghs, int node) {
+        ArrayList<Integer> edges = new ArrayList<Integer>();
+        ArrayList<Integer> adjNodes = new ArrayList<Integer>();
+        boolean crossing = network.getCrossings().isCrossing(node);
+        while (iter.next()) {
+            edges.add(iter.getEdge());
+            adjNodes.add(iter.getAdjNode());
+        }
+        for (int i = 0; i < adjNodes.size(); ++i) {
+            EdgeIteratorState fromEdge = ghs.getEdgeIteratorState(edges.get(i), adjNodes.get(i));
+            PointList fromPoints = fromEdge.fetchWayGeometry(3);
+            double centreLon = fromPoints.getLon(0);
+            double centreLat = fromPoints.getLat(0);
+            double fromOrientation = angleCalc.calcOrientation(centreLat, centreLon, fromPoints.getLat(1), fromPoints.getLon(1));
+            for (int j = i + 1; j < adjNodes.size(); ++j) {
+                EdgeIteratorState toEdge = ghs.getEdgeIteratorState(edges.get(j), adjNodes.get(j));
+                PointList toPoints = toEdge.fetchWayGeometry(3);
+                double toOrientation = angleCalc.calcOrientation(centreLat, centreLon, toPoints.getLat(1), toPoints.getLon(1));
+                legacyAddTurnCosts(fromEdge.getEdge(), node, toEdge.getEdge(), Math.abs(fromOrientation - toOrientation), crossing);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Small deterministic OSM extract of a double track main line with crossovers and a single track
+ * branch line crossing it.
+ *
+ * The main line runs from west to east. Its tracks are split into ways of one kilometre like in
+ * OSM and connected by a crossover every kilometre. The branch line runs from south to north
+ * and crosses both tracks at railway crossings in the middle of the main line. It is not
+ * electrified. The extract is written as OSM XML and imported like a real extract, so it tests
+ * the complete pipeline from the OSM reader to the map matching without downloading data.
+ */
+class SyntheticOsmExtract {
+
+    static final double BASE_LAT = 49.0;
+    static final double BASE_LON = 8.0;
+
+    /** length of the main line in kilometres */
+    static final int LENGTH_KM = 30;
+
+    /** kilometre of the main line where the branch line crosses it */
+    static final int CROSSING_KM = 15;
+
+    /** length of the branch line on both sides of the main line in kilometres */
+    static final int BRANCH_KM = 3;
+
+    /** distance between two nodes of a way in kilometres */
+    private static final double NODE_SPACING_KM = 0.1;
+
+    private static final double KM_PER_DEGREE_LAT = 111.2;
+    private static final double KM_PER_DEGREE_LON = KM_PER_DEGREE_LAT * Math.cos(Math.toRadians(BASE_LAT));
+
+    /** distance between the two tracks of the main line in degrees of latitude (4.5 m) */
+    private static final double TRACK_DISTANCE = 0.0045 / KM_PER_DEGREE_LAT;
+
+    private static final int NODES_PER_KM = (int) Math.round(1 / NODE_SPACING_KM);
+
+    private static final String MAIN_TAGS = "railway=rail;usage=main;gauge=1435;electrified=contact_line;"
+            + "voltage=15000;frequency=16.7;maxspeed=160";
+    private static final String CROSSOVER_TAGS = "railway=rail;service=crossover;gauge=1435;"
+            + "electrified=contact_line;voltage=15000;frequency=16.7;maxspeed=40";
+    private static final String BRANCH_TAGS = "railway=rail;usage=branch;gauge=1435;electrified=no;maxspeed=100";
+
+    static double getLon(double km) {
+        return BASE_LON + km / KM_PER_DEGREE_LON;
+    }
+
+    /**
+     * Get the latitude of a track of the main line (0 or 1).
+     */
+    static double getTrackLat(int track) {
+        return BASE_LAT + track * TRACK_DISTANCE;
+    }
+
+    /**
+     * Get the latitude of a point of the branch line, negative distances are south of the main line.
+     */
+    static double getBranchLat(double km) {
+        return BASE_LAT + km / KM_PER_DEGREE_LAT;
+    }
+
+    private static long mainNodeId(int track, int index) {
+        return 1 + track * 100000L + index;
+    }
+
+    private static long branchNodeId(int index) {
+        return 200000L + index;
+    }
+
+    private static void writeNode(PrintWriter out, long id, double lat, double lon, String tags) {
+        out.printf(Locale.ROOT, "  <node id=\"%d\" version=\"1\" lat=\"%.7f\" lon=\"%.7f\"", id, lat, lon);
+        if (tags == null) {
+            out.println("/>");
+            return;
+        }
+        out.println(">");
+        writeTags(out, tags);
+        out.println("  </node>");
+    }
+
+    private static void writeTags(PrintWriter out, String tags) {
+        for (String tag : tags.split(";")) {
+            String[] kv = tag.split("=", 2);
+            out.printf("    <tag k=\"%s\" v=\"%s\"/>%n", kv[0], kv[1]);
+        }
+    }
+
+    private static void writeWay(PrintWriter out, long id, long[] nodes, String tags) {
+        out.printf("  <way id=\"%d\" version=\"1\">%n", id);
+        for (long node : nodes) {
+            out.printf("    <nd ref=\"%d\"/>%n", node);
+        }
+        writeTags(out, tags);
+        out.println("  </way>");
+    }
+
+    /**
+     * Write the extract.
+     */
+    static void write(File file) throws IOException {
+        int mainNodes = LENGTH_KM * NODES_PER_KM + 1;
+        int crossingIndex = CROSSING_KM * NODES_PER_KM;
+        int branchNodes = BRANCH_KM * NODES_PER_KM;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("<?xml version='1.0' encoding='UTF-8'?>");
+            out.println("<osm version=\"0.6\" generator=\"railway_routing-benchmarks\">");
+            for (int track = 0; track < 2; ++track) {
+                for (int i = 0; i < mainNodes; ++i) {
+                    String tags = i == crossingIndex ? "railway=railway_crossing" : null;
+                    writeNode(out, mainNodeId(track, i), getTrackLat(track), getLon(i * NODE_SPACING_KM), tags);
+                }
+            }
+            double branchLon = getLon(CROSSING_KM);
+            // southern part ends at the crossing with track 0, northern part starts at track 1
+            for (int i = 1; i <= branchNodes; ++i) {
+                writeNode(out, branchNodeId(-i), getBranchLat(-i * NODE_SPACING_KM), branchLon, null);
+                writeNode(out, branchNodeId(i), getTrackLat(1) + i * NODE_SPACING_KM / KM_PER_DEGREE_LAT,
+                        branchLon, null);
+            }
+
+            long wayId = 1;
+            for (int track = 0; track < 2; ++track) {
+                for (int km = 0; km < LENGTH_KM; ++km) {
+                    long[] nodes = new long[NODES_PER_KM + 1];
+                    for (int i = 0; i <= NODES_PER_KM; ++i) {
+                        nodes[i] = mainNodeId(track, km * NODES_PER_KM + i);
+                    }
+                    writeWay(out, wayId++, nodes, MAIN_TAGS);
+                }
+            }
+            for (int km = 1; km < LENGTH_KM; ++km) {
+                if (km == CROSSING_KM) {
+                    continue;
+                }
+                // alternate the direction of the crossovers
+                int from = km % 2;
+                long[] nodes = {mainNodeId(from, km * NODES_PER_KM), mainNodeId(1 - from, km * NODES_PER_KM + 1)};
+                writeWay(out, wayId++, nodes, CROSSOVER_TAGS);
+            }
+            long[] branch = new long[2 * branchNodes + 2];
+            int n = 0;
+            for (int i = branchNodes; i >= 1; --i) {
+                branch[n++] = branchNodeId(-i);
+            }
+            branch[n++] = mainNodeId(0, crossingIndex);
+            branch[n++] = mainNodeId(1, crossingIndex);
+            for (int i = 1; i <= branchNodes; ++i) {
+                branch[n++] = branchNodeId(i);
+            }
+            writeWay(out, wayId++, branch, BRANCH_TAGS);
+            out.println("</osm>");
+        }
+    }
+}
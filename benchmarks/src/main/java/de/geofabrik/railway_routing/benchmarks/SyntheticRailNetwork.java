@@ -0,0 +1,95 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.railway_routing.CrossingIndex;
+import de.geofabrik.railway_routing.RailFlagEncoder;
+
+/**
+ * Small synthetic railway network consisting of switches whose arms end at buffer stops.
+ *
+ * Every arm has a few pillar nodes, so the geometry of the edges has to be fetched like on a real
+ * network.
+ */
+public class SyntheticRailNetwork {
+    /** distance between the switch and the end of an arm in degrees */
+    private static final double ARM_LENGTH = 0.002;
+    private static final int PILLARS_PER_ARM = 3;
+
+    private final EncodingManager encodingManager;
+    private final GraphHopperStorage graph;
+    private final CrossingIndex crossings = new CrossingIndex(new RAMDirectory()).create(1000);
+    private final int switchCount;
+
+    /**
+     * @param switchCount number of switches
+     * @param degree number of edges at every switch
+     * @param encoders flag encoders
+     */
+    public SyntheticRailNetwork(int switchCount, int degree, RailFlagEncoder... encoders) {
+        this(switchCount, degree, false, encoders);
+    }
+
+    /**
+     * @param switchCount number of switches
+     * @param degree number of edges at every switch
+     * @param turnCosts create the graph with turn cost storage
+     * @param encoders flag encoders
+     */
+    public SyntheticRailNetwork(int switchCount, int degree, boolean turnCosts, RailFlagEncoder... encoders) {
+        this.switchCount = switchCount;
+        encodingManager = EncodingManager.create(encoders);
+        graph = new GraphBuilder(encodingManager).withTurnCosts(turnCosts).create();
+        NodeAccess na = graph.getNodeAccess();
+        DistanceCalc distCalc = Helper.DIST_EARTH;
+        int columns = (int) Math.ceil(Math.sqrt(switchCount));
+        int nextNode = switchCount;
+        for (int s = 0; s < switchCount; ++s) {
+            double lat = 49.0 + 0.01 * (s / columns);
+            double lon = 8.0 + 0.01 * (s % columns);
+            na.setNode(s, lat, lon);
+            // every tenth switch is a railway crossing
+            if (s % 10 == 0) {
+                crossings.setCrossing(s);
+            }
+            for (int arm = 0; arm < degree; ++arm) {
+                // arms are grouped around both ends of a straight track like the legs of a switch
+                double angle = (arm % 2) * Math.PI + (arm / 2) * 0.08 * Math.PI;
+                double endLat = lat + ARM_LENGTH * Math.sin(angle);
+                double endLon = lon + ARM_LENGTH * Math.cos(angle);
+                na.setNode(nextNode, endLat, endLon);
+                PointList pillars = new PointList(PILLARS_PER_ARM, false);
+                for (int p = 1; p <= PILLARS_PER_ARM; ++p) {
+                    double f = (double) p / (PILLARS_PER_ARM + 1);
+                    pillars.add(lat + f * (endLat - lat), lon + f * (endLon - lon));
+                }
+                graph.edge(s, nextNode).setDistance(distCalc.calcDist(lat, lon, endLat, endLon))
+                    .setWayGeometry(pillars);
+                ++nextNode;
+            }
+        }
+    }
+
+    public EncodingManager getEncodingManager() {
+        return encodingManager;
+    }
+
+    public GraphHopperStorage getGraph() {
+        return graph;
+    }
+
+    public CrossingIndex getCrossings() {
+        return crossings;
+    }
+
+    public int getSwitchCount() {
+        return switchCount;
+    }
+}
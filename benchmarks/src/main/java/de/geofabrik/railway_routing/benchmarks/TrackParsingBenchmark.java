@@ -0,0 +1,128 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.matching.gpx.Gpx;
+import com.graphhopper.util.shapes.GHPoint;
+import com.opencsv.bean.CsvBindByName;
+import com.opencsv.bean.CsvToBeanBuilder;
+
+import de.geofabrik.railway_routing.http.TrackMatcher;
+import de.geofabrik.railway_routing.util.CsvTrackReader;
+import de.geofabrik.railway_routing.util.GpxTrackReader;
+
+/**
+ * Parsing of a trace with 100,000 points (about 28 hours at 1 Hz) as CSV and GPX.
+ *
+ * The <code>opencsv</code> and <code>jacksonXml</code> benchmarks are copies of the previous
+ * implementation. All benchmarks return the observations needed by the map matching. Run with
+ * <code>-prof gc</code> to get the allocated memory per trace (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class TrackParsingBenchmark {
+
+    private static final int POINTS = 100_000;
+
+    private byte[] csv;
+    private byte[] gpx;
+
+    /**
+     * Copy of the bean previously used for CSV input.
+     */
+    public static class InputCSVEntry {
+        @CsvBindByName
+        private double latitude;
+
+        @CsvBindByName
+        private double longitude;
+
+        public void setLatitude(double lat) {
+            this.latitude = lat;
+        }
+
+        public void setLongitude(double lon) {
+            this.longitude = lon;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        StringBuilder csvBuilder = new StringBuilder(POINTS * 40);
+        StringBuilder gpxBuilder = new StringBuilder(POINTS * 120);
+        csvBuilder.append("latitude;longitude;time\n");
+        gpxBuilder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<gpx version=\"1.1\" creator=\"benchmark\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n")
+            .append("<trk><name>benchmark</name><trkseg>\n");
+        double lat = 52.5;
+        double lon = 13.4;
+        for (int i = 0; i < POINTS; ++i) {
+            // a train running north-east at about 100 km/h
+            lat += 0.0002;
+            lon += 0.0003;
+            String time = String.format(Locale.ROOT, "2019-05-01T%02d:%02d:%02dZ", (i / 3600) % 24, (i / 60) % 60, i % 60);
+            csvBuilder.append(String.format(Locale.ROOT, "%.7f;%.7f;%s\n", lat, lon, time));
+            gpxBuilder.append(String.format(Locale.ROOT,
+                    "<trkpt lat=\"%.7f\" lon=\"%.7f\"><ele>%.1f</ele><time>%s</time></trkpt>\n",
+                    lat, lon, 35.0 + i % 10, time));
+        }
+        gpxBuilder.append("</trkseg></trk></gpx>\n");
+        csv = csvBuilder.toString().getBytes(StandardCharsets.UTF_8);
+        gpx = gpxBuilder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Observation> opencsv() {
+        List<InputCSVEntry> entries = new CsvToBeanBuilder<InputCSVEntry>(new InputStreamReader(new ByteArrayInputStream(csv)))
+                .withType(InputCSVEntry.class)
+                .withSeparator(';')
+                .withQuoteChar('"')
+                .build()
+                .parse();
+        List<Observation> result = new ArrayList<Observation>(entries.size());
+        for (InputCSVEntry entry : entries) {
+            result.add(new Observation(new GHPoint(entry.latitude, entry.longitude)));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Observation> csvTrackReader() throws IOException {
+        return TrackMatcher.toObservations(new CsvTrackReader(';', '"').read(new ByteArrayInputStream(csv)));
+    }
+
+    @Benchmark
+    public List<Observation> jacksonXml() throws IOException {
+        Gpx result = new XmlMapper().readValue(new ByteArrayInputStream(gpx), Gpx.class);
+        return result.trk.get(0).getEntries();
+    }
+
+    @Benchmark
+    public List<Observation> gpxTrackReader() {
+        return TrackMatcher.toObservations(GpxTrackReader.read(new ByteArrayInputStream(gpx)).get(0).getPoints());
+    }
+}
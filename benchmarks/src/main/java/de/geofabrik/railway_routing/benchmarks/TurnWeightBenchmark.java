@@ -0,0 +1,91 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.TurnCostExtension;
+
+import de.geofabrik.railway_routing.RailFlagEncoder;
+import de.geofabrik.railway_routing.RailTurnWeighting;
+import de.geofabrik.railway_routing.SwitchHandler;
+import de.geofabrik.railway_routing.TurnCostBuffer;
+import de.geofabrik.railway_routing.TurnCostTable;
+
+/**
+ * Time of {@link RailTurnWeighting#calcTurnWeight(int, int, int)} for all turns (degree squared)
+ * at each of the 10,000 switches of a synthetic network. The turn costs are computed by the
+ * {@link SwitchHandler} like during the import. The number of turn cost entries per node grows
+ * quadratically with the degree of the switches, divide by 10,000 * degree² to get the time
+ * per call. With lookupTable=true the turn costs are read from a {@link TurnCostTable} instead
+ * of the TurnCostExtension.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TurnWeightBenchmark {
+    private static final int SWITCHES = 10000;
+
+    @Param({"3", "4", "6"})
+    public int degree;
+
+    @Param({"false", "true"})
+    public boolean lookupTable;
+
+    private RailTurnWeighting weighting;
+    /** from edge, via node and to edge of every turn */
+    private int[] turns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RailFlagEncoder encoder = new RailFlagEncoder(5, 5, 3, "freight");
+        SyntheticRailNetwork network = new SyntheticRailNetwork(SWITCHES, degree, true, encoder);
+        GraphHopperStorage ghs = network.getGraph();
+        TurnCostExtension tcs = (TurnCostExtension) ghs.getExtension();
+        SwitchHandler switchHandler = new SwitchHandler(ghs, network.getEncodingManager().fetchEdgeEncoders(),
+                network.getCrossings());
+        TurnCostBuffer turnCosts = new TurnCostBuffer();
+        IntArrayList turnList = new IntArrayList();
+        for (int node = 0; node < SWITCHES; ++node) {
+            switchHandler.handleSwitch(node, turnCosts);
+            turnCosts.writeTo(tcs);
+        }
+        // collect the turns in the order a routing algorithm would query them
+        for (int node = 0; node < SWITCHES; ++node) {
+            int firstEdge = node * degree;
+            for (int from = firstEdge; from < firstEdge + degree; ++from) {
+                for (int to = firstEdge; to < firstEdge + degree; ++to) {
+                    turnList.add(from, node, to);
+                }
+            }
+        }
+        turns = turnList.toArray();
+        weighting = new RailTurnWeighting(new FastestWeighting(encoder), tcs,
+                lookupTable ? TurnCostTable.create(ghs, tcs) : null, 0);
+    }
+
+    @Benchmark
+    public void calcTurnWeight(Blackhole bh) {
+        for (int i = 0; i < turns.length; i += 3) {
+            bh.consume(weighting.calcTurnWeight(turns[i], turns[i + 1], turns[i + 2]));
+        }
+    }
+}
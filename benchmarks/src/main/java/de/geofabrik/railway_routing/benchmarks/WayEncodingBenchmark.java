@@ -0,0 +1,80 @@
+package de.geofabrik.railway_routing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.IntsRef;
+
+import de.geofabrik.railway_routing.RailFlagEncoderFactory;
+
+/**
+ * Cost of encoding a way during the import: the access check and
+ * {@link de.geofabrik.railway_routing.RailFlagEncoder#handleWayTags} of all profiles, called
+ * through the EncodingManager like OSMReader does.
+ *
+ * Every invocation encodes fresh copies of the ways of {@link AccessBenchmark} because the parsed
+ * tags are cached in the way.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WayEncodingBenchmark {
+
+    @Param({"1", "2", "5"})
+    public int profiles;
+
+    private EncodingManager encodingManager;
+    private ReaderWay[] ways;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] names = RailFlagEncoderFactory.getKnownEncoderNames();
+        EncodingManager.Builder builder = new EncodingManager.Builder(8);
+        for (int i = 0; i < profiles; ++i) {
+            FlagEncoder encoder = RailFlagEncoderFactory.createFlagEncoder(names[i % names.length]);
+            builder.add(encoder);
+        }
+        encodingManager = builder.build();
+        ways = new ReaderWay[AccessBenchmark.WAY_TAGS.length];
+    }
+
+    @Setup(Level.Invocation)
+    public void createWays() {
+        for (int i = 0; i < ways.length; ++i) {
+            ways[i] = AccessBenchmark.createWay(i, AccessBenchmark.WAY_TAGS[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void handleWayTags(Blackhole bh) {
+        for (ReaderWay way : ways) {
+            IntsRef edgeFlags = encodingManager.createEdgeFlags();
+            EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+            if (encodingManager.acceptWay(way, acceptWay)) {
+                encodingManager.handleWayTags(edgeFlags, way, acceptWay, 0);
+            }
+            bh.consume(edgeFlags);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.geofabrik.railway_routing;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+
+/**
+ * Set of tower nodes which are tagged with railway=railway_crossing in OSM.
+ *
+ * The set is stored as a bitset with one bit per node in the directory of the graph. Therefore
+ * it is available after the graph has been loaded again and uses the same type of data access
+ * (e.g. MMAP or RAM_STORE) as the rest of the graph.
+ */
+public class CrossingIndex implements Storable<CrossingIndex> {
+    private static final int VERSION = 1;
+    private static final String NAME = "railway_crossings";
+
+    private final DataAccess bits;
+    private int crossingCount = 0;
+
+    public CrossingIndex(Directory dir) {
+        bits = dir.find(NAME);
+    }
+
+    @Override
+    public CrossingIndex create(long initBytes) {
+        bits.create(Math.max(initBytes, 4));
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!bits.loadExisting()) {
+            return false;
+        }
+        if (bits.getHeader(0) != VERSION) {
+            throw new IllegalStateException("Incompatible version of " + NAME + ", expected " + VERSION
+                    + " but got " + bits.getHeader(0) + ". Please import the graph again.");
+        }
+        crossingCount = bits.getHeader(4);
+        return true;
+    }
+
+    /**
+     * Mark a tower node as railway crossing.
+     */
+    public void setCrossing(int node) {
+        long pointer = 4L * (node >>> 5);
+        bits.ensureCapacity(pointer + 4);
+        int word = bits.getInt(pointer);
+        int mask = 1 << (node & 31);
+        if ((word & mask) == 0) {
+            bits.setInt(pointer, word | mask);
+            ++crossingCount;
+        }
+    }
+
+    /**
+     * Remove the railway crossing mark of a tower node.
+     */
+    public void clearCrossing(int node) {
+        long pointer = 4L * (node >>> 5);
+        if (pointer + 4 > bits.getCapacity()) {
+            return;
+        }
+        int word = bits.getInt(pointer);
+        int mask = 1 << (node & 31);
+        if ((word & mask) != 0) {
+            bits.setInt(pointer, word & ~mask);
+            --crossingCount;
+        }
+    }
+
+    /**
+     * Remove all railway crossings.
+     */
+    public void clear() {
+        for (long pointer = 0; pointer + 4 <= bits.getCapacity(); pointer += 4) {
+            bits.setInt(pointer, 0);
+        }
+        crossingCount = 0;
+    }
+
+    /**
+     * Check if a tower node is a railway crossing. This method can be called from multiple threads
+     * if the index is not modified at the same time.
+     */
+    public boolean isCrossing(int node) {
+        long pointer = 4L * (node >>> 5);
+        if (pointer + 4 > bits.getCapacity()) {
+            return false;
+        }
+        return (bits.getInt(pointer) & (1 << (node & 31))) != 0;
+    }
+
+    public int getCrossingCount() {
+        return crossingCount;
+    }
+
+    @Override
+    public void flush() {
+        bits.setHeader(0, VERSION);
+        bits.setHeader(4, crossingCount);
+        bits.flush();
+    }
+
+    @Override
+    public void close() {
+        bits.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return bits.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return bits.getCapacity();
+    }
+}
@@ -3,20 +3,23 @@ package de.geofabrik.railway_routing;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.OSMReaderHook;
-import com.carrotsearch.hppc.IntSet;
 
 public class CrossingsSetHook extends OSMReaderHook {
-    private IntSet nodes;
+    private CrossingIndex crossings;
     private OSMReader reader;
     
-    public CrossingsSetHook(OSMReader reader, IntSet crossingsSet) {
-        this.nodes = crossingsSet;
+    public CrossingsSetHook(OSMReader reader, CrossingIndex crossings) {
+        this.crossings = crossings;
         this.reader = reader;
     }
     
     public void processNode(ReaderNode node) {
         if (node.hasTag("railway", "railway_crossing")) {
-            nodes.add(reader.getNodeMap().get(node.getId()));
+            int id = reader.getNodeMap().get(node.getId());
+            // Only tower nodes can be crossings of two tracks. Tower nodes have IDs <= -3 in the node map.
+            if (id <= -3) {
+                crossings.setCrossing(OSMReader.towerIdToMapId(id));
+            }
         }
     }
 }
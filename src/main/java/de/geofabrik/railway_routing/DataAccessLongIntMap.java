@@ -0,0 +1,171 @@
+package de.geofabrik.railway_routing;
+
+import java.io.File;
+
+import com.graphhopper.coll.LongIntMap;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+/**
+ * Hash map from long to int stored in a DataAccess.
+ *
+ * With a memory mapped DataAccess the map lives in the page cache instead of the heap. It is
+ * used for the mapping from OSM node IDs to the IDs of the graph during the import. The map uses
+ * open addressing with linear probing. Every slot has 12 bytes: the key with its sign bit
+ * flipped (zero marks an empty slot) and the value. Long.MIN_VALUE cannot be used as key.
+ */
+public class DataAccessLongIntMap implements LongIntMap {
+    private static final int SLOT_BYTES = 12;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private final Directory dir;
+    private final String name;
+    private final DAType type;
+    private final int emptyValue;
+    private DataAccess table;
+    /** number of slots, always a power of two */
+    private long capacity;
+    private long size = 0;
+    /** number of times the table has grown, used to name the next table */
+    private int generation = 0;
+
+    /**
+     * @param emptyValue value returned by {@link #get(long)} for missing keys
+     */
+    public DataAccessLongIntMap(Directory dir, String name, DAType type, long expectedSize, int emptyValue) {
+        this.dir = dir;
+        this.name = name;
+        this.type = type;
+        this.emptyValue = emptyValue;
+        capacity = Long.highestOneBit(Math.max(1024, (long) (expectedSize / MAX_LOAD_FACTOR)) * 2 - 1);
+        table = createTable(capacity);
+    }
+
+    private DataAccess createTable(long slots) {
+        String tableName = name + "_" + generation++;
+        if (type.isMMap()) {
+            // Empty slots are zero. Do not map the file of an aborted import.
+            new File(dir.getLocation(), tableName).delete();
+        }
+        DataAccess da = dir.find(tableName, type);
+        da.create(slots * SLOT_BYTES);
+        return da;
+    }
+
+    private static long mix(long key) {
+        // finalizer of MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static long getStoredKey(DataAccess da, long pointer) {
+        return ((long) da.getInt(pointer) << 32) | (da.getInt(pointer + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Find the slot of a key or the empty slot where it should be inserted.
+     */
+    private static long findSlot(DataAccess da, long slots, long storedKey) {
+        long mask = slots - 1;
+        long slot = mix(storedKey) & mask;
+        while (true) {
+            long current = getStoredKey(da, slot * SLOT_BYTES);
+            if (current == storedKey || current == 0) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void setSlot(DataAccess da, long slot, long storedKey, int value) {
+        long pointer = slot * SLOT_BYTES;
+        da.setInt(pointer, (int) (storedKey >>> 32));
+        da.setInt(pointer + 4, (int) storedKey);
+        da.setInt(pointer + 8, value);
+    }
+
+    private void grow() {
+        long newCapacity = 2 * capacity;
+        DataAccess newTable = createTable(newCapacity);
+        for (long slot = 0; slot < capacity; ++slot) {
+            long pointer = slot * SLOT_BYTES;
+            long storedKey = getStoredKey(table, pointer);
+            if (storedKey != 0) {
+                setSlot(newTable, findSlot(newTable, newCapacity, storedKey), storedKey, table.getInt(pointer + 8));
+            }
+        }
+        dir.remove(table);
+        table = newTable;
+        capacity = newCapacity;
+    }
+
+    @Override
+    public int put(long key, int value) {
+        if (key == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Long.MIN_VALUE cannot be used as key");
+        }
+        long storedKey = key ^ Long.MIN_VALUE;
+        long slot = findSlot(table, capacity, storedKey);
+        long pointer = slot * SLOT_BYTES;
+        if (getStoredKey(table, pointer) != 0) {
+            int previous = table.getInt(pointer + 8);
+            table.setInt(pointer + 8, value);
+            return previous;
+        }
+        if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+            grow();
+            slot = findSlot(table, capacity, storedKey);
+        }
+        setSlot(table, slot, storedKey, value);
+        ++size;
+        return emptyValue;
+    }
+
+    @Override
+    public int get(long key) {
+        if (key == Long.MIN_VALUE) {
+            return emptyValue;
+        }
+        long storedKey = key ^ Long.MIN_VALUE;
+        long pointer = findSlot(table, capacity, storedKey) * SLOT_BYTES;
+        if (getStoredKey(table, pointer) == 0) {
+            return emptyValue;
+        }
+        return table.getInt(pointer + 8);
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    /**
+     * Get the heap memory used by this map in MB, i.e. 0 unless the DataAccess is stored in the heap.
+     */
+    @Override
+    public int getMemoryUsage() {
+        if (type.isInMemory()) {
+            return (int) (table.getCapacity() / (1024 * 1024));
+        }
+        return 0;
+    }
+
+    /**
+     * Remove the map from the directory. The map cannot be used afterwards.
+     */
+    public void release() {
+        if (table != null) {
+            dir.remove(table);
+            table = null;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package de.geofabrik.railway_routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.Storable;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+/**
+ * Orientation of both ends of every edge of the graph.
+ *
+ * The orientation of an end is the direction from its tower node to the point of the geometry
+ * which is a given distance (the look-ahead) away along the edge. Short first segments of switch
+ * geometries therefore do not distort the angles between the edges of a switch. Edges shorter
+ * than the look-ahead use the direction to their other tower node.
+ *
+ * The orientations are quantized to one byte per end (steps of 1.4°) and stored with two bytes
+ * per edge in the directory of the graph. They are computed once after the import in a parallel
+ * pass and read by {@link SwitchHandler} whenever turn costs are computed, i.e. during the import
+ * and when OSM change files are applied. The headings of the edges can be used to filter map
+ * matching candidates by the direction of travel.
+ */
+public class EdgeBearingIndex implements Storable<EdgeBearingIndex> {
+    private static final int VERSION = 2;
+    private static final String NAME = "railway_edge_bearings";
+    /** number of edges computed by one task of the parallel pass */
+    private static final int CHUNK_SIZE = 65536;
+    private static final double STEP = 2 * Math.PI / 256;
+
+    private final DataAccess bearings;
+    private int edgeCount = 0;
+    /** look-ahead distance in centimetres */
+    private int lookAheadCm = 0;
+
+    public EdgeBearingIndex(Directory dir) {
+        bearings = dir.find(NAME);
+    }
+
+    @Override
+    public EdgeBearingIndex create(long initBytes) {
+        bearings.create(Math.max(initBytes, 8));
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!bearings.loadExisting()) {
+            return false;
+        }
+        if (bearings.getHeader(0) != VERSION) {
+            throw new IllegalStateException("Incompatible version of " + NAME + ", expected " + VERSION
+                    + " but got " + bearings.getHeader(0) + ". Please import the graph again.");
+        }
+        edgeCount = bearings.getHeader(4);
+        lookAheadCm = bearings.getHeader(8);
+        return true;
+    }
+
+    /**
+     * Compute the orientation of an end of an edge.
+     *
+     * @param points geometry of the edge including both tower nodes
+     * @param fromEnd compute the orientation at the last point instead of the first one
+     * @param lookAhead distance along the geometry in metres
+     * @return orientation as returned by {@link AngleCalc#calcOrientation(double, double, double, double)}
+     */
+    public static double calcOrientation(PointList points, boolean fromEnd, double lookAhead,
+            DistanceCalc distanceCalc, AngleCalc angleCalc) {
+        int size = points.getSize();
+        int step = fromEnd ? -1 : 1;
+        int first = fromEnd ? size - 1 : 0;
+        double startLat = points.getLat(first);
+        double startLon = points.getLon(first);
+        double prevLat = startLat;
+        double prevLon = startLon;
+        double distance = 0;
+        for (int i = first + step; i >= 0 && i < size; i += step) {
+            double lat = points.getLat(i);
+            double lon = points.getLon(i);
+            double segment = distanceCalc.calcDist(prevLat, prevLon, lat, lon);
+            if (segment > 0 && distance + segment >= lookAhead) {
+                double ratio = (lookAhead - distance) / segment;
+                return angleCalc.calcOrientation(startLat, startLon, prevLat + ratio * (lat - prevLat),
+                        prevLon + ratio * (lon - prevLon));
+            }
+            distance += segment;
+            prevLat = lat;
+            prevLon = lon;
+        }
+        return angleCalc.calcOrientation(startLat, startLon, prevLat, prevLon);
+    }
+
+    /**
+     * Quantize an orientation in radians to one byte.
+     */
+    static int quantize(double orientation) {
+        return (int) Math.round(orientation / STEP) & 0xFF;
+    }
+
+    /**
+     * Convert a quantized orientation back to radians in the range [-π, π).
+     */
+    static double dequantize(int quantized) {
+        return (byte) quantized * STEP;
+    }
+
+    private void fill(Graph graph, double lookAhead, int from, int to) {
+        AngleCalc angleCalc = new AngleCalc();
+        for (int edge = from; edge < to; ++edge) {
+            PointList points = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).fetchWayGeometry(3);
+            setOrientations(edge, calcOrientation(points, false, lookAhead, Helper.DIST_PLANE, angleCalc),
+                    calcOrientation(points, true, lookAhead, Helper.DIST_PLANE, angleCalc));
+        }
+    }
+
+    /**
+     * Compute the orientations of all edges of a graph.
+     *
+     * The edges are split into chunks which are computed in parallel. Every edge occupies its
+     * own two bytes, therefore the tasks never write to the same position.
+     *
+     * @param lookAhead distance along the geometry in metres
+     * @param threads number of threads
+     */
+    public void fill(Graph graph, double lookAhead, int threads) {
+        int edges = graph.getAllEdges().length();
+        bearings.ensureCapacity(2L * edges);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int start = 0; start < edges; start += CHUNK_SIZE) {
+                final int from = start;
+                final int to = Math.min(edges, start + CHUNK_SIZE);
+                tasks.add(pool.submit(() -> fill(graph, lookAhead, from, to)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        edgeCount = Math.max(edgeCount, edges);
+        lookAheadCm = (int) Math.round(lookAhead * 100);
+    }
+
+    /**
+     * Set the orientations of an edge in the direction it is stored in. The capacity has to be
+     * ensured by the caller.
+     */
+    private void setOrientations(int edge, double atBase, double atAdj) {
+        bearings.setShort(2L * edge, (short) (quantize(atBase) | quantize(atAdj) << 8));
+    }
+
+    /**
+     * Get the orientation of an end of an edge.
+     *
+     * @param atAdj the orientation at the adjacent node of the stored direction of the edge,
+     * i.e. the reverse state of an edge iterator whose base node is the end of interest
+     * @return orientation in radians as returned by
+     * {@link AngleCalc#calcOrientation(double, double, double, double)}, quantized to 1.4°
+     */
+    public double getOrientation(int edge, boolean atAdj) {
+        int both = bearings.getShort(2L * edge);
+        return dequantize(atAdj ? both >> 8 : both);
+    }
+
+    /**
+     * Get the heading of an end of an edge, i.e. the compass direction from the node into the
+     * edge.
+     *
+     * @param atAdj see {@link #getOrientation(int, boolean)}
+     * @return heading in degrees, clockwise from north in the range [0, 360)
+     */
+    public double getHeading(int edge, boolean atAdj) {
+        return toHeading(getOrientation(edge, atAdj));
+    }
+
+    /**
+     * Convert an orientation as returned by {@link AngleCalc#calcOrientation(double, double, double, double)}
+     * to a heading in degrees, clockwise from north in the range [0, 360).
+     */
+    public static double toHeading(double orientation) {
+        double heading = 90 - Math.toDegrees(orientation);
+        heading %= 360;
+        return heading < 0 ? heading + 360 : heading;
+    }
+
+    /**
+     * Get the difference between two headings without regard to the direction of travel, i.e.
+     * a track heading north matches a train heading south.
+     *
+     * @return difference in degrees in the range [0, 90]
+     */
+    public static double getUndirectedDifference(double heading1, double heading2) {
+        double diff = Math.abs(heading1 - heading2) % 180;
+        return diff > 90 ? 180 - diff : diff;
+    }
+
+    /**
+     * Check if the index has an entry for an edge.
+     */
+    public boolean contains(int edge) {
+        return edge >= 0 && edge < edgeCount;
+    }
+
+    /**
+     * Get the number of edges with an entry in this index.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Get the look-ahead distance the orientations were computed with in metres.
+     */
+    public double getLookAhead() {
+        return lookAheadCm / 100.0;
+    }
+
+    @Override
+    public void flush() {
+        bearings.setHeader(0, VERSION);
+        bearings.setHeader(4, edgeCount);
+        bearings.setHeader(8, lookAheadCm);
+        bearings.flush();
+    }
+
+    @Override
+    public void close() {
+        bearings.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return bearings.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return bearings.getCapacity();
+    }
+}
@@ -0,0 +1,208 @@
+package de.geofabrik.railway_routing;
+
+import java.util.HashMap;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+/**
+ * Headings of the observations of a track, used by {@link RailLocationIndex} to drop map matching
+ * candidates on edges which do not run in the direction of travel.
+ *
+ * The heading of an observation is the course recorded by the GPS receiver if the input provides
+ * one. Otherwise it is derived from the neighbouring observations. Observations whose neighbours
+ * are too close to each other, e.g. while the train is standing, get no heading and keep all
+ * their candidates.
+ *
+ * The location index only knows the coordinates of an observation. The map matching looks the
+ * observations up in the order of the track (skipping some of them), therefore observations at
+ * the same coordinates, e.g. of a train passing a place twice, are told apart by their position
+ * in the track: a lookup returns the first observation at these coordinates after the
+ * observation returned by the previous lookup.
+ *
+ * A filter belongs to one track and is used by one thread. It counts the candidates it has seen
+ * and the transitions between the candidates of consecutive lookups, i.e. the routes the map
+ * matching has to compute, before and after dropping candidates.
+ */
+public class HeadingFilter {
+    /** minimum distance between the neighbours of an observation to derive its heading in metres */
+    public static final double MIN_DISTANCE = 10;
+
+    private static final AngleCalc ANGLE_CALC = new AngleCalc();
+
+    private final double tolerance;
+    private final double[] headings;
+    /** positions of the observations in the track by their coordinates */
+    private final HashMap<Key, IntArrayList> observations;
+    /** position of the observation returned by the previous lookup, -1 before the first lookup */
+    private int lastObservation = -1;
+    private long candidates = 0;
+    private long pruned = 0;
+    private long transitions = 0;
+    private long keptTransitions = 0;
+    private int lastCandidates = 0;
+    private int lastKept = 0;
+
+    /**
+     * Observations are looked up by their exact coordinates.
+     */
+    private static final class Key {
+        private final double lat;
+        private final double lon;
+
+        Key(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return lat == other.lat && lon == other.lon;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Double.hashCode(lat) + Double.hashCode(lon);
+        }
+    }
+
+    /**
+     * @param points observations of the track
+     * @param courses course of every observation in degrees clockwise from north, NaN if
+     * unknown. May be null or shorter than the track.
+     * @param tolerance maximum difference between the heading of an observation and the heading
+     * of the edge of a candidate in degrees
+     */
+    public HeadingFilter(PointList points, double[] courses, double tolerance) {
+        this.tolerance = tolerance;
+        headings = calcHeadings(points, courses, Helper.DIST_PLANE);
+        observations = new HashMap<Key, IntArrayList>(2 * headings.length);
+        for (int i = 0; i < headings.length; ++i) {
+            Key key = new Key(points.getLat(i), points.getLon(i));
+            IntArrayList positions = observations.get(key);
+            if (positions == null) {
+                positions = new IntArrayList(1);
+                observations.put(key, positions);
+            }
+            positions.add(i);
+        }
+    }
+
+    /**
+     * Get the heading of every observation of a track.
+     *
+     * Observations without a course get the direction from their predecessor to their successor
+     * (or to/from themselves at the ends of the track).
+     *
+     * @return heading in degrees clockwise from north, NaN if the observation has no course and
+     * its neighbours are less than {@link #MIN_DISTANCE} apart
+     */
+    public static double[] calcHeadings(PointList points, double[] courses, DistanceCalc distanceCalc) {
+        int size = points.getSize();
+        double[] result = new double[size];
+        for (int i = 0; i < size; ++i) {
+            if (courses != null && i < courses.length && !Double.isNaN(courses[i])) {
+                result[i] = courses[i];
+                continue;
+            }
+            int prev = Math.max(0, i - 1);
+            int next = Math.min(size - 1, i + 1);
+            double lat1 = points.getLat(prev);
+            double lon1 = points.getLon(prev);
+            double lat2 = points.getLat(next);
+            double lon2 = points.getLon(next);
+            if (prev == next || distanceCalc.calcDist(lat1, lon1, lat2, lon2) < MIN_DISTANCE) {
+                result[i] = Double.NaN;
+            } else {
+                result[i] = EdgeBearingIndex.toHeading(ANGLE_CALC.calcOrientation(lat1, lon1, lat2, lon2));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the heading of an observation. Observations have to be looked up in the order of the
+     * track, see the description of this class.
+     *
+     * @return heading in degrees clockwise from north, NaN if the observation is unknown or has
+     * no heading
+     */
+    public double getHeading(double lat, double lon) {
+        IntArrayList positions = observations.get(new Key(lat, lon));
+        if (positions == null) {
+            return Double.NaN;
+        }
+        // Fall back to the first observation if the track is looked up again from its start.
+        int observation = positions.get(0);
+        for (int i = 0; i < positions.size(); ++i) {
+            if (positions.get(i) > lastObservation) {
+                observation = positions.get(i);
+                break;
+            }
+        }
+        lastObservation = observation;
+        return headings[observation];
+    }
+
+    /**
+     * Check if an edge runs in the direction of an observation. The direction of travel on the
+     * edge does not matter.
+     */
+    public boolean accepts(double edgeHeading, double observationHeading) {
+        return EdgeBearingIndex.getUndirectedDifference(edgeHeading, observationHeading) <= tolerance;
+    }
+
+    /**
+     * Record the result of a candidate lookup.
+     *
+     * @param found number of candidates found by the location index
+     * @param kept number of candidates left after filtering
+     */
+    void count(int found, int kept) {
+        candidates += found;
+        pruned += found - kept;
+        transitions += (long) lastCandidates * found;
+        keptTransitions += (long) lastKept * kept;
+        lastCandidates = found;
+        lastKept = kept;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Number of candidates found by the location index.
+     */
+    public long getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Number of candidates dropped by this filter.
+     */
+    public long getPruned() {
+        return pruned;
+    }
+
+    /**
+     * Number of transitions between the candidates of consecutive lookups without filtering.
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Number of transitions between the candidates of consecutive lookups which were kept.
+     */
+    public long getKeptTransitions() {
+        return keptTransitions;
+    }
+}
@@ -0,0 +1,254 @@
+package de.geofabrik.railway_routing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+
+import de.geofabrik.railway_routing.util.OsmChangeReader.Action;
+import de.geofabrik.railway_routing.util.OsmChangeReader.OsmChange;
+
+/**
+ * Apply OSM changes to an imported graph without importing it again.
+ *
+ * Only changes which keep the topology of the graph can be applied:
+ * <ul>
+ * <li>Modified tags of ways in the graph. The edges of the way are encoded again.</li>
+ * <li>Deleted ways in the graph. Their edges are blocked for all profiles.</li>
+ * <li>Added or removed railway=railway_crossing tags of tower nodes.</li>
+ * </ul>
+ * The turn costs are computed again at all tower nodes of the changed edges and crossings.
+ * New railway ways and ways whose number of nodes has changed are counted as unsupported changes
+ * and will be in the graph after the next full import. Moved or replaced nodes of a way with the
+ * same number of nodes are not detected.
+ *
+ * Graphs with CH or LM preparations cannot be updated because the preparations would have to be
+ * done again. Graphs whose way geometries were simplified during the import cannot be updated
+ * because the number of nodes of their ways is unknown.
+ */
+public class OsmChangeUpdater {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /** maximum distance in metres between a node of a change file and the tower node it refers to */
+    private static final double TOWER_NODE_TOLERANCE = 0.1;
+
+    private final RailwayHopper hopper;
+    private final GraphHopperStorage ghs;
+    private final EncodingManager encodingManager;
+    private final OsmWayIdIndex osmWayIds;
+    private final CrossingIndex crossings;
+
+    private int updatedWays = 0;
+    private int updatedEdges = 0;
+    private int blockedWays = 0;
+    private int changedCrossings = 0;
+    private int turnCostNodes = 0;
+    private int unsupportedChanges = 0;
+
+    /**
+     * @throws IllegalStateException if the graph cannot be updated
+     */
+    public OsmChangeUpdater(RailwayHopper hopper) {
+        if (hopper.getCHFactoryDecorator().isEnabled() || hopper.getLMFactoryDecorator().isEnabled()) {
+            throw new IllegalStateException("Graphs with CH or LM preparations cannot be updated. Please disable"
+                    + " prepare.ch.weightings and prepare.lm.weightings or import the graph again.");
+        }
+        if (hopper.getOsmWayIdIndex() == null) {
+            throw new IllegalStateException("The graph at " + hopper.getGraphHopperLocation()
+                    + " contains no OSM way IDs. Please import it again.");
+        }
+        if (!hopper.getOsmWayIdIndex().hasCompleteGeometries()) {
+            throw new IllegalStateException("The way geometries of the graph at " + hopper.getGraphHopperLocation()
+                    + " were simplified during the import. Please import it again with"
+                    + " datareader.updatable=true.");
+        }
+        this.hopper = hopper;
+        this.ghs = hopper.getGraphHopperStorage();
+        this.encodingManager = hopper.getEncodingManager();
+        this.osmWayIds = hopper.getOsmWayIdIndex();
+        this.crossings = hopper.getCrossingIndex();
+    }
+
+    /**
+     * Get the edges of the given ways in the order of their IDs, i.e. in the order of the way.
+     */
+    private Map<Long, IntArrayList> findEdges(Map<Long, ReaderWay> ways) {
+        Map<Long, IntArrayList> edgesByWay = new HashMap<Long, IntArrayList>();
+        int edgeCount = Math.min(osmWayIds.getEdgeCount(), ghs.getEdges());
+        for (int edge = 0; edge < edgeCount; ++edge) {
+            long wayId = osmWayIds.getOsmWayId(edge);
+            if (!ways.containsKey(wayId)) {
+                continue;
+            }
+            IntArrayList edges = edgesByWay.get(wayId);
+            if (edges == null) {
+                edges = new IntArrayList(4);
+                edgesByWay.put(wayId, edges);
+            }
+            edges.add(edge);
+        }
+        return edgesByWay;
+    }
+
+    /**
+     * Check if the edges of a way still have as many points as the way has nodes. The edges keep
+     * all nodes of their way because the geometries of graphs imported with
+     * datareader.updatable=true are not simplified.
+     */
+    private boolean geometryMatches(ReaderWay way, IntArrayList edges) {
+        int points = 1;
+        for (int i = 0; i < edges.size(); ++i) {
+            points += ghs.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE).fetchWayGeometry(3).getSize() - 1;
+        }
+        return points == way.getNodes().size();
+    }
+
+    private void setFlags(IntArrayList edges, IntsRef flags, IntHashSet towerNodes) {
+        for (int i = 0; i < edges.size(); ++i) {
+            // The import sets the flags in the direction of the way which is the storage direction.
+            EdgeIteratorState edge = ghs.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE);
+            edge.setFlags(flags);
+            towerNodes.add(edge.getBaseNode());
+            towerNodes.add(edge.getAdjNode());
+            ++updatedEdges;
+        }
+    }
+
+    private boolean isRailway(ReaderWay way) {
+        return encodingManager.acceptWay(way, new EncodingManager.AcceptWay());
+    }
+
+    private void applyWayChanges(OsmChange change, IntHashSet towerNodes) {
+        Map<Long, IntArrayList> edgesByWay = findEdges(change.getWays());
+        for (ReaderWay way : change.getWays().values()) {
+            Action action = change.getWayAction(way.getId());
+            IntArrayList edges = edgesByWay.get(way.getId());
+            if (edges == null) {
+                if (action != Action.DELETE && isRailway(way)) {
+                    logger.warn("Way " + way.getId() + " is not in the graph yet. It will be added by the next import.");
+                    ++unsupportedChanges;
+                }
+                continue;
+            }
+            if (action == Action.DELETE) {
+                setFlags(edges, encodingManager.createEdgeFlags(), towerNodes);
+                ++blockedWays;
+                continue;
+            }
+            if (!geometryMatches(way, edges)) {
+                logger.warn("The nodes of way " + way.getId() + " have changed. The change will be applied by the next import.");
+                ++unsupportedChanges;
+                continue;
+            }
+            IntsRef flags = encodingManager.createEdgeFlags();
+            EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+            // Ways which are not railways anymore get no access at all.
+            if (encodingManager.acceptWay(way, acceptWay)) {
+                encodingManager.handleWayTags(flags, way, acceptWay, 0);
+            }
+            setFlags(edges, flags, towerNodes);
+            ++updatedWays;
+        }
+    }
+
+    /**
+     * Get the tower node at the location of an OSM node or -1 if there is none.
+     */
+    private int findTowerNode(double lat, double lon) {
+        QueryResult qr = hopper.getLocationIndex().findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+        if (!qr.isValid() || qr.getSnappedPosition() != QueryResult.Position.TOWER
+                || qr.getQueryDistance() > TOWER_NODE_TOLERANCE) {
+            return -1;
+        }
+        return qr.getClosestNode();
+    }
+
+    private void applyNodeChanges(OsmChange change, IntHashSet towerNodes) {
+        for (ReaderNode node : change.getNodes().values()) {
+            if (Double.isNaN(node.getLat()) || Double.isNaN(node.getLon())) {
+                continue;
+            }
+            int towerNode = findTowerNode(node.getLat(), node.getLon());
+            if (towerNode < 0) {
+                continue;
+            }
+            boolean crossing = change.getNodeAction(node.getId()) != Action.DELETE
+                    && node.hasTag("railway", "railway_crossing");
+            if (crossing == crossings.isCrossing(towerNode)) {
+                continue;
+            }
+            if (crossing) {
+                crossings.setCrossing(towerNode);
+            } else {
+                crossings.clearCrossing(towerNode);
+            }
+            towerNodes.add(towerNode);
+            ++changedCrossings;
+        }
+    }
+
+    /**
+     * Apply the changes to the graph. The graph is written to disk afterwards.
+     */
+    public void apply(OsmChange change) {
+        IntHashSet towerNodes = new IntHashSet();
+        applyWayChanges(change, towerNodes);
+        applyNodeChanges(change, towerNodes);
+
+        int[] nodes = towerNodes.toArray();
+        Arrays.sort(nodes);
+        TurnCostExtension tcs = (TurnCostExtension) ghs.getExtension();
+        SwitchHandler switchHandler = hopper.createSwitchHandler();
+        TurnCostBuffer turnCosts = new TurnCostBuffer();
+        for (int node : nodes) {
+            switchHandler.handleSwitch(node, turnCosts);
+            turnCosts.overwrite(tcs);
+        }
+        turnCostNodes += nodes.length;
+        hopper.flush();
+        logger.info("Updated " + updatedWays + " ways (" + updatedEdges + " edges), blocked " + blockedWays
+                + " deleted ways, changed " + changedCrossings + " railway crossings, computed turn costs at "
+                + turnCostNodes + " nodes, " + unsupportedChanges + " changes need a full import");
+    }
+
+    public int getUpdatedWays() {
+        return updatedWays;
+    }
+
+    public int getUpdatedEdges() {
+        return updatedEdges;
+    }
+
+    public int getBlockedWays() {
+        return blockedWays;
+    }
+
+    public int getChangedCrossings() {
+        return changedCrossings;
+    }
+
+    public int getTurnCostNodes() {
+        return turnCostNodes;
+    }
+
+    /**
+     * Get the number of changes which could not be applied and need a full import.
+     */
+    public int getUnsupportedChanges() {
+        return unsupportedChanges;
+    }
+}
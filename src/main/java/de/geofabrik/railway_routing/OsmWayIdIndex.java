@@ -0,0 +1,111 @@
+package de.geofabrik.railway_routing;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+
+/**
+ * OSM way ID of every edge of the graph.
+ *
+ * The IDs are stored with eight bytes per edge in the directory of the graph. They are written
+ * during the import and needed to find the edges of a way when OSM change files are applied to
+ * an existing graph. The index also records whether the edges keep all nodes of their ways, i.e.
+ * whether the geometries were simplified during the import.
+ */
+public class OsmWayIdIndex implements Storable<OsmWayIdIndex> {
+    private static final int VERSION = 1;
+    private static final String NAME = "railway_osm_way_ids";
+
+    private final DataAccess ids;
+    private int edgeCount = 0;
+    private boolean completeGeometries = false;
+
+    public OsmWayIdIndex(Directory dir) {
+        ids = dir.find(NAME);
+    }
+
+    @Override
+    public OsmWayIdIndex create(long initBytes) {
+        ids.create(Math.max(initBytes, 8));
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!ids.loadExisting()) {
+            return false;
+        }
+        if (ids.getHeader(0) != VERSION) {
+            throw new IllegalStateException("Incompatible version of " + NAME + ", expected " + VERSION
+                    + " but got " + ids.getHeader(0) + ". Please import the graph again.");
+        }
+        edgeCount = ids.getHeader(4);
+        // missing in graphs imported by older versions
+        completeGeometries = ids.getHeader(8) == 1;
+        return true;
+    }
+
+    public void setOsmWayId(int edge, long osmWayId) {
+        long pointer = 8L * edge;
+        ids.ensureCapacity(pointer + 8);
+        ids.setInt(pointer, (int) osmWayId);
+        ids.setInt(pointer + 4, (int) (osmWayId >>> 32));
+        edgeCount = Math.max(edgeCount, edge + 1);
+    }
+
+    /**
+     * Get the OSM way ID of an edge or -1 if it is unknown.
+     */
+    public long getOsmWayId(int edge) {
+        if (edge < 0 || edge >= edgeCount) {
+            return -1;
+        }
+        long pointer = 8L * edge;
+        return (ids.getInt(pointer) & 0xFFFFFFFFL) | ((long) ids.getInt(pointer + 4) << 32);
+    }
+
+    /**
+     * Record whether the way geometries of the edges were imported without simplification.
+     */
+    public OsmWayIdIndex setCompleteGeometries(boolean completeGeometries) {
+        this.completeGeometries = completeGeometries;
+        return this;
+    }
+
+    /**
+     * Check if the edges of a way have a point for every node of the way.
+     */
+    public boolean hasCompleteGeometries() {
+        return completeGeometries;
+    }
+
+    /**
+     * Get the number of edges with an entry in this index.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public void flush() {
+        ids.setHeader(0, VERSION);
+        ids.setHeader(4, edgeCount);
+        ids.setHeader(8, completeGeometries ? 1 : 0);
+        ids.flush();
+    }
+
+    @Override
+    public void close() {
+        ids.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return ids.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return ids.getCapacity();
+    }
+}
@@ -2,10 +2,10 @@ package de.geofabrik.railway_routing;
 
 import static com.graphhopper.routing.util.EncodingManager.getKey;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Arrays;
 import java.util.List;
+import java.util.TreeMap;
 
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
@@ -17,8 +17,6 @@ import com.graphhopper.routing.profiles.EncodedValue;
 import com.graphhopper.routing.profiles.UnsignedDecimalEncodedValue;
 import com.graphhopper.util.PMap;
 
-import de.geofabrik.railway_routing.util.MultiValueChecker;
-
 public class RailFlagEncoder extends AbstractFlagEncoder {
 
     public static final String NAME = "name";
@@ -30,18 +28,24 @@ public class RailFlagEncoder extends AbstractFlagEncoder {
     public static final String MAXSPEED = "max_speed";
     public static final String SPEED_FACTOR = "speedFactor";
     public static final String ACCEPT_YARD_SPUR = "yardSpur";
+    public static final String DIRECTION_CHANGE_TIME = "directionChangeTime";
 
     protected boolean speedTwoDirections = false;
     protected final Integer defaultSpeed = 25;
     private int tk;
     private String name;
     private HashSet<String> railwayValues;
-    private ArrayList<String> electrifiedValues;
-    private ArrayList<Integer> acceptedVoltages;
-    private ArrayList<Double> acceptedFrequencies;
-    private ArrayList<Integer> acceptedGauges;
+    private HashSet<String> electrifiedValues;
+    /** sorted */
+    private int[] acceptedVoltages;
+    /** sorted */
+    private double[] acceptedFrequencies;
+    /** sorted */
+    private int[] acceptedGauges;
     private double speedCorrectionFactor;
     private boolean acceptYardSpur;
+    /** seconds per unit of turn costs, i.e. time needed to change the direction of travel */
+    private double directionChangeTime = 60 * 4;
 
     public RailFlagEncoder() {
         this(5, 5, 0, "rail");
@@ -95,41 +99,63 @@ public class RailFlagEncoder extends AbstractFlagEncoder {
         // electrified values
         String electrifiedProps = properties.get(ELECTRIFIED, "");
         if (!electrifiedProps.equals("")) {
-            this.electrifiedValues = new ArrayList<String>(Arrays.asList(electrifiedProps.split(";")));
+            this.electrifiedValues = new HashSet<String>(Arrays.asList(electrifiedProps.split(";")));
         } else {
-            this.electrifiedValues = new ArrayList<String>();
-        }
-
-        this.acceptedVoltages = new ArrayList<Integer>();
-        for (String v : properties.get(VOLATAGES, "").split(";")) {
-            if (!v.equals("")) {
-                this.acceptedVoltages.add(Integer.parseInt(v));
-            }
-        }
-
-        this.acceptedFrequencies = new ArrayList<Double>();
-        for (String v : properties.get(FREQUENCIES, "").split(";")) {
-            if (!v.equals("")) {
-                this.acceptedFrequencies.add(Double.parseDouble(v));
-            }
+            this.electrifiedValues = new HashSet<String>();
         }
 
-        this.acceptedGauges = new ArrayList<Integer>();
-        for (String v : properties.get(GAUGES, "").split(";")) {
-            if (!v.equals("")) {
-                this.acceptedGauges.add(Integer.parseInt(v));
-            }
-        }
+        this.acceptedVoltages = parseIntList(properties.get(VOLATAGES, ""));
+        this.acceptedFrequencies = parseDoubleList(properties.get(FREQUENCIES, ""));
+        this.acceptedGauges = parseIntList(properties.get(GAUGES, ""));
 
         this.maxPossibleSpeed = properties.getInt(MAXSPEED, 100);
         this.speedCorrectionFactor = properties.getDouble("speedCorrectionFactor", 0.9);
         this.acceptYardSpur = properties.getBool(ACCEPT_YARD_SPUR, true);
+        this.directionChangeTime = properties.getDouble(DIRECTION_CHANGE_TIME, 60 * 4);
+    }
+
+    private static int[] parseIntList(String value) {
+        int[] result = Arrays.stream(value.split(";"))
+                .filter(v -> !v.equals(""))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static double[] parseDoubleList(String value) {
+        double[] result = Arrays.stream(value.split(";"))
+                .filter(v -> !v.equals(""))
+                .mapToDouble(Double::parseDouble)
+                .toArray();
+        Arrays.sort(result);
+        return result;
     }
 
     public int getMaxTurnCosts() {
         return tk;
     }
 
+    public double getDirectionChangeTime() {
+        return directionChangeTime;
+    }
+
+    /**
+     * Get the turn costs in seconds.
+     *
+     * The turn costs are scaled here instead of in {@link RailTurnWeighting} because the
+     * preparation of edge-based contraction hierarchies uses the TurnWeighting of GraphHopper.
+     * Both therefore return the same weights.
+     */
+    @Override
+    public double getTurnCost(long flags) {
+        double cost = super.getTurnCost(flags);
+        if (cost == 0 || Double.isInfinite(cost)) {
+            return cost;
+        }
+        return cost * directionChangeTime;
+    }
+
     public void setSpeedCorrectionFactor(double factor) {
         speedCorrectionFactor = factor;
     }
@@ -147,19 +173,17 @@ public class RailFlagEncoder extends AbstractFlagEncoder {
         if (electrifiedValues.isEmpty()) {
             return true;
         }
-        String electrified = way.getTag("electrified", null);
+        WayAttributes attributes = WayAttributes.of(way);
+        String electrified = attributes.getElectrified();
         if (electrified == null) {
             return true;
         }
         if (electrifiedValues.contains(electrified) || electrified.equals("yes")) {
-            String voltage = way.getTag("voltage");
-            String frequency = way.getTag("frequency");
-            if (MultiValueChecker.tagContainsInt(voltage, acceptedVoltages, true)
-                    && MultiValueChecker.tagContainsDouble(frequency, acceptedFrequencies, true)) {
+            if (attributes.hasVoltage(acceptedVoltages) && attributes.hasFrequency(acceptedFrequencies)) {
                 return true;
             }
             // Grounded sections of the overhead line are treated as compatible.
-            if (voltage == null || voltage.equals("0")) {
+            if (attributes.isVoltageGrounded()) {
                 return true;
             }
         }
@@ -167,7 +191,10 @@ public class RailFlagEncoder extends AbstractFlagEncoder {
     }
 
     public boolean hasCompatibleGauge(ReaderWay way) {
-        return MultiValueChecker.tagContainsInt(way.getTag("gauge"), acceptedGauges, true);
+        if (acceptedGauges.length == 0) {
+            return true;
+        }
+        return WayAttributes.of(way).hasGauge(acceptedGauges);
     }
 
     public boolean isYardSpur(ReaderWay way) {
@@ -266,6 +293,17 @@ public class RailFlagEncoder extends AbstractFlagEncoder {
         return 0;
     }
 
+    /**
+     * Name and properties of this encoder in a stable order. Encoders with the same
+     * configuration accept the same ways.
+     */
+    public String getConfiguration() {
+        if (properties == null) {
+            return name;
+        }
+        return name + " " + new TreeMap<String, String>(properties.toMap());
+    }
+
     @Override
     public String toString() {
         return name;
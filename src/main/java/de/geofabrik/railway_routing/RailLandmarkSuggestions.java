@@ -0,0 +1,162 @@
+package de.geofabrik.railway_routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.lm.LandmarkSuggestion;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.shapes.BBox;
+
+/**
+ * Place landmarks at the periphery of the railway network of a profile.
+ *
+ * The generic heuristic of GraphHopper starts at a random node and picks the node farthest away
+ * by weight as next landmark. On railway networks this tends to pick the ends of a few long main
+ * lines. Instead, the nodes of the largest network of the profile are split into one sector per
+ * landmark around its centre and the node farthest away from the centre is picked in every
+ * sector. These are usually termini or the ends of lines at a border. Sectors without nodes
+ * (e.g. at the coast) are filled by the node farthest away from all landmarks picked so far.
+ *
+ * Only the largest network gets suggestions. This is sufficient as long as
+ * prepare.lm.min_network_size is not reduced because GraphHopper only creates landmarks for
+ * networks with at least half of the nodes of the graph by default.
+ */
+public class RailLandmarkSuggestions {
+    private final Graph graph;
+    private final NodeAccess nodeAccess;
+
+    public RailLandmarkSuggestions(Graph graph) {
+        this.graph = graph;
+        this.nodeAccess = graph.getNodeAccess();
+    }
+
+    /**
+     * Get the nodes of the largest network which can be used by a profile.
+     */
+    IntArrayList findLargestNetwork(FlagEncoder encoder) {
+        EdgeExplorer explorer = graph.createEdgeExplorer(DefaultEdgeFilter.allEdges(encoder));
+        int nodes = graph.getNodes();
+        boolean[] visited = new boolean[nodes];
+        IntArrayList largest = new IntArrayList();
+        IntArrayList current = new IntArrayList();
+        for (int start = 0; start < nodes; ++start) {
+            if (visited[start]) {
+                continue;
+            }
+            // breadth first search, the list of visited nodes is the queue
+            current.clear();
+            current.add(start);
+            visited[start] = true;
+            for (int i = 0; i < current.size(); ++i) {
+                EdgeIterator iter = explorer.setBaseNode(current.get(i));
+                while (iter.next()) {
+                    int adj = iter.getAdjNode();
+                    if (!visited[adj]) {
+                        visited[adj] = true;
+                        current.add(adj);
+                    }
+                }
+            }
+            if (current.size() > largest.size()) {
+                IntArrayList tmp = largest;
+                largest = current;
+                current = tmp;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Squared distance on a plane which is good enough to compare distances within a country.
+     */
+    private static double distanceSquared(double lat1, double lon1, double lat2, double lon2, double lonFactor) {
+        double dLat = lat1 - lat2;
+        double dLon = (lon1 - lon2) * lonFactor;
+        return dLat * dLat + dLon * dLon;
+    }
+
+    /**
+     * Create the landmark suggestion for a profile.
+     *
+     * @param encoder profile
+     * @param landmarks number of landmarks
+     * @return the suggestion or null if the network of the profile has fewer nodes than landmarks
+     */
+    public LandmarkSuggestion createSuggestion(FlagEncoder encoder, int landmarks) {
+        IntArrayList network = findLargestNetwork(encoder);
+        int size = network.size();
+        if (size < landmarks) {
+            return null;
+        }
+        double[] lats = new double[size];
+        double[] lons = new double[size];
+        double sumLat = 0;
+        double sumLon = 0;
+        BBox box = BBox.createInverse(false);
+        for (int i = 0; i < size; ++i) {
+            int node = network.get(i);
+            lats[i] = nodeAccess.getLat(node);
+            lons[i] = nodeAccess.getLon(node);
+            sumLat += lats[i];
+            sumLon += lons[i];
+            box.update(lats[i], lons[i]);
+        }
+        double centreLat = sumLat / size;
+        double centreLon = sumLon / size;
+        double lonFactor = Math.cos(Math.toRadians(centreLat));
+
+        // farthest node from the centre per sector
+        int[] farthest = new int[landmarks];
+        double[] farthestDistance = new double[landmarks];
+        for (int s = 0; s < landmarks; ++s) {
+            farthest[s] = -1;
+            farthestDistance[s] = -1;
+        }
+        for (int i = 0; i < size; ++i) {
+            double angle = Math.atan2(lats[i] - centreLat, (lons[i] - centreLon) * lonFactor) + Math.PI;
+            int sector = Math.min(landmarks - 1, (int) (angle / (2 * Math.PI) * landmarks));
+            double distance = distanceSquared(lats[i], lons[i], centreLat, centreLon, lonFactor);
+            if (distance > farthestDistance[sector]) {
+                farthestDistance[sector] = distance;
+                farthest[sector] = i;
+            }
+        }
+        List<Integer> landmarkIds = new ArrayList<Integer>(landmarks);
+        // distance of every node to the closest landmark picked so far
+        double[] closestLandmark = new double[size];
+        Arrays.fill(closestLandmark, Double.MAX_VALUE);
+        for (int s = 0; s < landmarks; ++s) {
+            if (farthest[s] != -1) {
+                addLandmark(landmarkIds, closestLandmark, farthest[s], lats, lons, lonFactor, network);
+            }
+        }
+        while (landmarkIds.size() < landmarks) {
+            int next = 0;
+            for (int i = 1; i < size; ++i) {
+                if (closestLandmark[i] > closestLandmark[next]) {
+                    next = i;
+                }
+            }
+            addLandmark(landmarkIds, closestLandmark, next, lats, lons, lonFactor, network);
+        }
+        return new LandmarkSuggestion(landmarkIds, box);
+    }
+
+    private static void addLandmark(List<Integer> landmarkIds, double[] closestLandmark, int index,
+            double[] lats, double[] lons, double lonFactor, IntArrayList network) {
+        landmarkIds.add(network.get(index));
+        for (int i = 0; i < closestLandmark.length; ++i) {
+            double distance = distanceSquared(lats[i], lons[i], lats[index], lons[index], lonFactor);
+            if (distance < closestLandmark[i]) {
+                closestLandmark[i] = distance;
+            }
+        }
+    }
+}
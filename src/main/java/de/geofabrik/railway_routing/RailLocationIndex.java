@@ -0,0 +1,125 @@
+package de.geofabrik.railway_routing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+/**
+ * Location index which drops map matching candidates on edges running in another direction than
+ * the train.
+ *
+ * The map matching looks up the candidates of every observation with
+ * {@link #findNClosest(double, double, EdgeFilter, double)}. Near switches and crossings an
+ * observation also gets candidates on the diverging and crossing tracks, and the number of
+ * routes computed between the candidates of consecutive observations grows quadratically with
+ * the number of candidates. Parallel tracks run in the direction of the train and are not
+ * dropped. If a {@link HeadingFilter} has been set for the
+ * current thread, candidates whose edge differs from the heading of the observation by more than
+ * the tolerance are dropped. The closest candidate and candidates snapped to a tower node are
+ * always kept.
+ *
+ * Without a filter the index behaves like LocationIndexTree.
+ */
+public class RailLocationIndex extends LocationIndexTree {
+    /** maximum difference between the headings of both ends of a short edge to treat it as straight in degrees */
+    private static final double STRAIGHT_EDGE = 10;
+
+    private static final AngleCalc ANGLE_CALC = new AngleCalc();
+
+    private final ThreadLocal<HeadingFilter> headingFilter = new ThreadLocal<HeadingFilter>();
+    private EdgeBearingIndex bearings = null;
+
+    public RailLocationIndex(Graph graph, Directory dir) {
+        super(graph, dir);
+    }
+
+    /**
+     * Use the stored orientations of the edges instead of their geometries where possible.
+     *
+     * @param bearings orientations of the edges, may be null
+     */
+    public RailLocationIndex setBearings(EdgeBearingIndex bearings) {
+        this.bearings = bearings;
+        return this;
+    }
+
+    /**
+     * Filter the candidates looked up by the current thread.
+     *
+     * @param filter headings of the track matched by this thread, null to stop filtering
+     */
+    public void setHeadingFilter(HeadingFilter filter) {
+        if (filter == null) {
+            headingFilter.remove();
+        } else {
+            headingFilter.set(filter);
+        }
+    }
+
+    @Override
+    public List<QueryResult> findNClosest(double queryLat, double queryLon, EdgeFilter edgeFilter, double radius) {
+        List<QueryResult> candidates = super.findNClosest(queryLat, queryLon, edgeFilter, radius);
+        HeadingFilter filter = headingFilter.get();
+        if (filter == null) {
+            return candidates;
+        }
+        double heading = filter.getHeading(queryLat, queryLon);
+        if (candidates.size() < 2 || Double.isNaN(heading)) {
+            filter.count(candidates.size(), candidates.size());
+            return candidates;
+        }
+        QueryResult closest = candidates.get(0);
+        for (QueryResult qr : candidates) {
+            if (qr.getQueryDistance() < closest.getQueryDistance()) {
+                closest = qr;
+            }
+        }
+        List<QueryResult> kept = new ArrayList<QueryResult>(candidates.size());
+        for (QueryResult qr : candidates) {
+            if (qr == closest || qr.getSnappedPosition() == QueryResult.Position.TOWER
+                    || filter.accepts(getEdgeHeading(qr), heading)) {
+                kept.add(qr);
+            }
+        }
+        filter.count(candidates.size(), kept.size());
+        return kept;
+    }
+
+    /**
+     * Get the heading of the edge of a candidate at the snapped point.
+     *
+     * Short edges whose ends have the same orientation are straight and their stored orientation
+     * is used. Otherwise the heading of the segment of the geometry the candidate was snapped to
+     * is computed.
+     *
+     * @return heading in degrees clockwise from north
+     */
+    private double getEdgeHeading(QueryResult qr) {
+        EdgeIteratorState edge = qr.getClosestEdge();
+        int edgeId = edge.getEdge();
+        if (bearings != null && bearings.contains(edgeId) && edge.getDistance() <= 2 * bearings.getLookAhead()) {
+            double atBase = bearings.getHeading(edgeId, false);
+            if (EdgeBearingIndex.getUndirectedDifference(atBase, bearings.getHeading(edgeId, true)) <= STRAIGHT_EDGE) {
+                return atBase;
+            }
+        }
+        PointList points = edge.fetchWayGeometry(3);
+        int from = Math.max(0, Math.min(qr.getWayIndex(), points.getSize() - 2));
+        int to = from + 1;
+        // skip duplicate points
+        while (to < points.getSize() - 1 && points.getLat(to) == points.getLat(from)
+                && points.getLon(to) == points.getLon(from)) {
+            ++to;
+        }
+        return EdgeBearingIndex.toHeading(ANGLE_CALC.calcOrientation(points.getLat(from), points.getLon(from),
+                points.getLat(to), points.getLon(to)));
+    }
+}
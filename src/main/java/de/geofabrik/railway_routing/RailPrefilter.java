@@ -0,0 +1,202 @@
+package de.geofabrik.railway_routing;
+
+import static com.graphhopper.util.Helper.getMemInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongHashSet;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.OSMInputFile;
+import com.graphhopper.routing.util.EncodingManager;
+
+/**
+ * Extract the railway data of an OSM file before it is imported.
+ *
+ * The first pass keeps all ways accepted by the flag encoders and all relations with at least
+ * one of these ways as member. The second pass keeps the nodes of these ways including their
+ * tags, e.g. railway=railway_crossing. It stops as soon as all nodes have been found, i.e. it
+ * skips the ways and relations of files sorted by type. The PBF blocks are decoded by multiple
+ * worker threads.
+ *
+ * The result is written as OSM XML and is usually a tiny share of the input. The import reads it
+ * twice instead of reading the large input file twice and it can be reused by later imports of
+ * the same input file.
+ */
+public class RailPrefilter {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final EncodingManager encodingManager;
+    private final int workerThreads;
+
+    private final List<ReaderWay> ways = new ArrayList<ReaderWay>();
+    private final List<ReaderRelation> relations = new ArrayList<ReaderRelation>();
+    private final LongHashSet wayIds = new LongHashSet();
+    private final LongHashSet missingNodes = new LongHashSet();
+    private long nodeCount = 0;
+
+    public RailPrefilter(EncodingManager encodingManager, int workerThreads) {
+        this.encodingManager = encodingManager;
+        this.workerThreads = workerThreads;
+    }
+
+    private boolean acceptWay(ReaderWay way) {
+        return way.getNodes().size() >= 2 && encodingManager.acceptWay(way, new EncodingManager.AcceptWay());
+    }
+
+    private boolean acceptRelation(ReaderRelation relation) {
+        for (ReaderRelation.Member member : relation.getMembers()) {
+            if (member.getType() == ReaderRelation.Member.WAY && wayIds.contains(member.getRef())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readWays(File input) throws IOException, XMLStreamException {
+        try (OSMInput in = new OSMInputFile(input).setWorkerThreads(workerThreads).open()) {
+            ReaderElement element;
+            while ((element = in.getNext()) != null) {
+                if (element.getType() == ReaderElement.WAY) {
+                    ReaderWay way = (ReaderWay) element;
+                    if (acceptWay(way)) {
+                        ways.add(way);
+                        wayIds.add(way.getId());
+                        LongArrayList nodes = way.getNodes();
+                        for (int i = 0; i < nodes.size(); ++i) {
+                            missingNodes.add(nodes.get(i));
+                        }
+                    }
+                } else if (element.getType() == ReaderElement.RELATION) {
+                    ReaderRelation relation = (ReaderRelation) element;
+                    if (acceptRelation(relation)) {
+                        relations.add(relation);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeTags(XMLStreamWriter writer, ReaderElement element) throws XMLStreamException {
+        for (Map.Entry<String, Object> tag : element.getTags().entrySet()) {
+            // Values added during the import are no OSM tags.
+            if (!(tag.getValue() instanceof String)) {
+                continue;
+            }
+            writer.writeEmptyElement("tag");
+            writer.writeAttribute("k", tag.getKey());
+            writer.writeAttribute("v", (String) tag.getValue());
+        }
+    }
+
+    private void writeNodes(File input, XMLStreamWriter writer) throws IOException, XMLStreamException {
+        try (OSMInput in = new OSMInputFile(input).setWorkerThreads(workerThreads).open()) {
+            ReaderElement element;
+            while (!missingNodes.isEmpty() && (element = in.getNext()) != null) {
+                if (element.getType() != ReaderElement.NODE || !missingNodes.remove(element.getId())) {
+                    continue;
+                }
+                ReaderNode node = (ReaderNode) element;
+                writer.writeStartElement("node");
+                writer.writeAttribute("id", Long.toString(node.getId()));
+                writer.writeAttribute("lat", Double.toString(node.getLat()));
+                writer.writeAttribute("lon", Double.toString(node.getLon()));
+                writeTags(writer, node);
+                writer.writeEndElement();
+                ++nodeCount;
+            }
+        }
+    }
+
+    private void writeWays(XMLStreamWriter writer) throws XMLStreamException {
+        for (ReaderWay way : ways) {
+            writer.writeStartElement("way");
+            writer.writeAttribute("id", Long.toString(way.getId()));
+            LongArrayList nodes = way.getNodes();
+            for (int i = 0; i < nodes.size(); ++i) {
+                writer.writeEmptyElement("nd");
+                writer.writeAttribute("ref", Long.toString(nodes.get(i)));
+            }
+            writeTags(writer, way);
+            writer.writeEndElement();
+        }
+    }
+
+    private static String memberType(int type) {
+        switch (type) {
+        case ReaderRelation.Member.NODE:
+            return "node";
+        case ReaderRelation.Member.WAY:
+            return "way";
+        default:
+            return "relation";
+        }
+    }
+
+    private void writeRelations(XMLStreamWriter writer) throws XMLStreamException {
+        for (ReaderRelation relation : relations) {
+            writer.writeStartElement("relation");
+            writer.writeAttribute("id", Long.toString(relation.getId()));
+            for (ReaderRelation.Member member : relation.getMembers()) {
+                writer.writeEmptyElement("member");
+                writer.writeAttribute("type", memberType(member.getType()));
+                writer.writeAttribute("ref", Long.toString(member.getRef()));
+                writer.writeAttribute("role", member.getRole() == null ? "" : member.getRole());
+            }
+            writeTags(writer, relation);
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Write the railway data of the input file to the output file.
+     */
+    public void filter(File input, File output) throws IOException {
+        long start = System.nanoTime();
+        try {
+            readWays(input);
+            logger.info("prefilter: kept " + ways.size() + " ways and " + relations.size() + " relations with "
+                    + missingNodes.size() + " nodes in " + (System.nanoTime() - start) / 1000000 + " ms, memory:"
+                    + getMemInfo());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output.toPath()), 1 << 16)) {
+                XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+                writer.writeStartDocument("UTF-8", "1.0");
+                writer.writeStartElement("osm");
+                writer.writeAttribute("version", "0.6");
+                writer.writeAttribute("generator", "OpenRailRouting prefilter");
+                writeNodes(input, writer);
+                writeWays(writer);
+                writeRelations(writer);
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to filter " + input + ": " + e.getMessage(), e);
+        }
+        if (!missingNodes.isEmpty()) {
+            logger.warn("prefilter: " + missingNodes.size() + " nodes of railway ways are missing in " + input);
+        }
+        logger.info("prefilter: wrote " + nodeCount + " nodes, " + ways.size() + " ways and " + relations.size()
+                + " relations to " + output + " in " + (System.nanoTime() - start) / 1000000 + " ms, memory:"
+                + getMemInfo());
+    }
+}
@@ -1,30 +1,55 @@
 package de.geofabrik.railway_routing;
 
-import com.graphhopper.routing.util.TurnCostEncoder;
+import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.EdgeIterator;
 
+/**
+ * Turn weighting used for flexible routing and map matching.
+ *
+ * The turn costs are converted to seconds by {@link RailFlagEncoder#getTurnCost(long)}. This
+ * weighting therefore returns exactly the same turn weights as the TurnWeighting used by the
+ * preparation of edge-based contraction hierarchies if both use the same U-turn costs.
+ *
+ * If a {@link TurnCostTable} is given, turns between edges of the base graph are looked up in
+ * the table instead of the TurnCostExtension. Turns involving virtual edges or nodes of a query
+ * graph are still looked up by the extension which maps them to the original edges. U-turns and
+ * invalid edges are handled by TurnWeighting, therefore the table does not change any weight.
+ */
 public class RailTurnWeighting extends com.graphhopper.routing.weighting.TurnWeighting {
 
-    private final TurnCostEncoder turnCostEncoder;
-    private final TurnCostExtension turnCostExt;
-    private double directionChangeTime = 60 * 4;
-
+    private final FlagEncoder encoder;
+    private final TurnCostTable turnCostTable;
 
+    /**
+     * @param uTurnCosts costs of a U-turn on the same edge in seconds, negative values forbid U-turns
+     */
     public RailTurnWeighting(Weighting superWeighting, TurnCostExtension turnCostExt, double uTurnCosts) {
-        super(superWeighting, turnCostExt);
-        this.turnCostEncoder = (TurnCostEncoder) superWeighting.getFlagEncoder();
-        this.turnCostExt = turnCostExt;
+        this(superWeighting, turnCostExt, null, uTurnCosts);
+    }
+
+    /**
+     * @param turnCostTable copy of the turn costs of the base graph, null to use the extension only
+     * @param uTurnCosts costs of a U-turn on the same edge in seconds, negative values forbid U-turns
+     */
+    public RailTurnWeighting(Weighting superWeighting, TurnCostExtension turnCostExt, TurnCostTable turnCostTable,
+            double uTurnCosts) {
+        super(superWeighting, turnCostExt, uTurnCosts);
 
         if (turnCostExt == null)
             throw new RuntimeException("No storage set to calculate turn weight");
+        this.encoder = superWeighting.getFlagEncoder();
+        this.turnCostTable = turnCostTable;
     }
 
+    @Override
     public double calcTurnWeight(int edgeFrom, int nodeVia, int edgeTo) {
-        long turnFlags = turnCostExt.getTurnCostFlags(edgeFrom, nodeVia, edgeTo);
-        if (turnCostEncoder.isTurnRestricted(turnFlags)) {
-            return Double.POSITIVE_INFINITY;
+        if (turnCostTable == null || !EdgeIterator.Edge.isValid(edgeFrom) || !EdgeIterator.Edge.isValid(edgeTo)
+                || edgeFrom == edgeTo || !turnCostTable.covers(edgeFrom, nodeVia, edgeTo)) {
+            return super.calcTurnWeight(edgeFrom, nodeVia, edgeTo);
         }
-        return turnCostEncoder.getTurnCost(turnFlags) * directionChangeTime;
+        // RailFlagEncoder returns infinite costs for forbidden turns.
+        return encoder.getTurnCost(turnCostTable.getTurnCostFlags(edgeFrom, nodeVia, edgeTo));
     }
 }
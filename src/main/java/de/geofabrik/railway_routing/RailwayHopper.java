@@ -3,44 +3,118 @@ package de.geofabrik.railway_routing;
 
 import static com.graphhopper.util.Helper.getMemInfo;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.carrotsearch.hppc.IntScatterSet;
-import com.carrotsearch.hppc.IntSet;
+import com.carrotsearch.hppc.LongHashSet;
 import com.graphhopper.coll.GHLongLongHashMap;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.reader.osm.GraphHopperOSM;
-import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.OSMReaderHook;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
+import com.graphhopper.routing.lm.LandmarkSuggestion;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
 import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.weighting.TurnWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.storage.TurnCostExtension;
-import com.graphhopper.util.AngleCalc;
+import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.CmdArgs;
-import com.graphhopper.util.EdgeExplorer;
-import com.graphhopper.util.EdgeIterator;
-import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.PointList;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
 
 import de.geofabrik.railway_routing.http.FlagEncoderConfiguration;
 
 public class RailwayHopper extends GraphHopperOSM {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    /** set of internal node IDs which are tagged with railway=railway_crossing in OSM */
-    private IntSet crossingsSet = null;
+    /** costs of a U-turn on the same edge in seconds if the request does not set u_turn_costs */
+    public static final double DEFAULT_U_TURN_COSTS = 60 * 30;
+
+    /** number of nodes handled by one task of the parallel turn cost computation */
+    private int turnCostChunkSize = 16384;
+
+    /** tower nodes which are tagged with railway=railway_crossing in OSM */
+    private CrossingIndex crossingIndex = null;
+
+    /** OSM way ID of every edge, needed to apply OSM change files */
+    private OsmWayIdIndex osmWayIdIndex = null;
+
+    /** maximum distance of removed way nodes to the simplified edge geometry in metres, 0 to keep all nodes (datareader.updatable) */
+    private double wayPointMaxDistance = 1;
+
+    /** orientations of both ends of every edge, needed to compute turn costs */
+    private EdgeBearingIndex edgeBearingIndex = null;
+
+    /** extract the railway data of the input file before the import */
+    private boolean prefilter = false;
+
+    /** file the prefiltered data is kept in, empty to delete it after the import */
+    private String prefilterFile = "";
+
+    /** number of threads decoding the input file during the prefilter pass */
+    private int prefilterThreads = 2;
+
+    /** type of data access of the node map used during the import, empty to keep it in the heap */
+    private String nodeMapDataAccess = "";
+
+    /** number of threads used to compute the orientations of the edges and the turn costs at switches */
+    private int turnCostThreads = 1;
+
+    /** store turn costs only at switches and railway crossings */
+    private boolean turnCostsSwitchesOnly = true;
+
+    /** distance along the edges the orientations at switches are measured at in metres */
+    private double turnCostsLookAhead = SwitchHandler.DEFAULT_LOOK_AHEAD;
+
+    /** copy the turn costs into a hash table for fast lookups during routing */
+    private boolean turnCostLookupTable = false;
+
+    /** in-memory copy of the turn costs, null if disabled */
+    private TurnCostTable turnCostTable = null;
+
+    /** settings read by GraphHopper, it does not expose the settings of its location index */
+    private final CmdArgs args;
+
+    /** place landmarks at the periphery of the railway network instead of using the generic heuristic */
+    private boolean railLandmarks = true;
+
+    /** number of landmarks per profile */
+    private int landmarkCount = 16;
+
+    /** maximum number of cached map matching options, further combinations are not cached */
+    private static final int MAX_CACHED_MATCHING_OPTIONS = 64;
+
+    /** map matching options by profile and maximum number of visited nodes */
+    private final ConcurrentHashMap<String, AlgorithmOptions> matchingOptions = new ConcurrentHashMap<String, AlgorithmOptions>();
 
     public RailwayHopper(final CmdArgs args, final List<FlagEncoderConfiguration> encoderConfigs) {
         super.init(args);
@@ -48,6 +122,33 @@ public class RailwayHopper extends GraphHopperOSM {
             logger.error("Missing argument graphhopper.datareader.file=<OSM file>");
             System.exit(1);
         }
+        // OsmChangeUpdater compares the nodes of a way with the points of its edges. Graphs which
+        // should be updated later keep all nodes.
+        if (args.getBool("datareader.updatable", false)) {
+            wayPointMaxDistance = 0;
+        } else {
+            wayPointMaxDistance = args.getDouble("datareader.way_point_max_distance", 1);
+        }
+        setWayPointMaxDistance(wayPointMaxDistance);
+        turnCostThreads = args.getInt("prepare.turn_costs.threads", 1);
+        if (turnCostThreads < 1) {
+            throw new IllegalArgumentException("prepare.turn_costs.threads must be at least 1");
+        }
+        turnCostsSwitchesOnly = args.getBool("prepare.turn_costs.switches_only", true);
+        turnCostsLookAhead = args.getDouble("prepare.turn_costs.look_ahead", SwitchHandler.DEFAULT_LOOK_AHEAD);
+        if (turnCostsLookAhead <= 0) {
+            throw new IllegalArgumentException("prepare.turn_costs.look_ahead must be positive");
+        }
+        turnCostLookupTable = args.getBool("routing.turn_costs.lookup_table", false);
+        this.args = args;
+        prefilter = args.getBool("datareader.prefilter", false);
+        prefilterFile = args.get("datareader.prefilter.file", "");
+        prefilterThreads = args.getInt("datareader.prefilter.threads", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        nodeMapDataAccess = args.get("datareader.node_map.dataaccess", "");
+        // Landmark suggestions given by the user take precedence.
+        railLandmarks = args.getBool("prepare.lm.rail_suggestions", true)
+                && args.get(Parameters.Landmark.PREPARE + "suggestions_location", "").isEmpty();
+        landmarkCount = args.getInt(Parameters.Landmark.PREPARE + "landmarks", 16);
         String[] knownEncoderNames = RailFlagEncoderFactory.getKnownEncoderNames();
         HashSet<String> knownEncoders = new HashSet<String>(Arrays.asList(knownEncoderNames));
         String[] encoderNames = args.get("profiles", "").split(",");
@@ -80,13 +181,150 @@ public class RailwayHopper extends GraphHopperOSM {
 
     @Override
     protected DataReader createReader(GraphHopperStorage ghStorage) {
-        crossingsSet = new IntScatterSet();
-        OSMReader reader = new OSMReader(ghStorage);
-        CrossingsSetHook hook = new CrossingsSetHook(reader, crossingsSet);
+        crossingIndex = new CrossingIndex(ghStorage.getDirectory()).create(1000);
+        osmWayIdIndex = new OsmWayIdIndex(ghStorage.getDirectory()).create(1000)
+                .setCompleteGeometries(wayPointMaxDistance == 0);
+        RailwayOSMReader reader = new RailwayOSMReader(ghStorage, osmWayIdIndex);
+        if (!nodeMapDataAccess.isEmpty()) {
+            // OSMReader returns -1 for unknown nodes
+            reader.setNodeMap(new DataAccessLongIntMap(ghStorage.getDirectory(), "tmp_node_map",
+                    DAType.fromString(nodeMapDataAccess), 1 << 20, -1));
+        }
+        CrossingsSetHook hook = new CrossingsSetHook(reader, crossingIndex);
         reader.register(hook);
         return initDataReader(reader);
     }
 
+    @Override
+    public boolean load(String graphHopperFolder) {
+        if (!super.load(graphHopperFolder)) {
+            return false;
+        }
+        crossingIndex = new CrossingIndex(getGraphHopperStorage().getDirectory());
+        if (!crossingIndex.loadExisting()) {
+            logger.warn("Graph at " + getGraphHopperLocation() + " contains no railway crossings. Please import it again.");
+            crossingIndex.create(1000);
+        }
+        osmWayIdIndex = new OsmWayIdIndex(getGraphHopperStorage().getDirectory());
+        if (!osmWayIdIndex.loadExisting()) {
+            // only needed to apply OSM change files
+            osmWayIdIndex = null;
+        }
+        edgeBearingIndex = new EdgeBearingIndex(getGraphHopperStorage().getDirectory());
+        if (!edgeBearingIndex.loadExisting()) {
+            // graph imported by an older version, the orientations are computed from the geometries
+            edgeBearingIndex = null;
+        }
+        // The location index has been created by super.load() before the orientations were loaded.
+        getRailLocationIndex().setBearings(edgeBearingIndex);
+        return true;
+    }
+
+    /**
+     * Create a {@link RailLocationIndex} which can filter map matching candidates by heading.
+     */
+    @Override
+    protected LocationIndex createLocationIndex(Directory dir) {
+        RailLocationIndex index = new RailLocationIndex(getGraphHopperStorage(), dir);
+        // Same settings as the index of GraphHopper, LocationIndexTree has the same defaults.
+        if (args.has("index.high_resolution")) {
+            index.setResolution(args.getInt("index.high_resolution", 0));
+        }
+        if (args.has("index.max_region_search")) {
+            index.setMaxRegionSearch(args.getInt("index.max_region_search", 0));
+        }
+        if (!index.loadExisting()) {
+            ensureWriteAccess();
+            index.prepareIndex();
+        }
+        return index.setBearings(edgeBearingIndex);
+    }
+
+    /**
+     * Get the location index of the graph. Returns null if no graph has been imported or loaded.
+     */
+    public RailLocationIndex getRailLocationIndex() {
+        return (RailLocationIndex) getLocationIndex();
+    }
+
+    /**
+     * Copy the turn costs into a {@link TurnCostTable} if enabled. This is called after the graph
+     * has been imported or loaded. Imports which close the graph afterwards do not need the table.
+     */
+    @Override
+    protected void postProcessing(boolean closeEarly) {
+        super.postProcessing(closeEarly);
+        if (closeEarly || !turnCostLookupTable || !getEncodingManager().needsTurnCostsSupport()) {
+            return;
+        }
+        GraphHopperStorage ghs = getGraphHopperStorage();
+        long start = System.nanoTime();
+        turnCostTable = TurnCostTable.create(ghs, (TurnCostExtension) ghs.getExtension());
+        logger.info("copied " + turnCostTable.getSize() + " turn costs into lookup table ("
+                + turnCostTable.getMemoryUsage() / (1024 * 1024) + " MB) in " + (System.nanoTime() - start) / 1000000
+                + " ms, memory:" + getMemInfo());
+    }
+
+    /**
+     * Get the in-memory copy of the turn costs used by {@link RailTurnWeighting}. Returns null if
+     * it is disabled. It is not updated if the turn costs of the graph are changed later, e.g. by
+     * {@link OsmChangeUpdater}.
+     */
+    public TurnCostTable getTurnCostTable() {
+        return turnCostTable;
+    }
+
+    /**
+     * Get the railway crossings of the graph. Returns null if no graph has been imported or loaded.
+     */
+    public CrossingIndex getCrossingIndex() {
+        return crossingIndex;
+    }
+
+    /**
+     * Get the orientations of the ends of the edges. Returns null if no graph has been imported
+     * or loaded or if the graph was imported by an older version.
+     */
+    public EdgeBearingIndex getEdgeBearingIndex() {
+        return edgeBearingIndex;
+    }
+
+    /**
+     * Get the OSM way IDs of the edges. Returns null if no graph has been imported or loaded or
+     * if the graph was imported by an older version.
+     */
+    public OsmWayIdIndex getOsmWayIdIndex() {
+        return osmWayIdIndex;
+    }
+
+    @Override
+    protected void flush() {
+        super.flush();
+        if (crossingIndex != null) {
+            crossingIndex.flush();
+        }
+        if (osmWayIdIndex != null) {
+            osmWayIdIndex.flush();
+        }
+        if (edgeBearingIndex != null) {
+            edgeBearingIndex.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (crossingIndex != null && !crossingIndex.isClosed()) {
+            crossingIndex.close();
+        }
+        if (osmWayIdIndex != null && !osmWayIdIndex.isClosed()) {
+            osmWayIdIndex.close();
+        }
+        if (edgeBearingIndex != null && !edgeBearingIndex.isClosed()) {
+            edgeBearingIndex.close();
+        }
+    }
+
     @Override
     protected DataReader importData() throws IOException {
         ensureWriteAccess();
@@ -97,97 +335,353 @@ public class RailwayHopper extends GraphHopperOSM {
             throw new IllegalStateException("Couldn't load from existing folder: " + getGraphHopperLocation()
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
-        DataReader reader = createReader(getGraphHopperStorage());
-        logger.info("using " + getGraphHopperStorage().toString() + ", memory:" + getMemInfo());
-        reader.readGraph();
+        long start = System.nanoTime();
+        String inputFile = getDataReaderFile();
+        File filtered = null;
+        if (prefilter) {
+            filtered = prefilter(new File(inputFile));
+            setDataReaderFile(filtered.getPath());
+        }
+        DataReader reader = null;
+        try {
+            reader = createReader(getGraphHopperStorage());
+            logger.info("using " + getGraphHopperStorage().toString() + ", memory:" + getMemInfo());
+            reader.readGraph();
+            logger.info("read graph, memory:" + getMemInfo());
+        } finally {
+            if (reader instanceof RailwayOSMReader) {
+                ((RailwayOSMReader) reader).releaseNodeMap();
+            }
+            setDataReaderFile(inputFile);
+            if (filtered != null && prefilterFile.isEmpty()) {
+                Files.deleteIfExists(filtered.toPath());
+            }
+        }
+        logger.info("found " + crossingIndex.getCrossingCount() + " railway crossings");
+        logger.info("read OSM data in " + (System.nanoTime() - start) / 1000000 + " ms, memory:" + getMemInfo()
+                + ", peak heap: " + getPeakHeapUsage() / (1024 * 1024) + "MB");
         return reader;
     }
 
-    private double getAngle(double or1, double or2) {
-        return Math.abs(or1 - or2);
+    /**
+     * Extract the railway data of the input file. A kept result of an earlier run is reused if it
+     * is newer than the input file and was extracted from the same file for the same encoders.
+     *
+     * The configuration of a kept extract is stored in a file next to it which is written after
+     * the extract is complete. An extract without this file is never reused.
+     */
+    private File prefilter(File input) throws IOException {
+        if (!prefilterFile.isEmpty()) {
+            File output = new File(prefilterFile);
+            File configFile = new File(prefilterFile + ".config");
+            String config = getPrefilterConfiguration(input);
+            if (output.exists() && output.lastModified() >= input.lastModified() && configFile.exists()
+                    && new String(Files.readAllBytes(configFile.toPath()), StandardCharsets.UTF_8).equals(config)) {
+                logger.info("prefilter: reusing " + output + " which is newer than " + input);
+                return output;
+            }
+            Files.deleteIfExists(configFile.toPath());
+            prefilter(input, output);
+            Files.write(configFile.toPath(), config.getBytes(StandardCharsets.UTF_8));
+            return output;
+        }
+        File output = new File(getGraphHopperLocation(), "prefiltered.osm");
+        prefilter(input, output);
+        return output;
+    }
+
+    /**
+     * Write the extract to a temporary file and move it to its final location once it is
+     * complete. An interrupted run does not leave a truncated extract behind.
+     */
+    private void prefilter(File input, File output) throws IOException {
+        File tmp = new File(output.getPath() + ".tmp");
+        try {
+            new RailPrefilter(getEncodingManager(), prefilterThreads).filter(input, tmp);
+            Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Describe the input file and the encoders deciding which ways the prefilter keeps.
+     */
+    private String getPrefilterConfiguration(File input) {
+        StringBuilder config = new StringBuilder();
+        config.append("input=").append(input.getAbsolutePath()).append('\n');
+        for (FlagEncoder encoder : getEncodingManager().fetchEdgeEncoders()) {
+            config.append("encoder=");
+            if (encoder instanceof RailFlagEncoder) {
+                config.append(((RailFlagEncoder) encoder).getConfiguration());
+            } else {
+                config.append(encoder.toString());
+            }
+            config.append('\n');
+        }
+        return config.toString();
+    }
+
+    /**
+     * Get the sum of the peak usage of all heap memory pools in bytes.
+     */
+    static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Set the landmark suggestions for all rail profiles before the landmarks are prepared.
+     *
+     * The landmark weights are computed without turn costs. They are still valid lower bounds
+     * for routing with {@link RailTurnWeighting} because turn costs are never negative.
+     */
+    @Override
+    protected boolean loadOrPrepareLM(boolean closeEarly) {
+        LMAlgoFactoryDecorator lmFactory = getLMFactoryDecorator();
+        boolean prepared = "true".equals(getGraphHopperStorage().getProperties().get(Parameters.Landmark.PREPARE + "done"));
+        if (railLandmarks && lmFactory.isEnabled() && !prepared) {
+            RailLandmarkSuggestions suggestions = new RailLandmarkSuggestions(getGraphHopperStorage());
+            for (PrepareLandmarks plm : lmFactory.getPreparations()) {
+                FlagEncoder encoder = plm.getWeighting().getFlagEncoder();
+                LandmarkSuggestion suggestion = suggestions.createSuggestion(encoder, landmarkCount);
+                if (suggestion == null) {
+                    logger.warn("Network of profile " + encoder + " is too small for rail landmarks, using the default heuristic");
+                    continue;
+                }
+                logger.info("Placing " + landmarkCount + " landmarks at the periphery of the network of profile " + encoder);
+                plm.setLandmarkSuggestions(Collections.singletonList(suggestion));
+            }
+        }
+        return super.loadOrPrepareLM(closeEarly);
     }
 
+    /**
+     * Create the turn weighting for flexible routing and map matching.
+     *
+     * U-turn costs given by the request are passed through like GraphHopper does in order to get
+     * the same weights as an edge-based CH profile with the same u_turn_costs setting. Requests
+     * without u_turn_costs (negative value) get {@link #DEFAULT_U_TURN_COSTS}, i.e. trains can
+     * reverse at buffer stops and terminus tracks.
+     */
     @Override
     public Weighting createTurnWeighting(Graph graph, Weighting weighting, TraversalMode tMode, double uTurnCosts) {
+        if (uTurnCosts < 0) {
+            uTurnCosts = DEFAULT_U_TURN_COSTS;
+        }
         if (weighting.getFlagEncoder().supports(TurnWeighting.class) && tMode.isEdgeBased()) {
             RailTurnWeighting tw = new RailTurnWeighting(weighting,
-                    (TurnCostExtension) graph.getExtension(), 60 * 30);
+                    (TurnCostExtension) graph.getExtension(), turnCostTable, uTurnCosts);
             return tw;
         }
         return weighting;
     }
 
-    private void addTurnCosts(TurnCostExtension tcs, int fromEdge, int viaNode, int toEdge, double angleDiff, boolean crossing) {
-        long flags = 0;
-        for (FlagEncoder encoder : getEncodingManager().fetchEdgeEncoders()) {
-            if (!encoder.supports(TurnWeighting.class)) {
-                continue;
-            }
-            if (crossing && (angleDiff < 0.92 * Math.PI || angleDiff > 1.08 * Math.PI)) {
-                flags = flags | encoder.getTurnFlags(true, 0);
-            } else if (crossing) {
-                continue;
-            }
-            if (angleDiff < 0.3 * Math.PI || angleDiff > 1.7 * Math.PI) {
-                // avoid this turn because it requires a change of direction
-                flags = flags | encoder.getTurnFlags(false, ((RailFlagEncoder) encoder).getMaxTurnCosts() - 1);
-            } else if (angleDiff < 0.75 * Math.PI || angleDiff > 1.25 * Math.PI) {
-                // this turn is forbidden
-                flags = flags | encoder.getTurnFlags(true, 0);
+    /**
+     * Create the options for the map matching of a profile.
+     *
+     * @throws IllegalArgumentException if the profile does not exist
+     */
+    public AlgorithmOptions createMatchingOptions(String vehicle, int maxVisitedNodes) {
+        FlagEncoder encoder;
+        try {
+            encoder = getEncodingManager().getEncoder(vehicle);
+        } catch (IllegalArgumentException err) {
+            throw new IllegalArgumentException("Vehicle not supported: " + vehicle);
+        }
+        FastestWeighting fastestWeighting = new FastestWeighting(encoder);
+        TraversalMode tMode;
+        if (getEncodingManager().needsTurnCostsSupport()) {
+            tMode = TraversalMode.EDGE_BASED;
+        } else {
+            tMode = TraversalMode.NODE_BASED;
+        }
+        Weighting turnWeighting = createTurnWeighting(getGraphHopperStorage(), fastestWeighting, tMode, DEFAULT_U_TURN_COSTS);
+        return AlgorithmOptions.start()
+                .traversalMode(tMode)
+                .maxVisitedNodes(maxVisitedNodes)
+                .weighting(turnWeighting)
+                .hints(new HintsMap().put("vehicle", vehicle)
+                        // map matching needs the flexible mode even if CH or LM are enabled
+                        .put(Parameters.CH.DISABLE, true)
+                        .put(Parameters.Landmark.DISABLE, true))
+                .build();
+    }
+
+    /**
+     * Get the options for the map matching of a profile.
+     *
+     * The weightings and options only read the graph. They are created once per combination of
+     * profile and maximum number of visited nodes and shared by all threads. The returned
+     * options, including their hints, must not be modified.
+     *
+     * @throws IllegalArgumentException if the profile does not exist
+     */
+    public AlgorithmOptions getMatchingOptions(String vehicle, int maxVisitedNodes) {
+        String key = vehicle + "|" + maxVisitedNodes;
+        AlgorithmOptions opts = matchingOptions.get(key);
+        if (opts != null) {
+            return opts;
+        }
+        opts = createMatchingOptions(vehicle, maxVisitedNodes);
+        // The maximum number of visited nodes is a request parameter. Do not let clients fill the cache.
+        if (matchingOptions.size() < MAX_CACHED_MATCHING_OPTIONS) {
+            AlgorithmOptions existing = matchingOptions.putIfAbsent(key, opts);
+            if (existing != null) {
+                return existing;
             }
         }
-        tcs.addTurnInfo(fromEdge, viaNode, toEdge, flags);
-        tcs.addTurnInfo(toEdge, viaNode, fromEdge, flags);
+        return opts;
     }
 
-    private void handleSwitch(EdgeIterator iter, AngleCalc angleCalc, GraphHopperStorage ghs, int node) {
-        TurnCostExtension tcs = (TurnCostExtension) ghs.getExtension();
-        // get list of IDs of edges
-        ArrayList<Integer> edges = new ArrayList<Integer>();
-        ArrayList<Integer> adjNodes = new ArrayList<Integer>();
-        // check if it is a railway crossing
-        // We only get tower nodes here.
-        int id = OSMReader.towerIdToMapId(node);
-        boolean crossing = crossingsSet.contains(id);
-        while (iter.next()) {
-            edges.add(iter.getEdge());
-            adjNodes.add(iter.getAdjNode());
-        }
-        for (int i = 0; i < adjNodes.size(); ++i) {
-            EdgeIteratorState fromEdge = ghs.getEdgeIteratorState(edges.get(i), adjNodes.get(i));
-            PointList fromPoints = fromEdge.fetchWayGeometry(3);
-            double fromLon = fromPoints.getLon(1);
-            double fromLat = fromPoints.getLat(1);
-            double centreLon = fromPoints.getLon(0);
-            double centreLat = fromPoints.getLat(0);
-            double fromOrientation = angleCalc.calcOrientation(centreLat, centreLon, fromLat, fromLon);
-            for (int j = i + 1; j < adjNodes.size(); ++j) {
-                EdgeIteratorState toEdge = ghs.getEdgeIteratorState(edges.get(j), adjNodes.get(j));
-                PointList toPoints = toEdge.fetchWayGeometry(3);
-                double toLon = toPoints.getLon(1);
-                double toLat = toPoints.getLat(1);
-                double toOrientation = angleCalc.calcOrientation(centreLat, centreLon, toLat, toLon);
-                double diff = getAngle(fromOrientation, toOrientation);
-                addTurnCosts(tcs, fromEdge.getEdge(), node, toEdge.getEdge(), diff, crossing);
+    /**
+     * Create a handler to compute the turn costs at the nodes of the graph. Every thread needs its
+     * own handler.
+     */
+    public SwitchHandler createSwitchHandler() {
+        return new SwitchHandler(getGraphHopperStorage(), getEncodingManager().fetchEdgeEncoders(), crossingIndex)
+                .setSwitchesOnly(turnCostsSwitchesOnly)
+                .setBearings(edgeBearingIndex)
+                .setLookAhead(turnCostsLookAhead);
+    }
+
+    /**
+     * Set the number of nodes handled by one task of the parallel turn cost computation. Tests
+     * use small chunks to split small graphs.
+     */
+    RailwayHopper setTurnCostChunkSize(int turnCostChunkSize) {
+        this.turnCostChunkSize = turnCostChunkSize;
+        return this;
+    }
+
+    /**
+     * Compute turn costs on a fork-join pool.
+     *
+     * The node range is split into chunks which are computed in parallel. The results are written
+     * by this thread in the order of the chunks. Therefore the resulting turn cost storage is
+     * identical to the one written by the sequential implementation. The number of chunks in
+     * flight is limited to keep the memory consumption of the buffers low.
+     *
+     * @return number of turn cost entries written
+     */
+    private long handleSwitchesParallel(GraphHopperStorage ghs, TurnCostExtension tcs, LongAdder switches) {
+        int nodes = ghs.getNodes();
+        int maxChunksInFlight = 4 * turnCostThreads;
+        ForkJoinPool pool = new ForkJoinPool(turnCostThreads);
+        long entries = 0;
+        try {
+            ArrayDeque<ForkJoinTask<TurnCostBuffer>> chunks = new ArrayDeque<ForkJoinTask<TurnCostBuffer>>(maxChunksInFlight);
+            int nextStart = 0;
+            while (nextStart < nodes || !chunks.isEmpty()) {
+                while (nextStart < nodes && chunks.size() < maxChunksInFlight) {
+                    final int from = nextStart;
+                    final int to = Math.min(nodes, from + turnCostChunkSize);
+                    chunks.add(pool.submit(() -> {
+                        // Every task uses its own handler because handlers must not be shared between threads.
+                        TurnCostBuffer turnCosts = new TurnCostBuffer(4 * (to - from));
+                        switches.add(createSwitchHandler().handleSwitches(ghs, from, to, turnCosts));
+                        return turnCosts;
+                    }));
+                    nextStart = to;
+                }
+                entries += chunks.poll().join().writeTo(tcs);
             }
+        } finally {
+            pool.shutdown();
         }
+        return entries;
+    }
+
+    private void logTurnCosts(long switches, long entries, int nodes) {
+        logger.info("computed turn costs at " + switches + " of " + nodes + " nodes"
+                + (turnCostsSwitchesOnly ? " (switches and railway crossings only)" : "") + ", stored " + entries
+                + " turn cost entries, memory:" + getMemInfo());
     }
 
     @Override
     protected void cleanUp() {
+        logger.info("removing small subnetworks, memory:" + getMemInfo());
         super.cleanUp();
-        AngleCalc angleCalc = new AngleCalc();
         GraphHopperStorage ghs = getGraphHopperStorage();
-        EdgeExplorer explorer = ghs.createEdgeExplorer();
+        TurnCostExtension tcs = (TurnCostExtension) ghs.getExtension();
+        long start = System.nanoTime();
+        edgeBearingIndex = new EdgeBearingIndex(ghs.getDirectory()).create(2L * ghs.getAllEdges().length());
+        edgeBearingIndex.fill(ghs, turnCostsLookAhead, turnCostThreads);
+        logger.info("computed orientations of " + edgeBearingIndex.getEdgeCount() + " edges with a look-ahead of "
+                + turnCostsLookAhead + " m using " + turnCostThreads + " thread(s) in " + (System.nanoTime() - start) / 1000000
+                + " ms, memory:" + getMemInfo());
+        logger.info("Computing turn costs at switches using " + turnCostThreads + " thread(s), memory:" + getMemInfo());
 
-        // iterate over all nodes
         int nodes = ghs.getNodes();
-        for (int start = 0; start < nodes; start++) {
-            if (ghs.isNodeRemoved(start)) {
+        if (turnCostThreads > 1) {
+            LongAdder switches = new LongAdder();
+            long entries = handleSwitchesParallel(ghs, tcs, switches);
+            logTurnCosts(switches.sum(), entries, nodes);
+            return;
+        }
+        SwitchHandler switchHandler = createSwitchHandler();
+        TurnCostBuffer turnCosts = new TurnCostBuffer();
+
+        // iterate over all nodes
+        long switches = 0;
+        long entries = 0;
+        for (int node = 0; node < nodes; node++) {
+            if (ghs.isNodeRemoved(node)) {
                 continue;
             }
-            EdgeIterator iter = explorer.setBaseNode(start);
-            handleSwitch(iter, angleCalc, ghs, start);
+            if (switchHandler.handleSwitch(node, turnCosts)) {
+                ++switches;
+            }
+            entries += turnCosts.writeTo(tcs);
+        }
+        logTurnCosts(switches, entries, nodes);
+    }
+
+    private static long getCoordinateKey(NodeAccess nodeAccess, int node) {
+        return ((long) Helper.degreeToInt(nodeAccess.getLat(node)) << 32)
+                | (Helper.degreeToInt(nodeAccess.getLon(node)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Move the railway crossings to the new IDs of their nodes.
+     *
+     * The crossings are recorded during the import. GraphHopperStorage.optimize() moves the nodes
+     * with the highest IDs into the gaps left by removed subnetworks afterwards. The crossings
+     * are therefore identified by their coordinates before and after the optimization. Other
+     * tower nodes at the exact position of a crossing are marked as crossing, too.
+     */
+    @Override
+    protected void optimize() {
+        GraphHopperStorage ghs = getGraphHopperStorage();
+        NodeAccess nodeAccess = ghs.getNodeAccess();
+        LongHashSet crossings = new LongHashSet();
+        boolean removedNodes = false;
+        for (int node = 0; node < ghs.getNodes(); ++node) {
+            if (ghs.isNodeRemoved(node)) {
+                removedNodes = true;
+            } else if (crossingIndex.isCrossing(node)) {
+                crossings.add(getCoordinateKey(nodeAccess, node));
+            }
+        }
+        super.optimize();
+        if (!removedNodes) {
+            return;
+        }
+        crossingIndex.clear();
+        if (crossings.isEmpty()) {
+            return;
+        }
+        for (int node = 0; node < ghs.getNodes(); ++node) {
+            if (crossings.contains(getCoordinateKey(nodeAccess, node))) {
+                crossingIndex.setCrossing(node);
+            }
         }
+        logger.info("moved " + crossingIndex.getCrossingCount() + " railway crossings to the optimized node IDs");
     }
 }
@@ -0,0 +1,52 @@
+package de.geofabrik.railway_routing;
+
+import com.graphhopper.coll.LongIntMap;
+import com.graphhopper.reader.osm.OSMReader;
+import com.graphhopper.storage.GraphHopperStorage;
+
+/**
+ * OSM reader which records the OSM way ID of every edge it creates and can keep the mapping from
+ * OSM node IDs to graph node IDs outside the heap.
+ */
+public class RailwayOSMReader extends OSMReader {
+    private final OsmWayIdIndex osmWayIds;
+    /** replacement of the node map of OSMReader, null to use the one of OSMReader */
+    private DataAccessLongIntMap nodeMap = null;
+
+    public RailwayOSMReader(GraphHopperStorage ghStorage, OsmWayIdIndex osmWayIds) {
+        super(ghStorage);
+        this.osmWayIds = osmWayIds;
+    }
+
+    @Override
+    protected void storeOsmWayID(int edgeId, long osmWayId) {
+        super.storeOsmWayID(edgeId, osmWayId);
+        osmWayIds.setOsmWayId(edgeId, osmWayId);
+    }
+
+    /**
+     * Use another map from OSM node IDs to graph node IDs. It has to return -1 for missing keys.
+     */
+    public RailwayOSMReader setNodeMap(DataAccessLongIntMap nodeMap) {
+        this.nodeMap = nodeMap;
+        return this;
+    }
+
+    @Override
+    public LongIntMap getNodeMap() {
+        if (nodeMap != null) {
+            return nodeMap;
+        }
+        return super.getNodeMap();
+    }
+
+    /**
+     * Remove the replacement of the node map. It is not needed after the graph has been read.
+     */
+    public void releaseNodeMap() {
+        if (nodeMap != null) {
+            nodeMap.release();
+            nodeMap = null;
+        }
+    }
+}
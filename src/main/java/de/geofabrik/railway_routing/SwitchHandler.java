@@ -0,0 +1,207 @@
+package de.geofabrik.railway_routing;
+
+import java.util.List;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+/**
+ * Compute the turn costs at a tower node from the angles between its edges.
+ *
+ * By default, only switches and railway crossings get turn costs, i.e. tower nodes with at least
+ * three edges or tagged as railway crossing. At all other nodes, the turns between the edges are
+ * added without costs. Turns without costs are not stored in the graph.
+ *
+ * The orientation of every edge is taken from the point of its geometry which is a look-ahead
+ * distance away from the node (see {@link EdgeBearingIndex}). If an index of the orientations is
+ * set, they are read from it instead of fetching the geometries. The orientations of the edges of
+ * a node are kept in a scratch buffer which is reused for all nodes. Instances are not
+ * thread-safe, use one instance per thread.
+ */
+public class SwitchHandler {
+    /** default look-ahead distance along the geometry of the edges in metres */
+    public static final double DEFAULT_LOOK_AHEAD = 30;
+
+    private final EdgeExplorer explorer;
+    private final AngleCalc angleCalc = new AngleCalc();
+    private final CrossingIndex crossings;
+    /** turn flags of all encoders supporting turn costs for a forbidden turn */
+    private final long forbiddenFlags;
+    /** turn flags of all encoders supporting turn costs for a turn requiring a change of direction */
+    private final long directionChangeFlags;
+    /** compute turn costs only at switches and railway crossings */
+    private boolean switchesOnly = true;
+    /** precomputed orientations of the edges, null to compute them from the geometry */
+    private EdgeBearingIndex bearings = null;
+    /** look-ahead distance along the geometry in metres if the orientations are computed */
+    private double lookAhead = DEFAULT_LOOK_AHEAD;
+
+    private final IntArrayList edges = new IntArrayList();
+    private double[] orientations = new double[8];
+
+    /**
+     * @param ghs graph
+     * @param encoders flag encoders of the graph, encoders without support for turn costs are ignored
+     * @param crossings railway crossings
+     */
+    public SwitchHandler(GraphHopperStorage ghs, List<FlagEncoder> encoders, CrossingIndex crossings) {
+        this.explorer = ghs.createEdgeExplorer();
+        this.crossings = crossings;
+        long forbidden = 0;
+        long directionChange = 0;
+        for (FlagEncoder encoder : encoders) {
+            if (!encoder.supports(TurnWeighting.class)) {
+                continue;
+            }
+            forbidden = forbidden | encoder.getTurnFlags(true, 0);
+            directionChange = directionChange | encoder.getTurnFlags(false, ((RailFlagEncoder) encoder).getMaxTurnCosts() - 1);
+        }
+        this.forbiddenFlags = forbidden;
+        this.directionChangeFlags = directionChange;
+    }
+
+    /**
+     * Compute turn costs at all nodes instead of switches and railway crossings only. Sharp
+     * angles between the two edges of a node without a switch cause turn costs as well then.
+     */
+    public SwitchHandler setSwitchesOnly(boolean switchesOnly) {
+        this.switchesOnly = switchesOnly;
+        return this;
+    }
+
+    /**
+     * Read the orientations of the edges from an index instead of computing them.
+     */
+    public SwitchHandler setBearings(EdgeBearingIndex bearings) {
+        this.bearings = bearings;
+        return this;
+    }
+
+    /**
+     * Set the look-ahead distance used if the orientations are computed from the geometry.
+     */
+    public SwitchHandler setLookAhead(double lookAhead) {
+        this.lookAhead = lookAhead;
+        return this;
+    }
+
+    private static double getAngle(double or1, double or2) {
+        return Math.abs(or1 - or2);
+    }
+
+    long getTurnFlags(double angleDiff, boolean crossing) {
+        if (forbiddenFlags == 0 && directionChangeFlags == 0) {
+            return 0;
+        }
+        long flags = 0;
+        if (crossing) {
+            if (angleDiff >= 0.92 * Math.PI && angleDiff <= 1.08 * Math.PI) {
+                return 0;
+            }
+            flags = forbiddenFlags;
+        }
+        if (angleDiff < 0.3 * Math.PI || angleDiff > 1.7 * Math.PI) {
+            // avoid this turn because it requires a change of direction
+            flags = flags | directionChangeFlags;
+        } else if (angleDiff < 0.75 * Math.PI || angleDiff > 1.25 * Math.PI) {
+            // this turn is forbidden
+            flags = flags | forbiddenFlags;
+        }
+        return flags;
+    }
+
+    /**
+     * Orientation of an edge at its base node.
+     */
+    private double getOrientation(EdgeIteratorState edge) {
+        if (bearings != null && bearings.contains(edge.getEdge())) {
+            return bearings.getOrientation(edge.getEdge(), edge.get(EdgeIteratorState.REVERSE_STATE));
+        }
+        PointList points = edge.fetchWayGeometry(3);
+        return EdgeBearingIndex.calcOrientation(points, false, lookAhead, Helper.DIST_PLANE, angleCalc);
+    }
+
+    /**
+     * Add turn costs for all pairs of edges at a tower node to a buffer. Turns at nodes which
+     * are neither switches nor railway crossings are added without costs.
+     *
+     * @return false if the node is neither a switch nor a railway crossing and turn costs are
+     * only computed at switches
+     */
+    public boolean handleSwitch(int node, TurnCostBuffer turnCosts) {
+        // check if it is a railway crossing
+        boolean crossing = crossings.isCrossing(node);
+        edges.clear();
+        if (switchesOnly && !crossing) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edges.add(iter.getEdge());
+            }
+            if (edges.size() < 3) {
+                // Add the turns anyway. They remove turn costs of a node which has not been
+                // a plain node before an update.
+                addWithoutCosts(node, turnCosts);
+                return false;
+            }
+            edges.clear();
+        }
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            int i = edges.size();
+            if (i == orientations.length) {
+                double[] grown = new double[2 * orientations.length];
+                System.arraycopy(orientations, 0, grown, 0, i);
+                orientations = grown;
+            }
+            edges.add(iter.getEdge());
+            orientations[i] = getOrientation(iter);
+        }
+        int count = edges.size();
+        for (int i = 0; i < count; ++i) {
+            int fromEdge = edges.get(i);
+            for (int j = i + 1; j < count; ++j) {
+                int toEdge = edges.get(j);
+                long flags = getTurnFlags(getAngle(orientations[i], orientations[j]), crossing);
+                turnCosts.add(fromEdge, node, toEdge, flags);
+                turnCosts.add(toEdge, node, fromEdge, flags);
+            }
+        }
+        return true;
+    }
+
+    private void addWithoutCosts(int node, TurnCostBuffer turnCosts) {
+        int count = edges.size();
+        for (int i = 0; i < count; ++i) {
+            for (int j = i + 1; j < count; ++j) {
+                turnCosts.add(edges.get(i), node, edges.get(j), 0);
+                turnCosts.add(edges.get(j), node, edges.get(i), 0);
+            }
+        }
+    }
+
+    /**
+     * Add turn costs of all nodes in the range [from, to) to a buffer.
+     *
+     * @return number of nodes which got turn costs computed, see {@link #handleSwitch(int, TurnCostBuffer)}
+     */
+    public int handleSwitches(GraphHopperStorage ghs, int from, int to, TurnCostBuffer turnCosts) {
+        int switches = 0;
+        for (int node = from; node < to; ++node) {
+            if (ghs.isNodeRemoved(node)) {
+                continue;
+            }
+            if (handleSwitch(node, turnCosts)) {
+                ++switches;
+            }
+        }
+        return switches;
+    }
+}
@@ -0,0 +1,78 @@
+package de.geofabrik.railway_routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.TurnCostExtension;
+
+/**
+ * Turn cost entries which have been computed but not written to the graph yet.
+ *
+ * TurnCostExtension is not thread-safe and the order of calls to addTurnInfo determines the
+ * layout of the turn cost storage. Workers therefore collect their entries in a buffer and
+ * only one thread writes them in node order.
+ */
+public class TurnCostBuffer {
+    private final IntArrayList fromEdges;
+    private final IntArrayList viaNodes;
+    private final IntArrayList toEdges;
+    private final LongArrayList flags;
+
+    public TurnCostBuffer() {
+        this(64);
+    }
+
+    public TurnCostBuffer(int expectedEntries) {
+        fromEdges = new IntArrayList(expectedEntries);
+        viaNodes = new IntArrayList(expectedEntries);
+        toEdges = new IntArrayList(expectedEntries);
+        flags = new LongArrayList(expectedEntries);
+    }
+
+    public void add(int fromEdge, int viaNode, int toEdge, long turnFlags) {
+        fromEdges.add(fromEdge);
+        viaNodes.add(viaNode);
+        toEdges.add(toEdge);
+        flags.add(turnFlags);
+    }
+
+    public int size() {
+        return fromEdges.size();
+    }
+
+    public void clear() {
+        fromEdges.clear();
+        viaNodes.clear();
+        toEdges.clear();
+        flags.clear();
+    }
+
+    /**
+     * Write all entries with turn costs in the order they were added and empty the buffer.
+     * Turns without costs are skipped because a missing entry means no costs.
+     *
+     * @return number of entries written
+     */
+    public int writeTo(TurnCostExtension tcs) {
+        int written = 0;
+        for (int i = 0; i < fromEdges.size(); ++i) {
+            if (flags.get(i) == 0) {
+                continue;
+            }
+            tcs.addTurnInfo(fromEdges.get(i), viaNodes.get(i), toEdges.get(i), flags.get(i));
+            ++written;
+        }
+        clear();
+        return written;
+    }
+
+    /**
+     * Write all entries replacing existing entries of the same turns and empty the buffer. Turns
+     * without costs clear existing entries.
+     */
+    public void overwrite(TurnCostExtension tcs) {
+        for (int i = 0; i < fromEdges.size(); ++i) {
+            tcs.mergeOrOverwriteTurnInfo(fromEdges.get(i), viaNodes.get(i), toEdges.get(i), flags.get(i), false);
+        }
+        clear();
+    }
+}
@@ -0,0 +1,178 @@
+package de.geofabrik.railway_routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * In-memory copy of the turn costs of a graph for fast lookups during routing.
+ *
+ * TurnCostExtension keeps the turn costs of a node as linked list which has to be searched for
+ * every relaxed edge. This table is a hash table with open addressing and linear probing keyed by
+ * from edge, via node and to edge. The keys are stored in one int array (three ints per slot) and
+ * the flags in a parallel long array, therefore a lookup usually touches two cache lines.
+ *
+ * The table is read-only after it has been created and can be shared by all threads. It is only
+ * valid for the graph it was created from. Edges and nodes which do not belong to that graph,
+ * e.g. virtual edges of a query graph, are not covered.
+ */
+public class TurnCostTable {
+    private static final int EMPTY = -1;
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    private final int edgeCount;
+    private final int nodeCount;
+    /** from edge, via node and to edge of every slot, the from edge is EMPTY for empty slots */
+    private int[] keys;
+    private long[] flags;
+    private int size = 0;
+    private int mask;
+
+    TurnCostTable(int edgeCount, int nodeCount, int expectedEntries) {
+        this.edgeCount = edgeCount;
+        this.nodeCount = nodeCount;
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedEntries / MAX_LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    /**
+     * Copy all turn costs of a graph. Every pair of different edges at every node is looked up
+     * once. U-turns are not copied because their costs are not taken from the turn cost storage.
+     *
+     * The turns with costs are counted first to allocate a table of the right size. Most nodes
+     * are no switches and have no turn costs.
+     */
+    public static TurnCostTable create(Graph graph, TurnCostExtension tcs) {
+        int entries = copyTurns(graph, tcs, null);
+        TurnCostTable table = new TurnCostTable(graph.getAllEdges().length(), graph.getNodes(), entries);
+        copyTurns(graph, tcs, table);
+        return table;
+    }
+
+    /**
+     * Look up the turn costs of all turns of a graph and add the turns with costs to a table.
+     *
+     * @param table table to add the turns to, null to count them only
+     * @return number of turns with costs
+     */
+    private static int copyTurns(Graph graph, TurnCostExtension tcs, TurnCostTable table) {
+        int entries = 0;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntArrayList edges = new IntArrayList();
+        for (int node = 0; node < graph.getNodes(); ++node) {
+            edges.clear();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edges.add(iter.getEdge());
+            }
+            for (int i = 0; i < edges.size(); ++i) {
+                for (int j = 0; j < edges.size(); ++j) {
+                    if (i == j) {
+                        continue;
+                    }
+                    long turnFlags = tcs.getTurnCostFlags(edges.get(i), node, edges.get(j));
+                    if (turnFlags == 0) {
+                        continue;
+                    }
+                    ++entries;
+                    if (table != null) {
+                        table.put(edges.get(i), node, edges.get(j), turnFlags);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[3 * capacity];
+        flags = new long[capacity];
+        mask = capacity - 1;
+        for (int slot = 0; slot < capacity; ++slot) {
+            keys[3 * slot] = EMPTY;
+        }
+    }
+
+    private static int hash(int fromEdge, int viaNode, int toEdge) {
+        int h = fromEdge * 0x9E3779B1 + toEdge;
+        h = h * 0x9E3779B1 + viaNode;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Find the slot of a turn or the empty slot where it should be inserted.
+     */
+    private int findSlot(int fromEdge, int viaNode, int toEdge) {
+        int slot = hash(fromEdge, viaNode, toEdge) & mask;
+        while (true) {
+            int k = 3 * slot;
+            if (keys[k] == EMPTY
+                    || (keys[k] == fromEdge && keys[k + 2] == toEdge && keys[k + 1] == viaNode)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void put(int fromEdge, int viaNode, int toEdge, long turnFlags) {
+        if (size + 1 > (mask + 1) * MAX_LOAD_FACTOR) {
+            grow();
+        }
+        int slot = findSlot(fromEdge, viaNode, toEdge);
+        if (keys[3 * slot] == EMPTY) {
+            keys[3 * slot] = fromEdge;
+            keys[3 * slot + 1] = viaNode;
+            keys[3 * slot + 2] = toEdge;
+            ++size;
+        }
+        flags[slot] = turnFlags;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldFlags = flags;
+        allocate(2 * oldFlags.length);
+        for (int slot = 0; slot < oldFlags.length; ++slot) {
+            int k = 3 * slot;
+            if (oldKeys[k] != EMPTY) {
+                int newSlot = findSlot(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2]);
+                System.arraycopy(oldKeys, k, keys, 3 * newSlot, 3);
+                flags[newSlot] = oldFlags[slot];
+            }
+        }
+    }
+
+    /**
+     * Check if a turn consists of edges and a node of the graph the table was created from. Only
+     * these turns can be looked up.
+     */
+    public boolean covers(int fromEdge, int viaNode, int toEdge) {
+        return fromEdge >= 0 && fromEdge < edgeCount && toEdge >= 0 && toEdge < edgeCount
+                && viaNode >= 0 && viaNode < nodeCount;
+    }
+
+    /**
+     * Get the turn flags of a turn, 0 if it has no turn costs. The turn has to be covered by the
+     * table, see {@link #covers(int, int, int)}.
+     */
+    public long getTurnCostFlags(int fromEdge, int viaNode, int toEdge) {
+        int slot = findSlot(fromEdge, viaNode, toEdge);
+        return keys[3 * slot] == EMPTY ? 0 : flags[slot];
+    }
+
+    /**
+     * Number of turns with turn costs.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Approximate heap memory used by the table in bytes.
+     */
+    public long getMemoryUsage() {
+        return 4L * keys.length + 8L * flags.length;
+    }
+}
@@ -0,0 +1,87 @@
+package de.geofabrik.railway_routing;
+
+import com.graphhopper.reader.ReaderWay;
+
+import de.geofabrik.railway_routing.util.MultiValueChecker;
+
+/**
+ * Gauge and electrification tags of a way, parsed once and shared by all flag encoders.
+ *
+ * The first encoder calling {@link #of(ReaderWay)} parses the tags. The result is kept for the
+ * last way of the calling thread, identified by reference, and reused by all other encoders. The
+ * tags of the way are not touched, therefore everything iterating over them only sees OSM tags.
+ * The tags of a way must not be modified after its attributes have been requested.
+ */
+public class WayAttributes {
+    /** attributes of the way the current thread has requested last */
+    private static final ThreadLocal<WayAttributes> LAST = new ThreadLocal<WayAttributes>();
+
+    /** way the attributes were parsed from, only compared by reference */
+    private final ReaderWay way;
+
+    private final String electrified;
+    private final int[] gauges;
+    private final int[] voltages;
+    private final double[] frequencies;
+    private final boolean voltageGrounded;
+
+    private WayAttributes(ReaderWay way) {
+        this.way = way;
+        electrified = way.getTag("electrified", null);
+        gauges = MultiValueChecker.parseIntValues(way.getTag("gauge", null));
+        String voltage = way.getTag("voltage", null);
+        voltages = MultiValueChecker.parseIntValues(voltage);
+        frequencies = MultiValueChecker.parseDoubleValues(way.getTag("frequency", null));
+        voltageGrounded = voltage == null || voltage.equals("0");
+    }
+
+    /**
+     * Get the attributes of a way. They are parsed only once as long as the encoders of a thread
+     * request the attributes of one way after another.
+     */
+    public static WayAttributes of(ReaderWay way) {
+        WayAttributes cached = LAST.get();
+        if (cached != null && cached.way == way) {
+            return cached;
+        }
+        WayAttributes attributes = new WayAttributes(way);
+        LAST.set(attributes);
+        return attributes;
+    }
+
+    /**
+     * Value of the electrified=* tag, null if it is missing.
+     */
+    public String getElectrified() {
+        return electrified;
+    }
+
+    /**
+     * Check if one of the gauges of the way is in a sorted array of accepted gauges.
+     */
+    public boolean hasGauge(int[] acceptedGauges) {
+        return MultiValueChecker.containsAny(gauges, acceptedGauges, true);
+    }
+
+    /**
+     * Check if one of the voltages of the way is in a sorted array of accepted voltages.
+     */
+    public boolean hasVoltage(int[] acceptedVoltages) {
+        return MultiValueChecker.containsAny(voltages, acceptedVoltages, true);
+    }
+
+    /**
+     * Check if one of the frequencies of the way is in a sorted array of accepted frequencies.
+     */
+    public boolean hasFrequency(double[] acceptedFrequencies) {
+        return MultiValueChecker.containsAny(frequencies, acceptedFrequencies, true);
+    }
+
+    /**
+     * Check if the voltage is missing or zero. Grounded sections of the overhead line are treated
+     * as compatible with all vehicles.
+     */
+    public boolean isVoltageGrounded() {
+        return voltageGrounded;
+    }
+}
@@ -0,0 +1,355 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.Translation;
+import com.graphhopper.util.TranslationMap;
+
+import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.util.GpxTrackReader;
+
+import static com.graphhopper.util.Parameters.Routing.*;
+
+/**
+ * Match many tracks with one request.
+ *
+ * Accepted input formats (selected by the Content-Type header):
+ *
+ * <ul>
+ * <li><code>application/gpx+xml</code> or <code>application/xml</code>: GPX document, every track
+ * is matched on its own</li>
+ * <li><code>application/x-ndjson</code>: one JSON object per line with an optional <code>id</code>
+ * and the <code>points</code> as array of [longitude, latitude] arrays</li>
+ * <li><code>application/zip</code>: ZIP archive of GPX (.gpx) and CSV (.csv) files</li>
+ * </ul>
+ *
+ * The tracks are matched in parallel on a bounded executor shared by all requests. The response
+ * is a stream of JSON objects, one per line, in the order the tracks finished. Every object
+ * contains the <code>id</code> and the <code>index</code> of the track in the input. The last
+ * line contains a summary.
+ */
+@javax.ws.rs.Path("match/batch")
+public class BatchMatchResource {
+    private static final Logger logger = LoggerFactory.getLogger(BatchMatchResource.class);
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private final RailwayHopper hopper;
+    private final EncodingManager encodingManager;
+    private final TranslationMap trMap;
+    private final ExecutorService executor;
+    private final int maxTracksInFlight;
+    private final ObjectMapper objectMapper;
+    private final MatchMetrics metrics;
+
+    /**
+     * A track of the input.
+     */
+    static class Track {
+        final String id;
+        final PointList points;
+        /** course of every point, null if unknown */
+        final double[] courses;
+
+        Track(String id, PointList points) {
+            this(id, points, null);
+        }
+
+        Track(String id, PointList points, double[] courses) {
+            this.id = id;
+            this.points = points;
+            this.courses = courses;
+        }
+    }
+
+    @Inject
+    public BatchMatchResource(RailwayHopper graphHopper, EncodingManager encodingManager,
+            TranslationMap trMap, @Named(RailwayRoutingBundle.MATCH_EXECUTOR) ExecutorService executor,
+            @Named(RailwayRoutingBundle.MATCH_THREADS) Integer matchThreads, ObjectMapper objectMapper,
+            MatchMetrics metrics) {
+        this.hopper = graphHopper;
+        this.encodingManager = encodingManager;
+        this.trMap = trMap;
+        this.executor = executor;
+        // Keep all threads busy but do not let one request flood the queue of the executor.
+        this.maxTracksInFlight = 2 * matchThreads;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
+
+    private static void addGpxTracks(List<Track> tracks, List<GpxTrackReader.Track> gpxTracks, String prefix) {
+        for (int i = 0; i < gpxTracks.size(); ++i) {
+            GpxTrackReader.Track trk = gpxTracks.get(i);
+            String id = trk.getName() != null ? trk.getName() : Integer.toString(i);
+            tracks.add(new Track(prefix + id, trk.getPoints(), trk.getCourses()));
+        }
+    }
+
+    private List<Track> readNdjson(InputStream inputStream) throws IOException {
+        List<Track> tracks = new ArrayList<Track>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            ++lineNumber;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            JsonNode track = objectMapper.readTree(line);
+            JsonNode points = track.get("points");
+            if (points == null || !points.isArray()) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has no points array.");
+            }
+            PointList entries = new PointList(points.size(), false);
+            for (JsonNode point : points) {
+                if (!point.isArray() || point.size() < 2) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " contains a point which is not a [longitude, latitude] array.");
+                }
+                entries.add(point.get(1).asDouble(), point.get(0).asDouble());
+            }
+            String id = track.has("id") ? track.get("id").asText() : Integer.toString(tracks.size());
+            tracks.add(new Track(id, entries));
+        }
+        return tracks;
+    }
+
+    private static List<Track> readZip(InputStream inputStream, char separator, char quoteChar) throws IOException {
+        List<Track> tracks = new ArrayList<Track>();
+        ZipInputStream zip = new ZipInputStream(inputStream);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            String lowerName = name.toLowerCase();
+            // The parsers do not close their input and stop at the end of the entry.
+            InputStream file = zip;
+            if (lowerName.endsWith(".gpx")) {
+                addGpxTracks(tracks, MatchResource.readGpx(file), name + "#");
+            } else if (lowerName.endsWith(".csv")) {
+                tracks.add(new Track(name, MatchResource.readCSV(file, separator, quoteChar)));
+            } else {
+                logger.warn("Ignoring file " + name + " in ZIP archive because it is neither GPX nor CSV.");
+            }
+        }
+        return tracks;
+    }
+
+    List<Track> readTracks(InputStream inputStream, String contentType, char separator, char quoteChar) throws IOException {
+        if (contentType == null) {
+            throw new IllegalArgumentException("Missing Content-Type header.");
+        }
+        // ignore parameters like charset
+        String mediaType = contentType.split(";")[0].trim();
+        if (mediaType.equals("application/gpx+xml") || mediaType.equals("application/xml")) {
+            List<Track> tracks = new ArrayList<Track>();
+            addGpxTracks(tracks, MatchResource.readGpx(inputStream), "");
+            return tracks;
+        }
+        if (mediaType.equals(NDJSON)) {
+            return readNdjson(inputStream);
+        }
+        if (mediaType.equals("application/zip")) {
+            return readZip(inputStream, separator, quoteChar);
+        }
+        throw new IllegalArgumentException("Unsupported input MIME type " + mediaType);
+    }
+
+    /**
+     * Wait until all tasks have finished, regardless of their result. An interruption does not
+     * stop the waiting but is passed on afterwards.
+     */
+    private static void awaitTasks(List<? extends Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> f : futures) {
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ObjectNode matchTrack(Track track, int index, TrackMatcher matcher, boolean instructions,
+            boolean calcPoints, boolean pointsEncoded, boolean enableTraversalKeys, boolean encodeTraversalKeys) {
+        ObjectNode line;
+        try {
+            TrackMatcher.Result result = matcher.match(track.points, track.courses);
+            line = MatchResource.toJson(result, instructions, calcPoints, pointsEncoded, enableTraversalKeys, encodeTraversalKeys, result.getTook());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to match track " + track.id + ": " + e.toString());
+            line = objectMapper.createObjectNode();
+            line.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        line.put("id", track.id);
+        line.put("index", index);
+        return line;
+    }
+
+    @POST
+    @Produces(NDJSON)
+    public Response doPost(
+            InputStream inputStream,
+            @Context HttpServletRequest httpReq,
+            @Context UriInfo uriInfo,
+            @QueryParam("csv_input.separator") @DefaultValue(";") char csvInputSeparator,
+            @QueryParam("csv_input.quoteChar") @DefaultValue("\"") char quoteChar,
+            @QueryParam(INSTRUCTIONS) @DefaultValue("false") boolean instructions,
+            @QueryParam(CALC_POINTS) @DefaultValue("true") boolean calcPoints,
+            @QueryParam("points_encoded") @DefaultValue("true") boolean pointsEncoded,
+            @QueryParam("vehicle") @DefaultValue("car") String vehicleStr,
+            @QueryParam("locale") @DefaultValue("en") String localeStr,
+            @QueryParam(Parameters.Details.PATH_DETAILS) List<String> pathDetails,
+            @QueryParam("traversal_keys") @DefaultValue("false") boolean enableTraversalKeys,
+            @QueryParam("traversal_keys.encoding") @DefaultValue(MatchResource.TRAVERSAL_KEYS_ARRAY) String traversalKeysEncoding,
+            @QueryParam(MAX_VISITED_NODES) @DefaultValue("3000") int maxVisitedNodes,
+            @QueryParam("gps_accuracy") @DefaultValue("40") double gpsAccuracy,
+            @QueryParam("heading_tolerance") @DefaultValue("0") double headingTolerance,
+            @QueryParam("fill_gaps") @DefaultValue("false") boolean fillGaps) throws IOException {
+        StopWatch sw = new StopWatch().start();
+        boolean encodeTraversalKeys = MatchResource.parseTraversalKeysEncoding(traversalKeysEncoding);
+        String logStr = httpReq.getQueryString() + " " + httpReq.getRemoteAddr() + " " + httpReq.getHeader("User-Agent");
+        // The input is read completely before the response starts. Errors in the input are
+        // therefore reported with a normal error response.
+        List<Track> tracks;
+        Timer.Context parseTime = metrics.getParse().time();
+        try {
+            tracks = readTracks(inputStream, httpReq.getHeader("Content-type"), csvInputSeparator, quoteChar);
+        } finally {
+            parseTime.stop();
+        }
+        if (!encodingManager.hasEncoder(vehicleStr)) {
+            throw new IllegalArgumentException("Vehicle not supported: " + vehicleStr);
+        }
+        if (headingTolerance < 0) {
+            throw new IllegalArgumentException("heading_tolerance must not be negative.");
+        }
+        Translation tr = trMap.getWithFallBack(Helper.getLocale(localeStr));
+        MultivaluedMap<String, String> queryParameters = uriInfo.getQueryParameters();
+
+        // The response stream has to stay open until all tracks have been written.
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        StreamingOutput stream = (OutputStream output) -> {
+            ExecutorCompletionService<ObjectNode> completionService = new ExecutorCompletionService<ObjectNode>(executor);
+            List<Future<ObjectNode>> futures = new ArrayList<Future<ObjectNode>>(tracks.size());
+            AtomicBoolean cancelled = new AtomicBoolean();
+            int submitted = 0;
+            int failed = 0;
+            try {
+                for (int done = 0; done < tracks.size(); ++done) {
+                    while (submitted < tracks.size() && submitted - done < maxTracksInFlight) {
+                        final Track track = tracks.get(submitted);
+                        final int index = submitted;
+                        futures.add(completionService.submit(() -> {
+                            if (cancelled.get()) {
+                                return null;
+                            }
+                            TrackMatcher matcher = new TrackMatcher(hopper, encodingManager)
+                                    .setVehicle(vehicleStr)
+                                    .setMaxVisitedNodes(maxVisitedNodes)
+                                    .setGpsAccuracy(gpsAccuracy)
+                                    .setHeadingTolerance(headingTolerance)
+                                    .setFillGaps(fillGaps)
+                                    .setInstructions(instructions)
+                                    .setCalcPoints(calcPoints)
+                                    .setLocale(localeStr, tr)
+                                    .setPathDetails(pathDetails)
+                                    .setQueryParameters(queryParameters)
+                                    .setMetrics(metrics);
+                            return matchTrack(track, index, matcher, instructions, calcPoints, pointsEncoded, enableTraversalKeys, encodeTraversalKeys);
+                        }));
+                        ++submitted;
+                    }
+                    ObjectNode line = completionService.take().get();
+                    if (line.has("error")) {
+                        ++failed;
+                    }
+                    Timer.Context serializeTime = metrics.getSerialize().time();
+                    try {
+                        writer.writeValue(output, line);
+                        output.write('\n');
+                        output.flush();
+                    } finally {
+                        serializeTime.stop();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for map matching results", e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                // Stop matching if the client has gone away. Tasks which have already started
+                // use the graph of this request which must not be released before they have
+                // finished.
+                cancelled.set(true);
+                awaitTasks(futures);
+            }
+            float took = sw.stop().getSeconds();
+            double tracksPerSecond = took > 0 ? tracks.size() / took : 0;
+            logger.info(logStr + ", tracks:" + tracks.size() + ", failed:" + failed + ", took:" + took
+                    + ", tracks/s:" + String.format("%.2f", tracksPerSecond));
+            ObjectNode summary = objectMapper.createObjectNode();
+            ObjectNode info = summary.putObject("summary");
+            info.put("tracks", tracks.size());
+            info.put("failed", failed);
+            info.put("took", took);
+            info.put("tracks_per_second", tracksPerSecond);
+            writer.writeValue(output, summary);
+            output.write('\n');
+            output.flush();
+        };
+        return Response.ok(stream, NDJSON).build();
+    }
+
+}
@@ -0,0 +1,182 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+
+import de.geofabrik.railway_routing.util.FixedPointFormat;
+
+/**
+ * Write the points of a matched path as CSV straight to the response stream.
+ *
+ * The first two columns are longitude and latitude with seven fractional digits (about 1 cm).
+ * Every requested path detail (e.g. edge_id, average_speed) adds a column with the value of the
+ * edge the point belongs to. The path detail <code>time</code> is written as time offset from
+ * the first point in milliseconds, interpolated by distance within an edge.
+ */
+public class CsvPathOutput implements StreamingOutput {
+
+    /** fractional digits of coordinates */
+    static final int COORDINATE_DECIMALS = 7;
+
+    /** fractional digits of other decimal numbers */
+    static final int DECIMALS = 3;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String TIME = "time";
+
+    private final PointList points;
+    private final byte separator;
+    private final List<String> detailNames;
+    private final List<List<PathDetail>> details;
+
+    /**
+     * @param detailNames path details to add as columns, details missing in the path are skipped
+     */
+    public CsvPathOutput(PathWrapper path, char separator, List<String> detailNames) {
+        if (separator > 127) {
+            throw new IllegalArgumentException("The CSV output separator has to be an ASCII character.");
+        }
+        this.points = path.getPoints();
+        this.separator = (byte) separator;
+        this.detailNames = new ArrayList<String>();
+        this.details = new ArrayList<List<PathDetail>>();
+        Map<String, List<PathDetail>> pathDetails = path.getPathDetails();
+        for (String name : detailNames != null ? detailNames : Collections.<String>emptyList()) {
+            List<PathDetail> list = pathDetails.get(name);
+            if (list != null && !this.detailNames.contains(name)) {
+                this.detailNames.add(name);
+                this.details.add(list);
+            }
+        }
+    }
+
+    /**
+     * Get the index of the interval containing a point. A point shared by two intervals belongs
+     * to the second one, the last point of the path belongs to the last interval.
+     */
+    private static int advance(List<PathDetail> list, int interval, int point) {
+        while (interval < list.size() - 1 && list.get(interval).getLast() <= point) {
+            ++interval;
+        }
+        return interval;
+    }
+
+    /**
+     * Get the distance from the first point to every point of the path.
+     */
+    private double[] cumulativeDistances() {
+        DistanceCalc distanceCalc = Helper.DIST_PLANE;
+        double[] distances = new double[points.getSize()];
+        for (int i = 1; i < distances.length; ++i) {
+            distances[i] = distances[i - 1] + distanceCalc.calcDist(points.getLat(i - 1), points.getLon(i - 1),
+                    points.getLat(i), points.getLon(i));
+        }
+        return distances;
+    }
+
+    private int writeValue(Object value, byte[] buffer, int pos, OutputStream output) throws IOException {
+        if (value == null) {
+            return pos;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return FixedPointFormat.formatLong(((Number) value).longValue(), buffer, pos);
+        }
+        if (value instanceof Number) {
+            return FixedPointFormat.formatDouble(((Number) value).doubleValue(), DECIMALS, buffer, pos);
+        }
+        String str = value.toString();
+        boolean quote = str.indexOf(separator) >= 0 || str.indexOf('"') >= 0 || str.indexOf('\n') >= 0;
+        if (quote) {
+            str = "\"" + str.replace("\"", "\"\"") + "\"";
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        if (pos + bytes.length > buffer.length) {
+            output.write(buffer, 0, pos);
+            pos = 0;
+        }
+        if (bytes.length > buffer.length) {
+            output.write(bytes);
+            return pos;
+        }
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        // numbers and a separator or line break always fit into the buffer after this limit
+        int flushLimit = BUFFER_SIZE - FixedPointFormat.MAX_LENGTH - 1;
+        StringBuilder header = new StringBuilder("longitude").append((char) separator).append("latitude");
+        for (String name : detailNames) {
+            header.append((char) separator).append(name);
+        }
+        header.append('\n');
+        output.write(header.toString().getBytes(StandardCharsets.UTF_8));
+
+        int detailCount = details.size();
+        int[] intervals = new int[detailCount];
+        // time offset at the beginning of the current interval, only used for the time column
+        double[] timeBefore = new double[detailCount];
+        double[] distances = detailNames.contains(TIME) ? cumulativeDistances() : null;
+        int size = points.getSize();
+        int pos = 0;
+        for (int i = 0; i < size; ++i) {
+            if (pos > flushLimit - FixedPointFormat.MAX_LENGTH - 1) {
+                output.write(buffer, 0, pos);
+                pos = 0;
+            }
+            pos = FixedPointFormat.formatDouble(points.getLon(i), COORDINATE_DECIMALS, buffer, pos);
+            buffer[pos++] = separator;
+            pos = FixedPointFormat.formatDouble(points.getLat(i), COORDINATE_DECIMALS, buffer, pos);
+            for (int d = 0; d < detailCount; ++d) {
+                if (pos > flushLimit) {
+                    output.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                buffer[pos++] = separator;
+                List<PathDetail> list = details.get(d);
+                if (list.isEmpty()) {
+                    continue;
+                }
+                int next = advance(list, intervals[d], i);
+                PathDetail detail = list.get(next);
+                if (!detailNames.get(d).equals(TIME)) {
+                    intervals[d] = next;
+                    pos = writeValue(detail.getValue(), buffer, pos, output);
+                    continue;
+                }
+                for (int k = intervals[d]; k < next; ++k) {
+                    timeBefore[d] += ((Number) list.get(k).getValue()).doubleValue();
+                }
+                intervals[d] = next;
+                double length = distances[detail.getLast()] - distances[detail.getFirst()];
+                double fraction = length > 0 ? (distances[i] - distances[detail.getFirst()]) / length : 0;
+                fraction = Math.max(0, Math.min(1, fraction));
+                double time = timeBefore[d] + fraction * ((Number) detail.getValue()).doubleValue();
+                pos = FixedPointFormat.formatLong(Math.round(time), buffer, pos);
+            }
+            if (pos > flushLimit) {
+                output.write(buffer, 0, pos);
+                pos = 0;
+            }
+            buffer[pos++] = '\n';
+        }
+        output.write(buffer, 0, pos);
+        output.flush();
+    }
+}
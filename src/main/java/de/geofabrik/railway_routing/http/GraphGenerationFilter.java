@@ -0,0 +1,44 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Keep the graph which is current at the beginning of a request until the response has been
+ * written. Streamed responses are written inside the filter chain as well, therefore a replaced
+ * graph is not closed while a response is still using it. Requests which hand work to other
+ * threads have to wait for it before they return.
+ */
+public class GraphGenerationFilter implements Filter {
+
+    private final RailwayRoutingManaged graphHopperManaged;
+
+    public GraphGenerationFilter(RailwayRoutingManaged graphHopperManaged) {
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        RailwayRoutingManaged.Generation generation = graphHopperManaged.acquire();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            graphHopperManaged.release(generation);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
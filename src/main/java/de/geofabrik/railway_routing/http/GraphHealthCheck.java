@@ -0,0 +1,26 @@
+package de.geofabrik.railway_routing.http;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.graphhopper.storage.GraphHopperStorage;
+
+/**
+ * Health check of the current graph. The graph can be replaced at runtime, therefore it is
+ * looked up on every check.
+ */
+public class GraphHealthCheck extends HealthCheck {
+
+    private final RailwayRoutingManaged graphHopperManaged;
+
+    public GraphHealthCheck(RailwayRoutingManaged graphHopperManaged) {
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    protected Result check() {
+        GraphHopperStorage storage = graphHopperManaged.getGraphHopper().getGraphHopperStorage();
+        if (storage == null || storage.isClosed()) {
+            return Result.unhealthy("The graph is closed.");
+        }
+        return Result.healthy();
+    }
+}
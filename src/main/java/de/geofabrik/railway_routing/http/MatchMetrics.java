@@ -0,0 +1,106 @@
+package de.geofabrik.railway_routing.http;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Metrics of the phases of map matching requests. They are registered in the metric registry of
+ * Dropwizard and are shown at /metrics of the admin connector.
+ *
+ * The timers of the phases use the names match.parse, match.matching, match.gap_fill,
+ * match.merge and match.serialize. The histograms match.track_points and
+ * match.gap_fill.visited_nodes record the size of the input tracks and the number of nodes
+ * visited by the routing requests filling gaps. The counter match.gap_fills counts these
+ * routing requests. The counters match.candidates and match.candidates.pruned count the map
+ * matching candidates seen and dropped by the heading filter.
+ */
+public class MatchMetrics {
+    static final String PREFIX = "match";
+
+    private final Timer parse;
+    private final Timer matching;
+    private final Timer gapFill;
+    private final Timer merge;
+    private final Timer serialize;
+    private final Histogram trackPoints;
+    private final Histogram gapFillVisitedNodes;
+    private final Counter gapFills;
+    private final Counter candidates;
+    private final Counter prunedCandidates;
+
+    public MatchMetrics(MetricRegistry registry) {
+        parse = registry.timer(MetricRegistry.name(PREFIX, "parse"));
+        matching = registry.timer(MetricRegistry.name(PREFIX, "matching"));
+        gapFill = registry.timer(MetricRegistry.name(PREFIX, "gap_fill"));
+        merge = registry.timer(MetricRegistry.name(PREFIX, "merge"));
+        serialize = registry.timer(MetricRegistry.name(PREFIX, "serialize"));
+        trackPoints = registry.histogram(MetricRegistry.name(PREFIX, "track_points"));
+        gapFillVisitedNodes = registry.histogram(MetricRegistry.name(PREFIX, "gap_fill", "visited_nodes"));
+        gapFills = registry.counter(MetricRegistry.name(PREFIX, "gap_fills"));
+        candidates = registry.counter(MetricRegistry.name(PREFIX, "candidates"));
+        prunedCandidates = registry.counter(MetricRegistry.name(PREFIX, "candidates", "pruned"));
+    }
+
+    /**
+     * Reading the input tracks.
+     */
+    public Timer getParse() {
+        return parse;
+    }
+
+    /**
+     * Candidate lookup and Viterbi algorithm of the matched sections.
+     */
+    public Timer getMatching() {
+        return matching;
+    }
+
+    /**
+     * Routing requests filling the gaps between matched sections.
+     */
+    public Timer getGapFill() {
+        return gapFill;
+    }
+
+    /**
+     * Merging the paths of the matched sections and the gaps.
+     */
+    public Timer getMerge() {
+        return merge;
+    }
+
+    /**
+     * Writing the response.
+     */
+    public Timer getSerialize() {
+        return serialize;
+    }
+
+    public Histogram getTrackPoints() {
+        return trackPoints;
+    }
+
+    public Histogram getGapFillVisitedNodes() {
+        return gapFillVisitedNodes;
+    }
+
+    public Counter getGapFills() {
+        return gapFills;
+    }
+
+    /**
+     * Candidates found for the observations of tracks matched with the heading filter enabled.
+     */
+    public Counter getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Candidates dropped by the heading filter.
+     */
+    public Counter getPrunedCandidates() {
+        return prunedCandidates;
+    }
+}
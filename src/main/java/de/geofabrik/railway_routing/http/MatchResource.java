@@ -1,9 +1,9 @@
 package de.geofabrik.railway_routing.http;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -21,55 +21,41 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
-import com.graphhopper.MultiException;
 import com.graphhopper.PathWrapper;
 import com.graphhopper.http.WebHelper;
 import com.graphhopper.matching.EdgeMatch;
-import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
-import com.graphhopper.matching.Observation;
-import com.graphhopper.matching.gpx.Gpx;
-import com.graphhopper.matching.gpx.Trk;
-import com.graphhopper.matching.gpx.Trkseg;
-import com.graphhopper.routing.AlgorithmOptions;
-import com.graphhopper.routing.Path;
 import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.HintsMap;
-import com.graphhopper.routing.util.TraversalMode;
-import com.graphhopper.routing.weighting.FastestWeighting;
-import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.Parameters;
-import com.graphhopper.util.PathMerger;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.Translation;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.gpx.GpxFromInstructions;
-import com.graphhopper.util.shapes.GHPoint;
-import com.opencsv.bean.CsvToBeanBuilder;
 
-import de.geofabrik.railway_routing.InputCSVEntry;
 import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.util.CsvTrackReader;
+import de.geofabrik.railway_routing.util.GpxTrackReader;
+import de.geofabrik.railway_routing.util.TraversalKeyEncoder;
 
 import static com.graphhopper.util.Parameters.Routing.*;
 
@@ -77,94 +63,84 @@ import static com.graphhopper.util.Parameters.Routing.*;
 public class MatchResource {
     private static final Logger logger = LoggerFactory.getLogger(MatchResource.class);
 
+    /** traversal keys as JSON array */
+    static final String TRAVERSAL_KEYS_ARRAY = "array";
+    /** traversal keys as string encoded by TraversalKeyEncoder */
+    static final String TRAVERSAL_KEYS_DELTA = "delta";
+
     private final RailwayHopper hopper;
     private final EncodingManager encodingManager;
     private final TranslationMap trMap;
+    private final MatchMetrics metrics;
 
     @Inject
     public MatchResource(RailwayHopper graphHopper, EncodingManager encodingManager,
-            TranslationMap trMap) {
+            TranslationMap trMap, MatchMetrics metrics) {
         this.hopper = graphHopper;
         this.encodingManager = encodingManager;
         this.trMap = trMap;
+        this.metrics = metrics;
     }
 
-    private List<Observation> readCSV(InputStream inputStream, double defaultSpeed, char separator, char quoteChar) {
-        try {
-            List<InputCSVEntry> inputEntries = new CsvToBeanBuilder<InputCSVEntry>(new InputStreamReader(inputStream))
-                    .withType(InputCSVEntry.class)
-                    .withSeparator(separator)
-                    .withQuoteChar(quoteChar)
-                    .build()
-                    .parse();
-            InputCSVEntry last = null;
-            ArrayList<Observation> result = new ArrayList<Observation>(inputEntries.size());
-            for (InputCSVEntry entry: inputEntries) {
-                if (last != null) {
-                    last = entry;
-                }
-                result.add(entry.toGPXEntry());
-            }
-            return result;
-        } catch (NumberFormatException e) {
-            throw new java.lang.RuntimeException(e.toString());
-        }
+    static PointList readCSV(InputStream inputStream, char separator, char quoteChar) throws IOException {
+        return new CsvTrackReader(separator, quoteChar).read(inputStream);
     }
 
-    private List<Observation> importGpx(InputStream inputStream) {
-        XmlMapper xmlMapper = new XmlMapper();
-        Gpx gpx;
-        try {
-            gpx = xmlMapper.readValue(inputStream, Gpx.class);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to parse GPX data stream.");
-        }
-        if (gpx.trk == null) {
+    /**
+     * Parse a GPX document.
+     *
+     * @throws IllegalArgumentException if the document is invalid or contains no tracks
+     */
+    static List<GpxTrackReader.Track> readGpx(InputStream inputStream) {
+        List<GpxTrackReader.Track> tracks = GpxTrackReader.read(inputStream);
+        if (tracks.isEmpty()) {
             throw new IllegalArgumentException("No tracks found in GPX document. Are you using waypoints or routes instead?");
         }
-        if (gpx.trk.size() > 1) {
-            throw new IllegalArgumentException("GPX documents with multiple tracks not supported yet.");
-        }
-        return gpx.trk.get(0).getEntries();
+        return tracks;
     }
 
-    public List<Observation> parseInput(InputStream inputStream, String contentType, char separator, char quoteChar)
-            throws SAXException, IOException, ParserConfigurationException {
-        if (contentType.equals(MediaType.APPLICATION_XML) || contentType.equals("application/gpx+xml")) {
-            return importGpx(inputStream);
-        }
-        if (contentType.equals("text/csv")) {
-            return readCSV(inputStream, 50, separator, quoteChar);
+    private GpxTrackReader.Track importGpx(InputStream inputStream) {
+        List<GpxTrackReader.Track> tracks = readGpx(inputStream);
+        if (tracks.size() > 1) {
+            throw new IllegalArgumentException("GPX documents with multiple tracks are only supported by /match/batch.");
         }
-        if (!contentType.equals(null)) {
-            throw new java.lang.RuntimeException("Unsupported input MIME type");
+        return tracks.get(0);
+    }
+
+    /**
+     * Parse a GPX or CSV track. Only GPX tracks can have courses.
+     */
+    public GpxTrackReader.Track parseInput(InputStream inputStream, String contentType, char separator, char quoteChar)
+            throws IOException {
+        if (contentType != null) {
+            // ignore parameters like charset
+            String mediaType = contentType.split(";")[0].trim();
+            if (mediaType.equals(MediaType.APPLICATION_XML) || mediaType.equals("application/gpx+xml")) {
+                return importGpx(inputStream);
+            }
+            if (mediaType.equals("text/csv")) {
+                return new GpxTrackReader.Track(null, readCSV(inputStream, separator, quoteChar));
+            }
+            throw new IllegalArgumentException("Unsupported input MIME type " + mediaType);
         }
         // guess input type
-        InputStreamReader isr = new InputStreamReader(inputStream);
-        char[] beginning = new char[5];
-        try {
-            isr.read(beginning, 0, 5);
-        } catch (IOException e) {
-            throw new java.lang.RuntimeException(e.toString());
+        BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+        bufferedStream.mark(5);
+        byte[] beginning = new byte[5];
+        int read = 0;
+        while (read < beginning.length) {
+            int count = bufferedStream.read(beginning, read, beginning.length - read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
         }
-        String declaration = String.valueOf(beginning);
+        bufferedStream.reset();
+        String declaration = new String(beginning, 0, read, StandardCharsets.US_ASCII);
         if (declaration.equals("<?xml")) {
-            return importGpx(inputStream);
-        }
-        return readCSV(inputStream, 50, separator, quoteChar);
-    }
-
-    private String getCSVOutput(PathWrapper path, char separator) {
-        PointList points = path.getPoints();
-        StringBuilder str = new StringBuilder(points.getSize() * 2 * 15);
-        str.append("longitude").append(separator).append("latitude\n");
-        for (int i = 0; i < points.getSize(); ++i) {
-            str.append(Double.toString(points.getLon(i)))
-                .append(separator)
-                .append(Double.toString(points.getLat(i)))
-                .append('\n');
+            return importGpx(bufferedStream);
         }
-        return str.toString();
+        return new GpxTrackReader.Track(null, readCSV(bufferedStream, separator, quoteChar));
     }
 
     // copied from com.graphhopper.resources.RouteResource
@@ -190,9 +166,10 @@ public class MatchResource {
     }
 
     @POST
+    @TimedSerialization
     // @Consumes({MediaType.APPLICATION_XML, "application/gpx+xml", "text/csv"})
     // We don't declare @Consumes types here because otherwise request without a Content-type header would fail.
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", "text/csv", PbfMatchOutput.MEDIA_TYPE})
     public Response doPost(
             InputStream inputStream,
             @Context HttpServletRequest httpReq,
@@ -210,95 +187,46 @@ public class MatchResource {
             @QueryParam("gpx.route") @DefaultValue("true") boolean withRoute,
             @QueryParam("gpx.track") @DefaultValue("true") boolean withTrack,
             @QueryParam("traversal_keys") @DefaultValue("false") boolean enableTraversalKeys,
+            @QueryParam("traversal_keys.encoding") @DefaultValue(TRAVERSAL_KEYS_ARRAY) String traversalKeysEncoding,
             @QueryParam(MAX_VISITED_NODES) @DefaultValue("3000") int maxVisitedNodes,
             @QueryParam("gps_accuracy") @DefaultValue("40") double gpsAccuracy,
+            @QueryParam("heading_tolerance") @DefaultValue("0") double headingTolerance,
             @QueryParam("fill_gaps") @DefaultValue("false") boolean fillGaps) throws Exception {
         
         StopWatch sw = new StopWatch().start();
+        boolean encodeTraversalKeys = parseTraversalKeysEncoding(traversalKeysEncoding);
         boolean writeGPX = "gpx".equalsIgnoreCase(outType);
         instructions = writeGPX || instructions;
         String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
         String logStr = httpReq.getQueryString() + " " + infoStr;
-        FlagEncoder encoder;
-        try {
-            encoder = encodingManager.getEncoder(vehicleStr);
-        } catch (IllegalArgumentException err) {
-            throw new IllegalArgumentException("Vehicle not supported: " + vehicleStr);
-        }
-        FastestWeighting fastestWeighting = new FastestWeighting(encoder);
-        TraversalMode tMode;
-        if (hopper.getEncodingManager().needsTurnCostsSupport()) {
-            tMode = TraversalMode.EDGE_BASED;
-        } else {
-            tMode = TraversalMode.NODE_BASED;
-        }
-        Weighting turnWeighting = hopper.createTurnWeighting(hopper.getGraphHopperStorage(),
-                fastestWeighting, tMode, 0);
-        AlgorithmOptions opts = AlgorithmOptions.start()
-                .traversalMode(tMode)
-                .maxVisitedNodes(maxVisitedNodes)
-                .weighting(turnWeighting)
-                .hints(new HintsMap().put("vehicle", vehicleStr))
-                .build();
-        MapMatching mapMatching = new MapMatching(hopper, opts);
-        mapMatching.setMeasurementErrorSigma(gpsAccuracy);
+        Translation tr = trMap.getWithFallBack(Helper.getLocale(localeStr));
+        TrackMatcher matcher = new TrackMatcher(hopper, encodingManager)
+                .setVehicle(vehicleStr)
+                .setMaxVisitedNodes(maxVisitedNodes)
+                .setGpsAccuracy(gpsAccuracy)
+                .setHeadingTolerance(headingTolerance)
+                .setFillGaps(fillGaps)
+                .setInstructions(instructions)
+                .setCalcPoints(calcPoints)
+                .setLocale(localeStr, tr)
+                .setPathDetails(pathDetails)
+                .setQueryParameters(uriInfo.getQueryParameters())
+                .setMetrics(metrics);
         float took = 0;
         try {
-            List<Observation> inputGPXEntries = parseInput(inputStream, httpReq.getHeader("Content-type"), csvInputSeparator, quoteChar);
-            if (inputGPXEntries.size() < 2) {
-                throw new IllegalArgumentException("input contains less than two points");
+            GpxTrackReader.Track input;
+            Timer.Context parseTime = metrics.getParse().time();
+            try {
+                input = parseInput(inputStream, httpReq.getHeader("Content-type"), csvInputSeparator, quoteChar);
+            } finally {
+                parseTime.stop();
             }
-            PathMerger pathMerger = new PathMerger().
-                    setEnableInstructions(instructions).
-                    setPathDetailsBuilders(hopper.getPathDetailsBuilderFactory(), pathDetails);
-            // set a maximum distance for routing requests
-            PathWrapper pathWrapper = new PathWrapper();
-            Translation tr = trMap.getWithFallBack(Helper.getLocale(localeStr));
-            List<MatchResult> matchResultsList = new ArrayList<MatchResult>(2);
-            List<Path> mergedPaths = new ArrayList<Path>(3);
-            do {
-                // Fill gap with normal routing if matching in the last iteration of this loop ended at a gap.
-                // mapMatching.getSucessfullyMatchedPoints() returns -1 if no point has been matched yet (e.g. gap between first and second point).
-                if (mapMatching.matchingAttempted() && mapMatching.getSucessfullyMatchedPoints() < inputGPXEntries.size() - 1) {
-                    int start_point = Math.max(0, mapMatching.getSucessfullyMatchedPoints() - 1);
-                    List<GHPoint> points = new ArrayList<GHPoint>();
-                    points.add((GHPoint) inputGPXEntries.get(start_point).getPoint());
-                    points.add((GHPoint) inputGPXEntries.get(start_point + 1).getPoint());
-                    GHRequest request =  new GHRequest(points);
-                    initHints(request.getHints(), uriInfo.getQueryParameters());
-                    request.setVehicle(encodingManager.getEncoder(vehicleStr).toString()).
-                        setLocale(localeStr).
-                        setPathDetails(pathDetails).
-                        getHints().
-                        put(CALC_POINTS, calcPoints).
-                        put(INSTRUCTIONS, instructions);
-                    GHResponse response = new GHResponse();
-                    List<Path> paths = hopper.calcPaths(request, response);
-                    if (response.hasErrors()) {
-                        logger.error("Routing request for " + points.toString() + " to fill a gap in the map matching failed: " + response.getErrors().toString());
-                        throw new MultiException(response.getErrors());
-                    } else {
-                        mergedPaths.add(paths.get(0));
-                    }
-                }
-                MatchResult mr = mapMatching.doWork(inputGPXEntries, !fillGaps);
-                mergedPaths.add(mr.getMergedPath());
-                matchResultsList.add(mr);
-            } while (mapMatching.hasPointsToBeMatched());
-
-            // GraphHopper thinks an empty path is an invalid path, and further that an invalid path is still a path but
-            // marked with a non-empty list of Exception objects. I disagree, so I clear it.
-            pathWrapper.getErrors().clear();
+            TrackMatcher.Result result = matcher.match(input.getPoints(), input.getCourses());
             GHResponse rsp = new GHResponse();
-            pathMerger.doWork(pathWrapper, mergedPaths, encodingManager, tr);
-            rsp.add(pathWrapper);
+            rsp.add(result.getPathWrapper());
 
             took = sw.stop().getSeconds();
             logger.info(logStr + ", took:" + took);
-            if (rsp.hasErrors()) {
-                logger.error("Error merging paths: " + rsp.getErrors().toString());
-                throw new MultiException(rsp.getErrors());
-            }
             if (writeGPX) {
                 // The GPX output is not exactly the same as upstream GraphHopper.
                 // Upstream GraphHopper writes the timestamp of the first trackpoint of the input
@@ -311,46 +239,106 @@ public class MatchResource {
                         header("X-GH-Took", "" + Math.round(took * 1000)).
                         build();
             } else if ("csv".equalsIgnoreCase(outType)) {
-                return Response.ok(getCSVOutput(rsp.getBest(), csvOutputSeparator), "text/csv")
+                return Response.ok(new CsvPathOutput(rsp.getBest(), csvOutputSeparator, pathDetails), "text/csv")
                         .header("Content-Disposition", "attachment;filename=" + "GraphHopper.csv")
                         .header("X-GH-Took", "" + Math.round(took * 1000))
                         .build();
+            } else if ("pbf".equalsIgnoreCase(outType)) {
+                PbfMatchOutput output = new PbfMatchOutput(result, enableTraversalKeys,
+                        hopper.getMatchingOptions(vehicleStr, maxVisitedNodes).getWeighting(), took);
+                return Response.ok(output, PbfMatchOutput.MEDIA_TYPE)
+                        .header("X-GH-Took", "" + Math.round(took * 1000))
+                        .build();
             } else {
-                ObjectNode map = WebHelper.jsonObject(rsp, instructions, calcPoints, false, pointsEncoded, took);
-
-                double matchLength = 0, gpxEntriesLength = 0;
-                int matchMillis = 0, gpxEntriesMillis = 0;
-                List<Integer> traversalKeylist = new ArrayList<>();
-                for (MatchResult mr : matchResultsList) {
-                    matchLength += mr.getMatchLength();
-                    matchMillis += mr.getMatchMillis();
-                    gpxEntriesLength += mr.getGpxEntriesLength();
-                    if (enableTraversalKeys) {
-                        for (EdgeMatch em : mr.getEdgeMatches()) {
-                            EdgeIteratorState edge = em.getEdgeState();
-                            // encode edges as traversal keys which includes orientation, decode simply by multiplying with 0.5
-                            traversalKeylist.add(GHUtility.createEdgeKey(edge.getBaseNode(), edge.getAdjNode(), edge.getEdge(), false));
-                        }
-                    }
-                }
-                Map<String, Object> matchStatistics = new HashMap<>();
-                matchStatistics.put("distance", matchLength);
-                matchStatistics.put("time", matchMillis);
-                matchStatistics.put("original_distance", gpxEntriesLength);
-                map.putPOJO("map_matching", matchStatistics);
-
-                if (enableTraversalKeys) {
-                    map.putPOJO("traversal_keys", traversalKeylist);
-                }
+                ObjectNode map = toJson(result, instructions, calcPoints, pointsEncoded, enableTraversalKeys, encodeTraversalKeys, took);
                 return Response.ok(map).
                         header("X-GH-Took", "" + Math.round(took * 1000)).
                         build();
             }
         } catch (IllegalArgumentException ex) {
             throw ex;
-        } catch (java.lang.RuntimeException | SAXException | IOException | ParserConfigurationException err) {
+        } catch (java.lang.RuntimeException | IOException err) {
             logger.error(logStr + ", took:" + took + ", error:" + err);
             throw err;
         }
     }
+
+    /**
+     * Array of ints written straight through the JSON generator without boxing.
+     */
+    static class IntArrayJson extends JsonSerializable.Base {
+        private final IntArrayList values;
+
+        IntArrayJson(IntArrayList values) {
+            this.values = values;
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeArray(values.buffer, 0, values.size());
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            serialize(gen, serializers);
+        }
+    }
+
+    /**
+     * Check the value of the traversal_keys.encoding parameter.
+     *
+     * @return true if the traversal keys should be encoded by {@link TraversalKeyEncoder}
+     */
+    static boolean parseTraversalKeysEncoding(String encoding) {
+        if (encoding.equals(TRAVERSAL_KEYS_ARRAY)) {
+            return false;
+        }
+        if (encoding.equals(TRAVERSAL_KEYS_DELTA)) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unsupported traversal_keys.encoding " + encoding
+                + ", use " + TRAVERSAL_KEYS_ARRAY + " or " + TRAVERSAL_KEYS_DELTA + ".");
+    }
+
+    /**
+     * Create the JSON response for a matched track.
+     *
+     * @param encodeTraversalKeys write the traversal keys as string encoded by
+     * {@link TraversalKeyEncoder} instead of an array
+     */
+    public static ObjectNode toJson(TrackMatcher.Result result, boolean instructions, boolean calcPoints,
+            boolean pointsEncoded, boolean enableTraversalKeys, boolean encodeTraversalKeys, float took) {
+        GHResponse rsp = new GHResponse();
+        rsp.add(result.getPathWrapper());
+        ObjectNode map = WebHelper.jsonObject(rsp, instructions, calcPoints, false, pointsEncoded, took);
+
+        double matchLength = 0, gpxEntriesLength = 0;
+        int matchMillis = 0;
+        IntArrayList traversalKeys = new IntArrayList();
+        for (MatchResult mr : result.getMatchResults()) {
+            matchLength += mr.getMatchLength();
+            matchMillis += mr.getMatchMillis();
+            gpxEntriesLength += mr.getGpxEntriesLength();
+            if (enableTraversalKeys) {
+                for (EdgeMatch em : mr.getEdgeMatches()) {
+                    EdgeIteratorState edge = em.getEdgeState();
+                    // encode edges as traversal keys which includes orientation, decode simply by multiplying with 0.5
+                    traversalKeys.add(GHUtility.createEdgeKey(edge.getBaseNode(), edge.getAdjNode(), edge.getEdge(), false));
+                }
+            }
+        }
+        Map<String, Object> matchStatistics = new HashMap<>();
+        matchStatistics.put("distance", matchLength);
+        matchStatistics.put("time", matchMillis);
+        matchStatistics.put("original_distance", gpxEntriesLength);
+        map.putPOJO("map_matching", matchStatistics);
+
+        if (enableTraversalKeys && encodeTraversalKeys) {
+            map.put("traversal_keys", TraversalKeyEncoder.encode(traversalKeys));
+        } else if (enableTraversalKeys) {
+            map.putPOJO("traversal_keys", new IntArrayJson(traversalKeys));
+        }
+        return map;
+    }
 }
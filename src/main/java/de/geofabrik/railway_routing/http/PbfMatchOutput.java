@@ -0,0 +1,109 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.matching.EdgeMatch;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.railway_routing.util.ProtobufWriter;
+
+/**
+ * Write a matched track as Protocol Buffers message MatchResponse (see proto/match.proto).
+ *
+ * The message is written field by field without building an object tree.
+ */
+public class PbfMatchOutput implements StreamingOutput {
+
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+
+    /** factor to convert degrees into microdegrees */
+    static final double COORDINATE_FACTOR = 1e6;
+
+    private final TrackMatcher.Result result;
+    private final boolean traversalKeys;
+    private final Weighting weighting;
+    private final float took;
+
+    /**
+     * @param weighting weighting to compute the time of the traversed edges, only needed if
+     * traversalKeys is true
+     */
+    public PbfMatchOutput(TrackMatcher.Result result, boolean traversalKeys, Weighting weighting, float took) {
+        this.result = result;
+        this.traversalKeys = traversalKeys;
+        this.weighting = weighting;
+        this.took = took;
+    }
+
+    /**
+     * Write the coordinates of the path as packed, delta encoded fields.
+     */
+    private static void writePoints(ProtobufWriter message, PointList points) {
+        ProtobufWriter lats = new ProtobufWriter(2 * points.getSize());
+        ProtobufWriter lons = new ProtobufWriter(2 * points.getSize());
+        long lastLat = 0;
+        long lastLon = 0;
+        for (int i = 0; i < points.getSize(); ++i) {
+            long lat = Math.round(points.getLat(i) * COORDINATE_FACTOR);
+            long lon = Math.round(points.getLon(i) * COORDINATE_FACTOR);
+            lats.writeRawSignedVarint(lat - lastLat);
+            lons.writeRawSignedVarint(lon - lastLon);
+            lastLat = lat;
+            lastLon = lon;
+        }
+        message.writeBytes(1, lats);
+        message.writeBytes(2, lons);
+    }
+
+    /**
+     * Serialize the message.
+     */
+    public ProtobufWriter toProtobuf() {
+        PathWrapper path = result.getPathWrapper();
+        ProtobufWriter message = new ProtobufWriter(4 * path.getPoints().getSize() + 64);
+        writePoints(message, path.getPoints());
+        message.writeDouble(3, path.getDistance());
+        message.writeVarint(4, path.getTime());
+
+        double matchLength = 0, gpxEntriesLength = 0;
+        long matchMillis = 0;
+        ProtobufWriter keys = new ProtobufWriter();
+        ProtobufWriter edgeTimes = new ProtobufWriter();
+        for (MatchResult mr : result.getMatchResults()) {
+            matchLength += mr.getMatchLength();
+            matchMillis += mr.getMatchMillis();
+            gpxEntriesLength += mr.getGpxEntriesLength();
+            if (traversalKeys) {
+                for (EdgeMatch em : mr.getEdgeMatches()) {
+                    EdgeIteratorState edge = em.getEdgeState();
+                    keys.writeRawVarint(GHUtility.createEdgeKey(edge.getBaseNode(), edge.getAdjNode(), edge.getEdge(), false));
+                    edgeTimes.writeRawVarint(weighting.calcMillis(edge, false, EdgeIterator.NO_EDGE));
+                }
+            }
+        }
+        ProtobufWriter statistics = new ProtobufWriter();
+        statistics.writeDouble(1, matchLength);
+        statistics.writeVarint(2, matchMillis);
+        statistics.writeDouble(3, gpxEntriesLength);
+        message.writeBytes(5, statistics);
+        message.writeBytes(6, keys);
+        message.writeBytes(7, edgeTimes);
+        message.writeFloat(8, took);
+        return message;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        toProtobuf().writeTo(output);
+        output.flush();
+    }
+}
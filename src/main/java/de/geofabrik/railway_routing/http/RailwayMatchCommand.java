@@ -1,5 +1,6 @@
 package de.geofabrik.railway_routing.http;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -9,6 +10,12 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -17,18 +24,11 @@ import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.PathWrapper;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.Observation;
-import com.graphhopper.matching.gpx.Gpx;
-import com.graphhopper.routing.AlgorithmOptions;
 import com.graphhopper.routing.util.FlagEncoder;
-import com.graphhopper.routing.util.HintsMap;
-import com.graphhopper.routing.util.TraversalMode;
-import com.graphhopper.routing.weighting.FastestWeighting;
-import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.Helper;
@@ -38,7 +38,9 @@ import com.graphhopper.util.Translation;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.gpx.GpxFromInstructions;
 
+import de.geofabrik.railway_routing.HeadingFilter;
 import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.util.GpxTrackReader;
 import de.geofabrik.railway_routing.util.PatternMatching;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
@@ -46,6 +48,28 @@ import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 
 public class RailwayMatchCommand extends ConfiguredCommand<RailwayRoutingServerConfiguration> {
+    private static final Logger logger = LogManager.getLogger(RailwayMatchCommand.class);
+
+    /** interval of the progress log messages */
+    private static final long PROGRESS_INTERVAL_NS = 10_000_000_000L;
+
+    /**
+     * Candidates and transitions counted by the heading filters of all files.
+     */
+    private static class CandidateStatistics {
+        final LongAdder candidates = new LongAdder();
+        final LongAdder pruned = new LongAdder();
+        final LongAdder transitions = new LongAdder();
+        final LongAdder keptTransitions = new LongAdder();
+
+        void add(HeadingFilter filter) {
+            candidates.add(filter.getCandidates());
+            pruned.add(filter.getPruned());
+            transitions.add(filter.getTransitions());
+            keptTransitions.add(filter.getKeptTransitions());
+        }
+    }
+
     public RailwayMatchCommand() {
         super("match", "matches GPX tracks to the railway network");
     }
@@ -70,11 +94,102 @@ public class RailwayMatchCommand extends ConfiguredCommand<RailwayRoutingServerC
                 .required(false)
                 .setDefault(10000)
                 .help("maximum number of nodes to visit between two trackpoints");
+        subparser.addArgument("--heading-tolerance")
+                .dest("heading_tolerance")
+                .type(Double.class)
+                .required(false)
+                .setDefault(0.0)
+                .help("drop candidates whose track differs from the heading of the trackpoint by more than this angle (degrees), 0 (default) to disable");
         subparser.addArgument("--gpx-location")
                 .dest("gpx_location")
                 .type(String.class)
                 .required(true)
                 .help("GPX input file(s). The argument may be a glob pattern.");
+        subparser.addArgument("--threads")
+                .dest("threads")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(1)
+                .help("number of files to match in parallel");
+    }
+
+    /**
+     * Create the map matching of one worker thread. Instances of MapMatching must not be
+     * shared between threads but they share the graph and the options.
+     */
+    private static MapMatching createMapMatching(RailwayHopper hopper, FlagEncoder encoder,
+            int maxNodesToVisit, double gpsAccuracy) {
+        MapMatching mapMatching = new MapMatching(hopper, hopper.getMatchingOptions(encoder.toString(), maxNodesToVisit));
+        mapMatching.setMeasurementErrorSigma(gpsAccuracy);
+        return mapMatching;
+    }
+
+    /**
+     * Match one GPX file and write the result next to it.
+     *
+     * @return false if the file could not be read, matched or written
+     */
+    private static boolean matchFile(Path f, RailwayHopper hopper, MapMatching mapMatching,
+            Translation tr, boolean withRoute, double headingTolerance, CandidateStatistics statistics) {
+        try {
+            logger.debug("Matching GPX track {} on the graph.", f);
+            List<GpxTrackReader.Track> tracks;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(f))) {
+                tracks = GpxTrackReader.read(in);
+            }
+            if (tracks.isEmpty()) {
+                logger.error("GPX file {} does not contain a track, skipping it.", f);
+                return false;
+            }
+            GpxTrackReader.Track track = tracks.get(0);
+            List<Observation> inputGPXEntries = TrackMatcher.toObservations(track.getPoints());
+            MatchResult mr;
+            if (headingTolerance > 0) {
+                HeadingFilter filter = new HeadingFilter(track.getPoints(), track.getCourses(), headingTolerance);
+                hopper.getRailLocationIndex().setHeadingFilter(filter);
+                try {
+                    mr = mapMatching.doWork(inputGPXEntries, false);
+                } finally {
+                    hopper.getRailLocationIndex().setHeadingFilter(null);
+                    statistics.add(filter);
+                }
+                logger.debug("\tcandidates: {}, pruned: {}", filter.getCandidates(), filter.getPruned());
+            } else {
+                mr = mapMatching.doWork(inputGPXEntries, false);
+            }
+            logger.debug("\tmatches: {}", mr.getEdgeMatches().size());
+            logger.debug("\tgpx length: {}, match length: {}", mr.getGpxEntriesLength(), mr.getMatchLength());
+
+            PathWrapper pathWrapper = new PathWrapper();
+            new PathMerger().doWork(pathWrapper, Collections.singletonList(mr.getMergedPath()),
+                    hopper.getEncodingManager(), tr);
+            if (pathWrapper.hasErrors()) {
+                logger.error("Failed to match {} to the graph: {}", f, pathWrapper.getErrors());
+                return false;
+            }
+            String outFile = f.toString() + ".res.gpx";
+            logger.debug("\texport results to: {}", outFile);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
+                // The GPX output is not exactly the same as upstream GraphHopper.
+                // Upstream GraphHopper writes the timestamp of the first trackpoint of the input
+                // file to the metadata section of the output file. We don't do this because this
+                // is special to GPX. The same applies tothe name field of the metadata section.
+                //TODO If elevation support is added, remove hardcoded false here.
+                long time = System.currentTimeMillis();
+                String trackName = track.getName() != null ? track.getName() : "";
+                writer.append(GpxFromInstructions.createGPX(pathWrapper.getInstructions(),
+                        trackName, time, hopper.hasElevation(), withRoute, true, false,
+                        Constants.VERSION, tr));
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Received IOException while reading GPX file {} from input stream: {}",
+                    f.toString(), e.toString());
+        } catch (RuntimeException e) {
+            // e.g. no candidates found for a point or the track has less than two points
+            logger.error("Failed to match {} to the graph: {}", f, e.toString());
+        }
+        return false;
     }
 
     @Override
@@ -84,11 +199,11 @@ public class RailwayMatchCommand extends ConfiguredCommand<RailwayRoutingServerC
         RailwayHopper hopper = new RailwayHopper(configuration.getGraphHopperConfiguration(),
                 configuration.getFlagEncoderConfigurations());
         hopper.setGraphHopperLocation(commandline_args.get("graph.location", "./graph-cache"));
-//        graphHopper.start();
-//        graphHopper.stop();
-        
 
-        final Logger logger = LogManager.getLogger(RailwayMatchCommand.class);
+        int threads = namespace.getInt("threads");
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1.");
+        }
         logger.info("Loading graph from cache at {}", hopper.getGraphHopperLocation());
         hopper.load(hopper.getGraphHopperLocation());
         List<FlagEncoder> flagEncoders = hopper.getEncodingManager().fetchEdgeEncoders();
@@ -102,26 +217,17 @@ public class RailwayMatchCommand extends ConfiguredCommand<RailwayRoutingServerC
         if (selectedEncoder == null) {
             throw new IllegalArgumentException("No valid encoding manager selected. Please use the 'vehicle' parameter.");
         }
-        double gpsAccuracy = namespace.getDouble("gps-accuracy");
-
-        FastestWeighting fastestWeighting = new FastestWeighting(selectedEncoder);
-        TraversalMode tMode;
-        if (hopper.getEncodingManager().needsTurnCostsSupport()) {
-            tMode = TraversalMode.EDGE_BASED;
-        } else {
-            tMode = TraversalMode.NODE_BASED;
+        final FlagEncoder encoder = selectedEncoder;
+        final double gpsAccuracy = namespace.getDouble("gps-accuracy");
+        final int maxNodesToVisit = namespace.getInt("max_nodes_to_visit");
+        final double headingTolerance = namespace.getDouble("heading_tolerance");
+        if (headingTolerance < 0) {
+            throw new IllegalArgumentException("The heading tolerance must not be negative.");
         }
-        Weighting turnWeighting = hopper.createTurnWeighting(hopper.getGraphHopperStorage(),
-                fastestWeighting, tMode, 0);
-        AlgorithmOptions opts = AlgorithmOptions.start()
-                .traversalMode(tMode)
-                .maxVisitedNodes(namespace.getInt("max_nodes_to_visit"))
-                .weighting(turnWeighting)
-                .hints(new HintsMap().put("vehicle", profile))
-                .build();
-
-        MapMatching mapMatching = new MapMatching(hopper, opts);
-        mapMatching.setMeasurementErrorSigma(gpsAccuracy);
+        final CandidateStatistics statistics = new CandidateStatistics();
+        // every worker thread gets its own map matching, the graph is shared
+        final ThreadLocal<MapMatching> mapMatchings = ThreadLocal.withInitial(
+                () -> createMapMatching(hopper, encoder, maxNodesToVisit, gpsAccuracy));
 
         String inputPath = namespace.getString("gpx_location");
         if (inputPath.equals("")) {
@@ -133,46 +239,59 @@ public class RailwayMatchCommand extends ConfiguredCommand<RailwayRoutingServerC
             localeStr = "";
         }
         final boolean withRoute = !localeStr.isEmpty();
-        Translation tr = new TranslationMap().doImport().getWithFallBack(Helper.getLocale(localeStr));
+        final Translation tr = new TranslationMap().doImport().getWithFallBack(Helper.getLocale(localeStr));
         LinkedList<Path> files = PatternMatching.getFileList(inputPath, lastSeparator);
-        XmlMapper xmlMapper = new XmlMapper();
-
-        for (Path f : files) {
-            try {
-                logger.info("Matching GPX track {} on the graph.", f.toString());
-                Gpx gpx = xmlMapper.readValue(f.toFile(), Gpx.class);
-                List<Observation> inputGPXEntries = gpx.trk.get(0).getEntries();
-                MatchResult mr = mapMatching.doWork(inputGPXEntries, false);
-                logger.debug("\tmatches: {}", mr.getEdgeMatches().size());
-                logger.debug("\tgpx length: {}", mr.getGpxEntriesLength(), mr.getMatchLength());
-
-                String outFile = f.toString() + ".res.gpx";
-                System.out.println("\texport results to:" + outFile);
-
-                PathWrapper pathWrapper = new PathWrapper();
-                new PathMerger().doWork(pathWrapper, Collections.singletonList(mr.getMergedPath()),
-                        hopper.getEncodingManager(), tr);
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
-                    // The GPX output is not exactly the same as upstream GraphHopper.
-                    // Upstream GraphHopper writes the timestamp of the first trackpoint of the input
-                    // file to the metadata section of the output file. We don't do this because this
-                    // is special to GPX. The same applies tothe name field of the metadata section.
-                    //TODO If elevation support is added, remove hardcoded false here.
-                    long time = System.currentTimeMillis();
-                    if (pathWrapper.hasErrors()) {
-                        logger.error("Failed to match {} to the graph.", f);
-                        System.exit(1);
-                    }
-                    String trackName = gpx.trk.get(0).name != null ? gpx.trk.get(0).name : "";
-                    writer.append(GpxFromInstructions.createGPX(pathWrapper.getInstructions(),
-                            trackName, time, hopper.hasElevation(), withRoute, true, false,
-                            Constants.VERSION, tr));
+
+        logger.info("Matching {} GPX files using {} thread(s)", files.size(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+        try {
+            for (Path f : files) {
+                completionService.submit(() -> matchFile(f, hopper, mapMatchings.get(), tr, withRoute,
+                        headingTolerance, statistics));
+            }
+            long start = System.nanoTime();
+            long lastProgress = start;
+            int done = 0;
+            int failed = 0;
+            for (int i = 0; i < files.size(); ++i) {
+                boolean success;
+                try {
+                    success = completionService.take().get();
+                } catch (ExecutionException e) {
+                    // matchFile catches everything but errors
+                    logger.error("Failed to match a GPX file: {}", e.getCause().toString());
+                    success = false;
                 }
-            } catch (IOException e) {
-                logger.error("Received IOException while reading GPX file {} from input stream: {}",
-                        f.toString(), e.toString());
+                ++done;
+                if (!success) {
+                    ++failed;
+                }
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NS) {
+                    lastProgress = now;
+                    logger.info("Progress: {} of {} files done, {} failed, {} files/s", done,
+                            files.size(), failed, String.format("%.1f", done * 1e9 / (now - start)));
+                }
+            }
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            logger.info("Matched {} of {} files in {} s ({} files/s), {} failed", done - failed,
+                    files.size(), String.format("%.1f", seconds), String.format("%.1f", done / seconds), failed);
+            if (headingTolerance > 0) {
+                // The transitions between the candidates of consecutive trackpoints are the routes the
+                // map matching has to compute.
+                long candidates = statistics.candidates.sum();
+                long pruned = statistics.pruned.sum();
+                long transitions = statistics.transitions.sum();
+                long keptTransitions = statistics.keptTransitions.sum();
+                logger.info("Heading filter ({} degrees) dropped {} of {} candidates ({}%), transitions reduced from {} to {} (-{}%)",
+                        headingTolerance, pruned, candidates, String.format("%.1f", 100.0 * pruned / Math.max(candidates, 1)),
+                        transitions, keptTransitions,
+                        String.format("%.1f", 100.0 * (transitions - keptTransitions) / Math.max(transitions, 1)));
             }
+        } finally {
+            executor.shutdownNow();
+            hopper.close();
         }
-        hopper.close();
     }
 }
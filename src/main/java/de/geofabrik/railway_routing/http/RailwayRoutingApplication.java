@@ -51,6 +51,7 @@ public final class RailwayRoutingApplication extends Application<RailwayRoutingS
         );
         bootstrap.addCommand(new RailwayImportCommand());
         bootstrap.addCommand(new RailwayMatchCommand());
+        bootstrap.addCommand(new RailwayUpdateCommand());
     }
 
     @Override
@@ -7,15 +7,21 @@
 package de.geofabrik.railway_routing.http;
 
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
+import javax.servlet.DispatcherType;
 
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -26,6 +32,7 @@ import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -41,7 +48,6 @@ import com.graphhopper.http.IllegalArgumentExceptionMapper;
 import com.graphhopper.http.MultiExceptionGPXMessageBodyWriter;
 import com.graphhopper.http.MultiExceptionMapper;
 import com.graphhopper.http.TypeGPXFilter;
-import com.graphhopper.http.health.GraphHopperHealthCheck;
 import com.graphhopper.jackson.GraphHopperModule;
 import com.graphhopper.resources.I18NResource;
 import com.graphhopper.resources.InfoResource;
@@ -51,16 +57,41 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.CmdArgs;
-import com.graphhopper.util.Parameters;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.details.PathDetail;
 
+import de.geofabrik.railway_routing.RailwayHopper;
 import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
 public class RailwayRoutingBundle implements ConfiguredBundle<RailwayRoutingServerConfiguration> {
 
+    /** name of the executor matching the tracks of batch requests */
+    static final String MATCH_EXECUTOR = "matchExecutor";
+    /** name of the number of threads of the executor matching the tracks of batch requests */
+    static final String MATCH_THREADS = "matchThreads";
+
+    /**
+     * Provides the graph of the current request. The graph can be replaced at runtime, therefore
+     * it must not be bound as a single instance.
+     */
+    static class GraphHopperFactory implements Factory<RailwayHopper> {
+
+        @Inject
+        RailwayRoutingManaged graphHopperManaged;
+
+        @Override
+        public RailwayHopper provide() {
+            return graphHopperManaged.getRequestGraphHopper();
+        }
+
+        @Override
+        public void dispose(RailwayHopper instance) {
+
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -185,21 +216,40 @@ public class RailwayRoutingBundle implements ConfiguredBundle<RailwayRoutingServ
 
     private void runRailwayRouting(CmdArgs configuration, List<FlagEncoderConfiguration> encoderConfig, Environment environment) {
         final RailwayRoutingManaged graphHopperManaged = new RailwayRoutingManaged(configuration, encoderConfig);
-        graphHopperManaged.getGraphHopper()
-            .setGraphHopperLocation(configuration.get("graph.location", "./graph-cache"))
-            .setNonChMaxWaypointDistance(Integer.parseInt(configuration.get(
-                    Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, "4000000")
-            ));
         environment.lifecycle().manage(graphHopperManaged);
+        environment.servlets().addFilter("graph-generation", new GraphGenerationFilter(graphHopperManaged))
+                .addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), false, "/*");
+        environment.admin().addTask(new SwapGraphTask(graphHopperManaged));
+        // Upstream's RouteResource cannot be split into phases. Its total duration is recorded.
+        environment.servlets().addFilter("route-timer",
+                new RequestTimerFilter(environment.metrics().timer(MetricRegistry.name("route", "requests"))))
+                .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), false, "/route");
+        final MatchMetrics matchMetrics = new MatchMetrics(environment.metrics());
+        environment.jersey().register(new SerializationTimer(matchMetrics.getSerialize()));
+        final int matchThreads = configuration.getInt("match.batch.threads", Runtime.getRuntime().availableProcessors());
+        if (matchThreads < 1) {
+            throw new IllegalArgumentException("match.batch.threads must be at least 1");
+        }
+        // The queue is bounded. If it is full, the thread of the HTTP request matches the track itself.
+        final ExecutorService matchExecutor = environment.lifecycle().executorService("map-matching-%d")
+                .minThreads(matchThreads)
+                .maxThreads(matchThreads)
+                .workQueue(new ArrayBlockingQueue<Runnable>(configuration.getInt("match.batch.queue_size", 4 * matchThreads)))
+                .rejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy())
+                .build();
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration).to(CmdArgs.class);
                 bind(graphHopperManaged).to(RailwayRoutingManaged.class);
-                bind(graphHopperManaged.getGraphHopper()).to(GraphHopper.class);
-                bind(graphHopperManaged.getGraphHopper()).to(GraphHopperAPI.class);
+                bindFactory(GraphHopperFactory.class).to(RailwayHopper.class).to(GraphHopper.class)
+                        .to(GraphHopperAPI.class);
 
                 bind(false).to(Boolean.class).named("hasElevation");
+                bind(matchExecutor).to(ExecutorService.class).named(MATCH_EXECUTOR);
+                bind(matchThreads).to(Integer.class).named(MATCH_THREADS);
+                bind(environment.getObjectMapper()).to(ObjectMapper.class);
+                bind(matchMetrics).to(MatchMetrics.class);
                 bindFactory(LocationIndexFactory.class).to(LocationIndex.class);
                 bindFactory(TranslationMapFactory.class).to(TranslationMap.class);
                 bindFactory(EncodingManagerFactory.class).to(EncodingManager.class);
@@ -210,6 +260,7 @@ public class RailwayRoutingBundle implements ConfiguredBundle<RailwayRoutingServ
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
         environment.jersey().register(MatchResource.class);
+        environment.jersey().register(BatchMatchResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
 
@@ -217,7 +268,7 @@ public class RailwayRoutingBundle implements ConfiguredBundle<RailwayRoutingServ
         pathDetailModule.addSerializer(PathDetail.class, new PathDetailSerializer());
         pathDetailModule.addDeserializer(PathDetail.class, new PathDetailDeserializer());
         environment.getObjectMapper().registerModule(pathDetailModule);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged.getGraphHopper()));
+        environment.healthChecks().register("graphhopper", new GraphHealthCheck(graphHopperManaged));
     }
 
     public static class PathDetailSerializer extends JsonSerializer<PathDetail> {
@@ -7,45 +7,192 @@
 package de.geofabrik.railway_routing.http;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 
-import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Parameters;
+
 import de.geofabrik.railway_routing.RailwayHopper;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Owner of the graph used by the web service.
+ *
+ * The graph can be replaced while the server is running. Requests use the graph which was
+ * current when they started (see {@link #acquire()}) until they have finished. A replaced graph
+ * is closed after its last request has finished.
+ */
 public class RailwayRoutingManaged implements Managed {
 
+    /**
+     * A loaded graph and the number of requests using it.
+     */
+    public static class Generation {
+        private final RailwayHopper graphHopper;
+        private final AtomicInteger users = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired = false;
+
+        Generation(RailwayHopper graphHopper) {
+            this.graphHopper = graphHopper;
+        }
+
+        public RailwayHopper getGraphHopper() {
+            return graphHopper;
+        }
+
+        private void closeIfUnused() {
+            if (retired && users.get() == 0 && closed.compareAndSet(false, true)) {
+                graphHopper.close();
+            }
+        }
+    }
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private final RailwayHopper graphHopper;
-    
+    private final CmdArgs configuration;
+    private final List<FlagEncoderConfiguration> encoderConfig;
+    private final AtomicReference<Generation> current;
+    /** generation acquired by the request handled by the current thread */
+    private final ThreadLocal<Generation> requestGeneration = new ThreadLocal<Generation>();
+
     @Inject
     public RailwayRoutingManaged(CmdArgs configuration, List<FlagEncoderConfiguration> encoderConfig) {
-        graphHopper = (RailwayHopper) new RailwayHopper(configuration, encoderConfig).forServer();
-        graphHopper.setGraphHopperLocation(configuration.get("graph.location", "./graph-cache"));
+        this.configuration = configuration;
+        this.encoderConfig = encoderConfig;
+        current = new AtomicReference<Generation>(new Generation(createGraphHopper(
+                configuration.get("graph.location", "./graph-cache"))));
 //        graphHopper.init(configuration);
     }
-    
-    @Override
-    public void start() throws Exception {
-        graphHopper.importOrLoad();
+
+    private RailwayHopper createGraphHopper(String location) {
+        RailwayHopper graphHopper = (RailwayHopper) new RailwayHopper(configuration, encoderConfig).forServer();
+        graphHopper.setGraphHopperLocation(location);
+        graphHopper.setNonChMaxWaypointDistance(configuration.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE,
+                4000000));
+        return graphHopper;
+    }
+
+    private void logGraph(RailwayHopper graphHopper) {
         logger.info("loaded graph at:" + graphHopper.getGraphHopperLocation()
                 + ", data_reader_file:" + graphHopper.getDataReaderFile()
                 + ", flag_encoders:" + graphHopper.getEncodingManager()
                 + ", " + graphHopper.getGraphHopperStorage().toDetailsString());
     }
 
+    @Override
+    public void start() throws Exception {
+        RailwayHopper graphHopper = current.get().getGraphHopper();
+        graphHopper.importOrLoad();
+        logGraph(graphHopper);
+    }
+
+    /**
+     * Get the current graph. Requests should use {@link #getRequestGraphHopper()} instead.
+     */
     RailwayHopper getGraphHopper() {
-        return graphHopper;
+        return current.get().getGraphHopper();
+    }
+
+    /**
+     * Get the graph of the request handled by this thread or the current graph if this thread
+     * does not handle a request.
+     */
+    RailwayHopper getRequestGraphHopper() {
+        Generation generation = requestGeneration.get();
+        if (generation != null) {
+            return generation.getGraphHopper();
+        }
+        return getGraphHopper();
     }
 
+    /**
+     * Mark the current graph as used by the request handled by this thread. Every call has to be
+     * followed by a call of {@link #release(Generation)}.
+     */
+    Generation acquire() {
+        while (true) {
+            Generation generation = current.get();
+            generation.users.incrementAndGet();
+            // The graph might have been replaced before it was marked as used.
+            if (current.get() == generation) {
+                requestGeneration.set(generation);
+                return generation;
+            }
+            generation.users.decrementAndGet();
+            generation.closeIfUnused();
+        }
+    }
+
+    void release(Generation generation) {
+        requestGeneration.remove();
+        generation.users.decrementAndGet();
+        generation.closeIfUnused();
+    }
+
+    /**
+     * Read every node and edge once. If the graph is memory mapped, this loads it into the page
+     * cache before the first request uses it.
+     */
+    private static void warmUp(RailwayHopper graphHopper) {
+        GraphHopperStorage ghs = graphHopper.getGraphHopperStorage();
+        NodeAccess nodeAccess = ghs.getNodeAccess();
+        double sum = 0;
+        for (int node = 0; node < ghs.getNodes(); ++node) {
+            sum += nodeAccess.getLat(node);
+        }
+        AllEdgesIterator iter = ghs.getAllEdges();
+        while (iter.next()) {
+            sum += iter.getDistance() + iter.fetchWayGeometry(0).getSize();
+        }
+        if (Double.isNaN(sum)) {
+            throw new IllegalStateException("The graph at " + graphHopper.getGraphHopperLocation() + " is broken.");
+        }
+    }
+
+    /**
+     * Load the graph in a directory and replace the current graph by it. The graph has to be
+     * imported with the same profiles. Requests which have started before use the replaced graph
+     * until they have finished.
+     *
+     * @throws IllegalArgumentException if there is no graph in the directory
+     */
+    synchronized void swap(String location) {
+        RailwayHopper graphHopper = createGraphHopper(location);
+        try {
+            if (!graphHopper.load(location)) {
+                throw new IllegalArgumentException("There is no graph at " + location + ".");
+            }
+            long start = System.nanoTime();
+            warmUp(graphHopper);
+            logger.info("warmed up graph at " + location + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (RuntimeException e) {
+            graphHopper.close();
+            throw e;
+        }
+        logGraph(graphHopper);
+        Generation old = current.getAndSet(new Generation(graphHopper));
+        old.retired = true;
+        logger.info("replaced graph at " + old.getGraphHopper().getGraphHopperLocation() + ", "
+                + old.users.get() + " requests are still using it");
+        old.closeIfUnused();
+    }
 
     @Override
     public void stop() throws Exception {
-        graphHopper.close();
+        Generation generation = current.get();
+        generation.retired = true;
+        if (generation.closed.compareAndSet(false, true)) {
+            generation.getGraphHopper().close();
+        }
     }
 
 }
@@ -0,0 +1,85 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.graphhopper.util.CmdArgs;
+
+import de.geofabrik.railway_routing.OsmChangeUpdater;
+import de.geofabrik.railway_routing.RailwayHopper;
+import de.geofabrik.railway_routing.util.OsmChangeReader;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+public class RailwayUpdateCommand extends ConfiguredCommand<RailwayRoutingServerConfiguration> {
+    private static final Logger logger = LogManager.getLogger(RailwayUpdateCommand.class);
+
+    public RailwayUpdateCommand() {
+        super("update", "applies OSM change files to an imported graph");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--change-file")
+                .dest("change_files")
+                .type(String.class)
+                .nargs("+")
+                .required(true)
+                .help("OSM change file(s) (.osc or .osc.gz) in the order they should be applied");
+    }
+
+    @Override
+    protected void run(Bootstrap<RailwayRoutingServerConfiguration> bootstrap, Namespace namespace,
+            RailwayRoutingServerConfiguration configuration) throws Exception {
+        configuration.getGraphHopperConfiguration().merge(CmdArgs.readFromSystemProperties());
+        CmdArgs commandline_args = configuration.getGraphHopperConfiguration();
+        RailwayHopper hopper = new RailwayHopper(commandline_args, configuration.getFlagEncoderConfigurations());
+        hopper.setGraphHopperLocation(commandline_args.get("graph.location", "./graph-cache"));
+        logger.info("Loading graph from cache at {}", hopper.getGraphHopperLocation());
+        if (!hopper.load(hopper.getGraphHopperLocation())) {
+            throw new IllegalStateException("There is no graph at " + hopper.getGraphHopperLocation()
+                    + ". Please import it first.");
+        }
+        try {
+            OsmChangeUpdater updater = new OsmChangeUpdater(hopper);
+            // Later versions of an object replace earlier ones, therefore all files are read first.
+            OsmChangeReader.OsmChange change = new OsmChangeReader.OsmChange();
+            List<String> files = namespace.getList("change_files");
+            for (String file : files) {
+                Path path = Paths.get(file);
+                logger.info("Reading OSM change file {}", path);
+                try (InputStream in = open(path)) {
+                    OsmChangeReader.read(in, change);
+                }
+            }
+            logger.info("Applying changes of {} nodes and {} ways", change.getNodes().size(), change.getWays().size());
+            updater.apply(change);
+            if (updater.getUnsupportedChanges() > 0) {
+                logger.warn("{} changes could not be applied incrementally. Import the graph again to apply them.",
+                        updater.getUnsupportedChanges());
+            }
+        } finally {
+            hopper.close();
+        }
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path));
+        if (path.toString().endsWith(".gz")) {
+            return new GZIPInputStream(in);
+        }
+        return in;
+    }
+}
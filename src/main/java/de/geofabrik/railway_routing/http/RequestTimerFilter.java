@@ -0,0 +1,43 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.codahale.metrics.Timer;
+
+/**
+ * Measure the total duration of requests including writing the response.
+ */
+public class RequestTimerFilter implements Filter {
+
+    private final Timer timer;
+
+    public RequestTimerFilter(Timer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        Timer.Context time = timer.time();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            time.stop();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
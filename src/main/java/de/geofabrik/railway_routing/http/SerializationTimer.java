@@ -0,0 +1,33 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.codahale.metrics.Timer;
+
+/**
+ * Measure how long writing the response entity takes. Jersey writes the entity after the resource
+ * method has returned, therefore the resource cannot measure it itself.
+ */
+@TimedSerialization
+public class SerializationTimer implements WriterInterceptor {
+
+    private final Timer timer;
+
+    public SerializationTimer(Timer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        Timer.Context time = timer.time();
+        try {
+            context.proceed();
+        } finally {
+            time.stop();
+        }
+    }
+}
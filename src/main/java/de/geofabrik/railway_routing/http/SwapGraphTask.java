@@ -0,0 +1,33 @@
+package de.geofabrik.railway_routing.http;
+
+import java.io.PrintWriter;
+
+import com.google.common.collect.ImmutableMultimap;
+
+import io.dropwizard.servlets.tasks.Task;
+
+/**
+ * Admin task loading the graph in another directory and replacing the graph of the web service
+ * by it without a restart.
+ *
+ * <code>curl -X POST 'http://localhost:8990/tasks/swap-graph?location=/path/to/graph-cache'</code>
+ */
+public class SwapGraphTask extends Task {
+
+    private final RailwayRoutingManaged graphHopperManaged;
+
+    public SwapGraphTask(RailwayRoutingManaged graphHopperManaged) {
+        super("swap-graph");
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (parameters.get("location").size() != 1) {
+            throw new IllegalArgumentException("Please provide exactly one location parameter.");
+        }
+        String location = parameters.get("location").iterator().next();
+        graphHopperManaged.swap(location);
+        output.println("Loaded graph at " + location + ".");
+    }
+}
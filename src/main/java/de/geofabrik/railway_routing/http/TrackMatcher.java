@@ -0,0 +1,356 @@
+package de.geofabrik.railway_routing.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Timer;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.MultiException;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.PathMerger;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.Translation;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.railway_routing.HeadingFilter;
+import de.geofabrik.railway_routing.RailwayHopper;
+
+import static com.graphhopper.util.Parameters.Routing.*;
+
+/**
+ * Match one track to the graph and fill gaps using normal routing.
+ *
+ * Instances are cheap and not thread-safe. Use one instance per track or per thread. The graph
+ * is shared by all instances.
+ */
+public class TrackMatcher {
+    private static final Logger logger = LoggerFactory.getLogger(TrackMatcher.class);
+
+    private final RailwayHopper hopper;
+    private final EncodingManager encodingManager;
+    private String vehicle = "car";
+    private int maxVisitedNodes = 3000;
+    private double gpsAccuracy = 40;
+    /** maximum difference between the heading of an observation and its candidate edges in degrees, 0 to disable */
+    private double headingTolerance = 0;
+    private boolean fillGaps = false;
+    private boolean instructions = true;
+    private boolean calcPoints = true;
+    private String locale = "en";
+    private Translation translation;
+    private List<String> pathDetails = Collections.emptyList();
+    private MultivaluedMap<String, String> queryParameters = new MultivaluedHashMap<String, String>();
+    /** metrics of the phases, null if they are not recorded */
+    private MatchMetrics metrics = null;
+
+    /**
+     * Result of the matching of a track.
+     */
+    public static class Result {
+        private final PathWrapper pathWrapper;
+        private final List<MatchResult> matchResults;
+        private final int inputPoints;
+        private final float took;
+
+        public Result(PathWrapper pathWrapper, List<MatchResult> matchResults, int inputPoints, float took) {
+            this.pathWrapper = pathWrapper;
+            this.matchResults = matchResults;
+            this.inputPoints = inputPoints;
+            this.took = took;
+        }
+
+        /**
+         * Merged path of all matched sections and the routes filling the gaps between them.
+         */
+        public PathWrapper getPathWrapper() {
+            return pathWrapper;
+        }
+
+        /**
+         * Results of the matched sections, gaps are not included.
+         */
+        public List<MatchResult> getMatchResults() {
+            return matchResults;
+        }
+
+        public int getInputPoints() {
+            return inputPoints;
+        }
+
+        /**
+         * Duration of the matching in seconds.
+         */
+        public float getTook() {
+            return took;
+        }
+    }
+
+    public TrackMatcher(RailwayHopper hopper, EncodingManager encodingManager) {
+        this.hopper = hopper;
+        this.encodingManager = encodingManager;
+    }
+
+    public TrackMatcher setVehicle(String vehicle) {
+        this.vehicle = vehicle;
+        return this;
+    }
+
+    public TrackMatcher setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    public TrackMatcher setGpsAccuracy(double gpsAccuracy) {
+        this.gpsAccuracy = gpsAccuracy;
+        return this;
+    }
+
+    /**
+     * Drop map matching candidates whose edge differs from the heading of the observation by
+     * more than the given angle, see {@link HeadingFilter}.
+     *
+     * @param headingTolerance angle in degrees, 0 disables the filter
+     */
+    public TrackMatcher setHeadingTolerance(double headingTolerance) {
+        if (headingTolerance < 0) {
+            throw new IllegalArgumentException("The heading tolerance must not be negative.");
+        }
+        this.headingTolerance = headingTolerance;
+        return this;
+    }
+
+    /**
+     * Fill gaps between the matched sections using normal routing.
+     */
+    public TrackMatcher setFillGaps(boolean fillGaps) {
+        this.fillGaps = fillGaps;
+        return this;
+    }
+
+    public TrackMatcher setInstructions(boolean instructions) {
+        this.instructions = instructions;
+        return this;
+    }
+
+    public TrackMatcher setCalcPoints(boolean calcPoints) {
+        this.calcPoints = calcPoints;
+        return this;
+    }
+
+    public TrackMatcher setLocale(String locale, Translation translation) {
+        this.locale = locale;
+        this.translation = translation;
+        return this;
+    }
+
+    public TrackMatcher setPathDetails(List<String> pathDetails) {
+        this.pathDetails = pathDetails;
+        return this;
+    }
+
+    /**
+     * Query parameters of the HTTP request. They are passed as hints to the routing requests
+     * filling gaps.
+     */
+    public TrackMatcher setQueryParameters(MultivaluedMap<String, String> queryParameters) {
+        this.queryParameters = queryParameters;
+        return this;
+    }
+
+    /**
+     * Record the duration of the phases of the matching.
+     */
+    public TrackMatcher setMetrics(MatchMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    private Timer.Context time(Function<MatchMetrics, Timer> timer) {
+        return metrics == null ? null : timer.apply(metrics).time();
+    }
+
+    private static void stop(Timer.Context context) {
+        if (context != null) {
+            context.stop();
+        }
+    }
+
+    private MapMatching createMapMatching() {
+        // MapMatching keeps the progress of the current track, therefore it is created per track.
+        MapMatching mapMatching = new MapMatching(hopper, hopper.getMatchingOptions(vehicle, maxVisitedNodes));
+        mapMatching.setMeasurementErrorSigma(gpsAccuracy);
+        return mapMatching;
+    }
+
+    /**
+     * Route between two points to fill a gap in the map matching.
+     */
+    private Path fillGap(GHPoint from, GHPoint to) {
+        List<GHPoint> points = new ArrayList<GHPoint>(2);
+        points.add(from);
+        points.add(to);
+        GHRequest request = new GHRequest(points);
+        MatchResource.initHints(request.getHints(), queryParameters);
+        request.setVehicle(encodingManager.getEncoder(vehicle).toString()).
+            setLocale(locale).
+            setPathDetails(pathDetails).
+            getHints().
+            put(CALC_POINTS, calcPoints).
+            put(INSTRUCTIONS, instructions);
+        GHResponse response = new GHResponse();
+        Timer.Context timer = time(MatchMetrics::getGapFill);
+        List<Path> paths;
+        try {
+            paths = hopper.calcPaths(request, response);
+        } finally {
+            stop(timer);
+        }
+        if (metrics != null) {
+            metrics.getGapFills().inc();
+            metrics.getGapFillVisitedNodes().update(response.getHints().getLong("visited_nodes.sum", 0));
+        }
+        if (response.hasErrors()) {
+            logger.error("Routing request for " + points.toString() + " to fill a gap in the map matching failed: " + response.getErrors().toString());
+            throw new MultiException(response.getErrors());
+        }
+        return paths.get(0);
+    }
+
+    /**
+     * Convert the points of a track to the observations needed by the map matching.
+     */
+    public static List<Observation> toObservations(PointList points) {
+        List<Observation> observations = new ArrayList<Observation>(points.getSize());
+        for (int i = 0; i < points.getSize(); ++i) {
+            observations.add(new Observation(new GHPoint(points.getLat(i), points.getLon(i))));
+        }
+        return observations;
+    }
+
+    /**
+     * Convert observations back to a point list.
+     */
+    static PointList toPointList(List<Observation> observations) {
+        PointList points = new PointList(observations.size(), false);
+        for (Observation o : observations) {
+            points.add(o.getPoint().getLat(), o.getPoint().getLon());
+        }
+        return points;
+    }
+
+    /**
+     * Match a track.
+     *
+     * @see #match(List, double[])
+     */
+    public Result match(PointList points) {
+        return match(toObservations(points), null);
+    }
+
+    /**
+     * Match a track.
+     *
+     * @see #match(List, double[])
+     */
+    public Result match(PointList points, double[] courses) {
+        return match(toObservations(points), courses);
+    }
+
+    /**
+     * Match a track.
+     *
+     * @see #match(List, double[])
+     */
+    public Result match(List<Observation> inputGPXEntries) {
+        return match(inputGPXEntries, null);
+    }
+
+    /**
+     * Match a track.
+     *
+     * @param courses course of every observation in degrees clockwise from north (NaN if
+     * unknown) used by the heading filter, may be null
+     * @throws IllegalArgumentException if the track has less than two points
+     * @throws MultiException if a gap could not be filled or the paths could not be merged
+     */
+    public Result match(List<Observation> inputGPXEntries, double[] courses) {
+        StopWatch sw = new StopWatch().start();
+        if (inputGPXEntries.size() < 2) {
+            throw new IllegalArgumentException("input contains less than two points");
+        }
+        if (metrics != null) {
+            metrics.getTrackPoints().update(inputGPXEntries.size());
+        }
+        MapMatching mapMatching = createMapMatching();
+        PathMerger pathMerger = new PathMerger().
+                setEnableInstructions(instructions).
+                setPathDetailsBuilders(hopper.getPathDetailsBuilderFactory(), pathDetails);
+        PathWrapper pathWrapper = new PathWrapper();
+        List<MatchResult> matchResultsList = new ArrayList<MatchResult>(2);
+        List<Path> mergedPaths = new ArrayList<Path>(3);
+        HeadingFilter headingFilter = null;
+        if (headingTolerance > 0) {
+            // The filter is used by the candidate lookups of this thread only.
+            headingFilter = new HeadingFilter(toPointList(inputGPXEntries), courses, headingTolerance);
+            hopper.getRailLocationIndex().setHeadingFilter(headingFilter);
+        }
+        try {
+            do {
+                // Fill gap with normal routing if matching in the last iteration of this loop ended at a gap.
+                // mapMatching.getSucessfullyMatchedPoints() returns -1 if no point has been matched yet (e.g. gap between first and second point).
+                if (mapMatching.matchingAttempted() && mapMatching.getSucessfullyMatchedPoints() < inputGPXEntries.size() - 1) {
+                    int start_point = Math.max(0, mapMatching.getSucessfullyMatchedPoints() - 1);
+                    mergedPaths.add(fillGap((GHPoint) inputGPXEntries.get(start_point).getPoint(),
+                            (GHPoint) inputGPXEntries.get(start_point + 1).getPoint()));
+                }
+                Timer.Context timer = time(MatchMetrics::getMatching);
+                MatchResult mr;
+                try {
+                    mr = mapMatching.doWork(inputGPXEntries, !fillGaps);
+                } finally {
+                    stop(timer);
+                }
+                mergedPaths.add(mr.getMergedPath());
+                matchResultsList.add(mr);
+            } while (mapMatching.hasPointsToBeMatched());
+        } finally {
+            if (headingFilter != null) {
+                hopper.getRailLocationIndex().setHeadingFilter(null);
+            }
+        }
+        if (metrics != null && headingFilter != null) {
+            metrics.getCandidates().inc(headingFilter.getCandidates());
+            metrics.getPrunedCandidates().inc(headingFilter.getPruned());
+        }
+
+        // GraphHopper thinks an empty path is an invalid path, and further that an invalid path is still a path but
+        // marked with a non-empty list of Exception objects. I disagree, so I clear it.
+        pathWrapper.getErrors().clear();
+        Timer.Context timer = time(MatchMetrics::getMerge);
+        try {
+            pathMerger.doWork(pathWrapper, mergedPaths, encodingManager, translation);
+        } finally {
+            stop(timer);
+        }
+        if (pathWrapper.hasErrors()) {
+            logger.error("Error merging paths: " + pathWrapper.getErrors().toString());
+            throw new MultiException(pathWrapper.getErrors());
+        }
+        return new Result(pathWrapper, matchResultsList, inputGPXEntries.size(), sw.stop().getSeconds());
+    }
+}
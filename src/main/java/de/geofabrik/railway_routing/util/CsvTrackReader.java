@@ -0,0 +1,148 @@
+package de.geofabrik.railway_routing.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.graphhopper.util.PointList;
+
+/**
+ * Read a track from a CSV file with the columns <code>latitude</code> and <code>longitude</code>.
+ *
+ * The file is read line by line and the coordinates are written straight into the primitive
+ * arrays of a PointList. The header is matched case-insensitively, other columns are ignored.
+ * Fields may be enclosed in quote characters. Empty lines are skipped.
+ */
+public class CsvTrackReader {
+
+    private final char separator;
+    private final char quoteChar;
+
+    public CsvTrackReader(char separator, char quoteChar) {
+        this.separator = separator;
+        this.quoteChar = quoteChar;
+    }
+
+    /**
+     * Get the end of the field starting at start. Separators enclosed in quote characters are
+     * part of the field.
+     */
+    private int fieldEnd(String line, int start) {
+        boolean quoted = false;
+        for (int i = start; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (c == quoteChar) {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+    /**
+     * Remove the quote characters around the field line[start, end).
+     *
+     * @return start and end of the content of the field encoded as long
+     */
+    private long unquote(String line, int start, int end) {
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            ++start;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            --end;
+        }
+        if (end - start >= 2 && line.charAt(start) == quoteChar && line.charAt(end - 1) == quoteChar) {
+            ++start;
+            --end;
+        }
+        return ((long) start << 32) | end;
+    }
+
+    private String fieldName(String line, int start, int end) {
+        long range = unquote(line, start, end);
+        return line.substring((int) (range >>> 32), (int) range).trim();
+    }
+
+    private double parseCoordinate(String line, int start, int end, int lineNumber, String column) {
+        long range = unquote(line, start, end);
+        int from = (int) (range >>> 32);
+        int to = (int) range;
+        double value = MultiValueChecker.parseDouble(line, from, to);
+        if (Double.isNaN(value)) {
+            // exponents and other rare notations
+            try {
+                value = Double.parseDouble(line.substring(from, to).trim());
+            } catch (NumberFormatException e) {
+                value = Double.NaN;
+            }
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Line " + lineNumber + " of the CSV input has an invalid " + column + ".");
+        }
+        return value;
+    }
+
+    /**
+     * Read all points of the CSV input.
+     *
+     * @throws IllegalArgumentException if the header lacks a coordinate column or a coordinate is
+     * malformed
+     */
+    public PointList read(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IllegalArgumentException("The CSV input is empty.");
+        }
+        // skip byte order mark
+        if (line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        int latColumn = -1;
+        int lonColumn = -1;
+        int column = 0;
+        for (int start = 0; start <= line.length(); ++column) {
+            int end = fieldEnd(line, start);
+            String name = fieldName(line, start, end);
+            if (name.equalsIgnoreCase("latitude")) {
+                latColumn = column;
+            } else if (name.equalsIgnoreCase("longitude")) {
+                lonColumn = column;
+            }
+            start = end + 1;
+        }
+        if (latColumn == -1 || lonColumn == -1) {
+            throw new IllegalArgumentException("The header of the CSV input has to contain the columns latitude and longitude.");
+        }
+        int lastColumn = Math.max(latColumn, lonColumn);
+
+        PointList points = new PointList(1000, false);
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            ++lineNumber;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+            column = 0;
+            for (int start = 0; start <= line.length() && column <= lastColumn; ++column) {
+                int end = fieldEnd(line, start);
+                if (column == latColumn) {
+                    lat = parseCoordinate(line, start, end, lineNumber, "latitude");
+                } else if (column == lonColumn) {
+                    lon = parseCoordinate(line, start, end, lineNumber, "longitude");
+                }
+                start = end + 1;
+            }
+            if (column <= lastColumn) {
+                throw new IllegalArgumentException("Line " + lineNumber + " of the CSV input has too few columns.");
+            }
+            points.add(lat, lon);
+        }
+        return points;
+    }
+}
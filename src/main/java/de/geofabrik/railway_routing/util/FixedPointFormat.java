@@ -0,0 +1,104 @@
+package de.geofabrik.railway_routing.util;
+
+/**
+ * Format numbers as ASCII into a byte buffer without creating strings.
+ *
+ * Decimal numbers are rounded to a fixed number of fractional digits. Trailing zeros are
+ * removed but at least one fractional digit is kept, i.e. 13.4 is written as "13.4" and 13 as
+ * "13.0" like Double.toString does.
+ */
+public class FixedPointFormat {
+
+    /** maximum number of fractional digits */
+    public static final int MAX_DECIMALS = 9;
+
+    /** maximum number of bytes written by {@link #formatDouble(double, int, byte[], int)} */
+    public static final int MAX_LENGTH = 32;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+
+    /** scaled values above this limit fall back to Double.toString */
+    private static final double MAX_SCALED = 1e15;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+        }
+    }
+
+    private static int writeAscii(String value, byte[] buffer, int pos) {
+        for (int i = 0; i < value.length(); ++i) {
+            buffer[pos++] = (byte) value.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * Write a non-negative number with the given number of digits, padded with leading zeros.
+     */
+    private static int writeDigits(long value, int digits, byte[] buffer, int pos) {
+        for (int i = pos + digits - 1; i >= pos; --i) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static int countDigits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            ++digits;
+        }
+        return digits;
+    }
+
+    /**
+     * Write a long.
+     *
+     * @return position after the last written byte
+     */
+    public static int formatLong(long value, byte[] buffer, int pos) {
+        if (value == Long.MIN_VALUE) {
+            return writeAscii(Long.toString(value), buffer, pos);
+        }
+        if (value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        return writeDigits(value, countDigits(value), buffer, pos);
+    }
+
+    /**
+     * Write a double rounded to the given number of fractional digits. NaN, infinite and very
+     * large values are written like Double.toString.
+     *
+     * @param decimals number of fractional digits, 1 to {@link #MAX_DECIMALS}
+     * @return position after the last written byte
+     */
+    public static int formatDouble(double value, int decimals, byte[] buffer, int pos) {
+        if (decimals < 1 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("The number of decimals has to be between 1 and " + MAX_DECIMALS);
+        }
+        double scaledValue = Math.abs(value) * POWERS_OF_TEN[decimals];
+        if (Double.isNaN(scaledValue) || scaledValue >= MAX_SCALED) {
+            return writeAscii(Double.toString(value), buffer, pos);
+        }
+        long scaled = Math.round(scaledValue);
+        if (value < 0 && scaled != 0) {
+            buffer[pos++] = '-';
+        }
+        long integerPart = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+        pos = writeDigits(integerPart, countDigits(integerPart), buffer, pos);
+        buffer[pos++] = '.';
+        // remove trailing zeros but keep one digit
+        int digits = decimals;
+        while (digits > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            --digits;
+        }
+        return writeDigits(fraction, digits, buffer, pos);
+    }
+}
@@ -0,0 +1,180 @@
+package de.geofabrik.railway_routing.util;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.graphhopper.util.PointList;
+
+/**
+ * Read the tracks of a GPX document.
+ *
+ * The document is read by a StAX parser and the coordinates of the track points are written
+ * straight into the primitive arrays of a PointList. Everything except the name of a track, the
+ * coordinates of its track points and their course (time, elevation, waypoints, routes,
+ * extensions) is skipped without building an object tree. All segments of a track are
+ * concatenated.
+ */
+public class GpxTrackReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * A track of a GPX document.
+     */
+    public static class Track {
+        private final String name;
+        private final PointList points;
+        private final double[] courses;
+
+        public Track(String name, PointList points) {
+            this(name, points, null);
+        }
+
+        public Track(String name, PointList points, double[] courses) {
+            this.name = name;
+            this.points = points;
+            this.courses = courses;
+        }
+
+        /**
+         * Get the name of the track or null if it has none.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public PointList getPoints() {
+            return points;
+        }
+
+        /**
+         * Get the course of every track point in degrees clockwise from north, NaN for points
+         * without a valid course. Returns null if no track point has a course.
+         */
+        public double[] getCourses() {
+            return courses;
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // GPX does not need DTDs, do not resolve external entities of untrusted input
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Parse a number, returns NaN if it is invalid.
+     */
+    private static double parseNumber(String value) {
+        double result = MultiValueChecker.parseDouble(value, 0, value.length());
+        if (Double.isNaN(result)) {
+            // exponents and other rare notations
+            try {
+                result = Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                result = Double.NaN;
+            }
+        }
+        return Double.isInfinite(result) ? Double.NaN : result;
+    }
+
+    private static double parseCoordinate(XMLStreamReader reader, String attribute) {
+        String value = reader.getAttributeValue(null, attribute);
+        if (value == null) {
+            throw new IllegalArgumentException("Track point at line " + reader.getLocation().getLineNumber()
+                    + " has no " + attribute + " attribute.");
+        }
+        double result = parseNumber(value);
+        if (Double.isNaN(result)) {
+            throw new IllegalArgumentException("Track point at line " + reader.getLocation().getLineNumber()
+                    + " has an invalid " + attribute + " attribute.");
+        }
+        return result;
+    }
+
+    /**
+     * Read all tracks of a GPX document.
+     *
+     * The course of a track point is read from its <code>course</code> element (GPX 1.0). Invalid
+     * courses are ignored because the course is optional.
+     *
+     * @throws IllegalArgumentException if the document is not well-formed or a track point has
+     * invalid coordinates
+     */
+    public static List<Track> read(InputStream inputStream) {
+        List<Track> tracks = new ArrayList<Track>();
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(inputStream);
+            // depth of the current element, only elements at the expected depth are evaluated
+            int depth = 0;
+            int trackDepth = -1;
+            String name = null;
+            PointList points = null;
+            DoubleArrayList courses = null;
+            boolean hasCourses = false;
+            boolean inTrackPoint = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    ++depth;
+                    String element = reader.getLocalName();
+                    if (trackDepth == -1) {
+                        if (element.equals("trk")) {
+                            trackDepth = depth;
+                            name = null;
+                            points = new PointList(1000, false);
+                            courses = new DoubleArrayList(1000);
+                            hasCourses = false;
+                        }
+                    } else if (element.equals("trkpt") && depth == trackDepth + 2) {
+                        points.add(parseCoordinate(reader, "lat"), parseCoordinate(reader, "lon"));
+                        courses.add(Double.NaN);
+                        inTrackPoint = true;
+                    } else if (element.equals("course") && inTrackPoint && depth == trackDepth + 3) {
+                        double course = parseNumber(reader.getElementText());
+                        // getElementText moves to the end element
+                        --depth;
+                        if (!Double.isNaN(course)) {
+                            courses.set(courses.size() - 1, course);
+                            hasCourses = true;
+                        }
+                    } else if (element.equals("name") && depth == trackDepth + 1) {
+                        name = reader.getElementText();
+                        // getElementText moves to the end element
+                        --depth;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == trackDepth + 2) {
+                        inTrackPoint = false;
+                    } else if (depth == trackDepth) {
+                        tracks.add(new Track(name, points, hasCourses ? courses.toArray() : null));
+                        trackDepth = -1;
+                    }
+                    --depth;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Failed to parse GPX data stream: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // nothing we can do
+                }
+            }
+        }
+        return tracks;
+    }
+}
@@ -1,77 +1,361 @@
 package de.geofabrik.railway_routing.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntSet;
 
 /**
  * This class provides some methods to check if a OSM tag value contains a specific value. The
  * value might be a list separated by semicolons.
- *  
+ *
+ * The tag value is scanned in place. No substrings are created and malformed numbers do not
+ * throw exceptions. Malformed tokens and whitespace around the tokens are skipped.
+ *
  * @author Michael Reichert
  */
 public class MultiValueChecker {
 
+    private static final char SEPARATOR = ';';
+
+    /** returned by {@link #parseInt(String, int, int)} if the token is not a valid integer */
+    static final long INVALID_INT = Long.MIN_VALUE;
+
+    /** largest power of ten which can be represented exactly as a double */
+    private static final int MAX_EXACT_POWER_OF_TEN = 22;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Get the end of the token starting at start.
+     */
+    private static int tokenEnd(String value, int start) {
+        int end = value.indexOf(SEPARATOR, start);
+        return end == -1 ? value.length() : end;
+    }
+
+    /**
+     * Parse the integer in value[start, end).
+     *
+     * @return the value or {@link #INVALID_INT} if the token is empty, malformed or does not fit
+     * into an int
+     */
+    static long parseInt(String value, int start, int end) {
+        while (start < end && isWhitespace(value.charAt(start))) {
+            ++start;
+        }
+        while (end > start && isWhitespace(value.charAt(end - 1))) {
+            --end;
+        }
+        if (start == end) {
+            return INVALID_INT;
+        }
+        boolean negative = false;
+        char first = value.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            ++start;
+            if (start == end) {
+                return INVALID_INT;
+            }
+        }
+        long result = 0;
+        for (int i = start; i < end; ++i) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID_INT;
+            }
+            result = 10 * result + (c - '0');
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                return INVALID_INT;
+            }
+        }
+        if (negative) {
+            return -result;
+        }
+        return result > Integer.MAX_VALUE ? INVALID_INT : result;
+    }
+
+    /**
+     * Parse the decimal number in value[start, end).
+     *
+     * The result is identical to Double.parseDouble for plain decimal numbers like "16.7".
+     * Exponents, hexadecimal numbers, NaN and Infinity are treated as malformed.
+     *
+     * @return the value or NaN if the token is empty or malformed
+     */
+    static double parseDouble(String value, int start, int end) {
+        while (start < end && isWhitespace(value.charAt(start))) {
+            ++start;
+        }
+        while (end > start && isWhitespace(value.charAt(end - 1))) {
+            --end;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+        boolean negative = false;
+        char first = value.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            ++start;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (int i = start; i < end; ++i) {
+            char c = value.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return Double.NaN;
+            }
+            mantissa = 10 * mantissa + (c - '0');
+            ++digits;
+            if (fraction) {
+                ++fractionDigits;
+            }
+            if (digits > 15) {
+                // The fast path would not be exact anymore.
+                return parseDoubleSlow(value, start, end, negative);
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        // Both numbers are represented exactly, therefore the division is correctly rounded.
+        double result = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -result : result;
+    }
+
+    private static double parseDoubleSlow(String value, int start, int end, boolean negative) {
+        // only digits and at most one dot have been seen so far, check the rest of the token
+        int dots = 0;
+        for (int i = start; i < end; ++i) {
+            char c = value.charAt(i);
+            if (c == '.') {
+                ++dots;
+            } else if (c < '0' || c > '9') {
+                return Double.NaN;
+            }
+        }
+        if (dots > 1) {
+            return Double.NaN;
+        }
+        double result = Double.parseDouble(value.substring(start, end));
+        return negative ? -result : result;
+    }
+
+    private static int countTokens(String tagValue) {
+        int count = 1;
+        for (int i = tagValue.indexOf(SEPARATOR); i != -1; i = tagValue.indexOf(SEPARATOR, i + 1)) {
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Parse all integers of a tag value. Malformed tokens are skipped.
+     *
+     * @return null if the tag value is null or empty
+     */
+    public static int[] parseIntValues(String tagValue) {
+        if (tagValue == null || tagValue.isEmpty()) {
+            return null;
+        }
+        int[] result = new int[countTokens(tagValue)];
+        int count = 0;
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            long v = parseInt(tagValue, start, end);
+            if (v != INVALID_INT) {
+                result[count++] = (int) v;
+            }
+            start = end + 1;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Parse all decimal numbers of a tag value. Malformed tokens are skipped.
+     *
+     * @return null if the tag value is null or empty
+     */
+    public static double[] parseDoubleValues(String tagValue) {
+        if (tagValue == null || tagValue.isEmpty()) {
+            return null;
+        }
+        double[] result = new double[countTokens(tagValue)];
+        int count = 0;
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            double v = parseDouble(tagValue, start, end);
+            if (!Double.isNaN(v)) {
+                result[count++] = v;
+            }
+            start = end + 1;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Check if at least one of the parsed values of a tag is "permitted".
+     *
+     * @param values parsed values of the tag, null if the tag is not set
+     * @param sortedAcceptedValues sorted array of permitted values
+     * @param resultIfNull This will be returned if the tag is not set at all or sortedAcceptedValues is empty.
+     */
+    public static boolean containsAny(int[] values, int[] sortedAcceptedValues, boolean resultIfNull) {
+        if (values == null || sortedAcceptedValues.length == 0) {
+            return resultIfNull;
+        }
+        for (int v : values) {
+            if (Arrays.binarySearch(sortedAcceptedValues, v) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if at least one of the parsed values of a tag is "permitted".
+     *
+     * @param values parsed values of the tag, null if the tag is not set
+     * @param sortedAcceptedValues sorted array of permitted values
+     * @param resultIfNull This will be returned if the tag is not set at all or sortedAcceptedValues is empty.
+     */
+    public static boolean containsAny(double[] values, double[] sortedAcceptedValues, boolean resultIfNull) {
+        if (values == null || sortedAcceptedValues.length == 0) {
+            return resultIfNull;
+        }
+        for (double v : values) {
+            if (Arrays.binarySearch(sortedAcceptedValues, v) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a value of an OSM tag contains at least one "permitted" value.
+     *
+     * @param tagValue OSM tag value
+     * @param sortedAcceptedValues If one of these values is found, the method should return true. Must be sorted.
+     * @param resultIfNull This will be returned if the tag is not set at all or sortedAcceptedValues is empty.
+     */
+    public static boolean tagContainsInt(String tagValue, int[] sortedAcceptedValues, boolean resultIfNull) {
+        if (tagValue == null || sortedAcceptedValues.length == 0 || tagValue.isEmpty()) {
+            return resultIfNull;
+        }
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            long v = parseInt(tagValue, start, end);
+            if (v != INVALID_INT && Arrays.binarySearch(sortedAcceptedValues, (int) v) >= 0) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
     /**
      * Check if a value of an OSM tag contains at least one "permitted" value.
-     * 
+     *
      * @param tagValue OSM tag value
      * @param acceptedValues If one of these values is found, the method should return true.
-     * @param resultIfNull This will be returned if the tag is not set at all or acceptedValues is empty. 
+     * @param resultIfNull This will be returned if the tag is not set at all or acceptedValues is empty.
      */
-    public static boolean tagContainsInt(String tagValue, ArrayList<Integer> acceptedValues, boolean resultIfNull) {
-        if (tagValue == null || acceptedValues.isEmpty() || tagValue.equals("")) {
+    public static boolean tagContainsInt(String tagValue, IntSet acceptedValues, boolean resultIfNull) {
+        if (tagValue == null || acceptedValues.isEmpty() || tagValue.isEmpty()) {
             return resultIfNull;
         }
-        // check if string contains ;
-        if (!tagValue.contains(";")) {
-            try {
-                return acceptedValues.contains(Integer.parseInt(tagValue));
-            } catch (NumberFormatException e) {
-                return false;
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            long v = parseInt(tagValue, start, end);
+            if (v != INVALID_INT && acceptedValues.contains((int) v)) {
+                return true;
             }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a value of an OSM tag contains at least one "permitted" value.
+     *
+     * @param tagValue OSM tag value
+     * @param sortedAcceptedValues If one of these values is found, the method should return true. Must be sorted.
+     * @param resultIfNull This will be returned if the tag is not set at all or sortedAcceptedValues is empty.
+     */
+    public static boolean tagContainsDouble(String tagValue, double[] sortedAcceptedValues, boolean resultIfNull) {
+        if (tagValue == null || sortedAcceptedValues.length == 0 || tagValue.isEmpty()) {
+            return resultIfNull;
         }
-        // split at ;
-        String[] tokens = tagValue.split(";");
-        for (String t : tokens) {
-            try {
-                if (acceptedValues.contains(Integer.parseInt(t))) {
-                    return true;
-                }
-            } catch (NumberFormatException e) {
-                return false;
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            double v = parseDouble(tagValue, start, end);
+            if (!Double.isNaN(v) && Arrays.binarySearch(sortedAcceptedValues, v) >= 0) {
+                return true;
             }
+            start = end + 1;
         }
         return false;
     }
 
     /**
      * Check if a value of an OSM tag contains at least one "permitted" value.
-     * 
+     *
      * @param tagValue OSM tag value
      * @param acceptedValues If one of these values is found, the method should return true.
-     * @param resultIfNull This will be returned if the tag is not set at all or acceptedValues is empty. 
+     * @param resultIfNull This will be returned if the tag is not set at all or acceptedValues is empty.
      */
-    public static boolean tagContainsDouble(String tagValue, ArrayList<Double> acceptedValues, boolean resultIfNull) {
+    public static boolean tagContainsInt(String tagValue, ArrayList<Integer> acceptedValues, boolean resultIfNull) {
         if (tagValue == null || acceptedValues.isEmpty() || tagValue.equals("")) {
             return resultIfNull;
         }
-        // check if string contains ;
-        if (!tagValue.contains(";")) {
-            try {
-                return acceptedValues.contains(Double.parseDouble(tagValue));
-            } catch (NumberFormatException e) {
-                return false;
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            long v = parseInt(tagValue, start, end);
+            if (v != INVALID_INT && acceptedValues.contains((int) v)) {
+                return true;
             }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a value of an OSM tag contains at least one "permitted" value.
+     *
+     * @param tagValue OSM tag value
+     * @param acceptedValues If one of these values is found, the method should return true.
+     * @param resultIfNull This will be returned if the tag is not set at all or acceptedValues is empty.
+     */
+    public static boolean tagContainsDouble(String tagValue, ArrayList<Double> acceptedValues, boolean resultIfNull) {
+        if (tagValue == null || acceptedValues.isEmpty() || tagValue.equals("")) {
+            return resultIfNull;
         }
-        // split at ;
-        String[] tokens = tagValue.split(";");
-        for (String t : tokens) {
-            try {
-                if (acceptedValues.contains(Double.parseDouble(t))) {
-                    return true;
-                }
-            } catch (NumberFormatException e) {
-                return false;
+        for (int start = 0; start <= tagValue.length(); ) {
+            int end = tokenEnd(tagValue, start);
+            double v = parseDouble(tagValue, start, end);
+            if (!Double.isNaN(v) && acceptedValues.contains(v)) {
+                return true;
             }
+            start = end + 1;
         }
         return false;
     }
@@ -0,0 +1,205 @@
+package de.geofabrik.railway_routing.util;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+
+/**
+ * Read the nodes and ways of an OSM change file (.osc).
+ *
+ * Relations are skipped. If an object occurs multiple times in the file, the last occurrence
+ * wins because the versions are ordered in the change files of the OSM replication.
+ */
+public class OsmChangeReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    public enum Action {
+        CREATE, MODIFY, DELETE
+    }
+
+    /**
+     * The changes of one or more change files.
+     */
+    public static class OsmChange {
+        private final Map<Long, ReaderNode> nodes = new LinkedHashMap<Long, ReaderNode>();
+        private final Map<Long, Action> nodeActions = new LinkedHashMap<Long, Action>();
+        private final Map<Long, ReaderWay> ways = new LinkedHashMap<Long, ReaderWay>();
+        private final Map<Long, Action> wayActions = new LinkedHashMap<Long, Action>();
+
+        void add(Action action, ReaderElement element) {
+            if (element instanceof ReaderNode) {
+                nodes.put(element.getId(), (ReaderNode) element);
+                nodeActions.put(element.getId(), action);
+            } else if (element instanceof ReaderWay) {
+                ways.put(element.getId(), (ReaderWay) element);
+                wayActions.put(element.getId(), action);
+            }
+        }
+
+        /**
+         * Get the changed nodes by ID. Deleted nodes have no tags and their coordinates are NaN
+         * if the change file does not contain them.
+         */
+        public Map<Long, ReaderNode> getNodes() {
+            return nodes;
+        }
+
+        public Action getNodeAction(long id) {
+            return nodeActions.get(id);
+        }
+
+        /**
+         * Get the changed ways by ID. Deleted ways usually have neither tags nor nodes.
+         */
+        public Map<Long, ReaderWay> getWays() {
+            return ways;
+        }
+
+        public Action getWayAction(long id) {
+            return wayActions.get(id);
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static long parseId(XMLStreamReader reader, String attribute) {
+        String value = reader.getAttributeValue(null, attribute);
+        if (value == null) {
+            throw new IllegalArgumentException("Element " + reader.getLocalName() + " at line "
+                    + reader.getLocation().getLineNumber() + " has no " + attribute + " attribute.");
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Element " + reader.getLocalName() + " at line "
+                    + reader.getLocation().getLineNumber() + " has an invalid " + attribute + " attribute.");
+        }
+    }
+
+    private static double parseCoordinate(XMLStreamReader reader, String attribute) {
+        String value = reader.getAttributeValue(null, attribute);
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Node at line " + reader.getLocation().getLineNumber()
+                    + " has an invalid " + attribute + " attribute.");
+        }
+    }
+
+    private static Action parseAction(String name) {
+        switch (name) {
+        case "create":
+            return Action.CREATE;
+        case "modify":
+            return Action.MODIFY;
+        case "delete":
+            return Action.DELETE;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Read a change file and add its changes.
+     *
+     * @throws IllegalArgumentException if the document is not a valid OSM change file
+     */
+    public static void read(InputStream input, OsmChange change) {
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(input);
+            try {
+                read(reader, change);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid OSM change file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read a change file.
+     *
+     * @throws IllegalArgumentException if the document is not a valid OSM change file
+     */
+    public static OsmChange read(InputStream input) {
+        OsmChange change = new OsmChange();
+        read(input, change);
+        return change;
+    }
+
+    private static void read(XMLStreamReader reader, OsmChange change) throws XMLStreamException {
+        boolean root = true;
+        Action action = null;
+        ReaderElement element = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (element != null && (name.equals("node") || name.equals("way"))) {
+                    change.add(action, element);
+                    element = null;
+                } else if (parseAction(name) != null) {
+                    action = null;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = reader.getLocalName();
+            if (root) {
+                if (!name.equals("osmChange")) {
+                    throw new IllegalArgumentException("Expected root element osmChange but got " + name + ".");
+                }
+                root = false;
+                continue;
+            }
+            if (action == null) {
+                action = parseAction(name);
+                continue;
+            }
+            switch (name) {
+            case "node":
+                element = new ReaderNode(parseId(reader, "id"), parseCoordinate(reader, "lat"),
+                        parseCoordinate(reader, "lon"));
+                break;
+            case "way":
+                element = new ReaderWay(parseId(reader, "id"));
+                break;
+            case "nd":
+                if (element instanceof ReaderWay) {
+                    ((ReaderWay) element).getNodes().add(parseId(reader, "ref"));
+                }
+                break;
+            case "tag":
+                String key = reader.getAttributeValue(null, "k");
+                if (element != null && key != null) {
+                    element.setTag(key, reader.getAttributeValue(null, "v"));
+                }
+                break;
+            default:
+                // relations and their members
+                break;
+            }
+        }
+    }
+}
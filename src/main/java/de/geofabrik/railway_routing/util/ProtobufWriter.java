@@ -0,0 +1,132 @@
+package de.geofabrik.railway_routing.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Minimal writer of the Protocol Buffers wire format.
+ *
+ * Only the types needed by the binary responses are supported. The message is written into a
+ * growing byte array. Embedded messages and packed repeated fields are written into their own
+ * writer first because the wire format puts their length in front of them.
+ */
+public class ProtobufWriter {
+
+    static final int WIRE_TYPE_VARINT = 0;
+    static final int WIRE_TYPE_FIXED64 = 1;
+    static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    static final int WIRE_TYPE_FIXED32 = 5;
+
+    private byte[] buffer;
+    private int size = 0;
+
+    public ProtobufWriter() {
+        this(64);
+    }
+
+    public ProtobufWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + additional));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all content to reuse the writer.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Write an unsigned variable-length integer without field tag.
+     */
+    public void writeRawVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Write a signed variable-length integer without field tag (sint64).
+     */
+    public void writeRawSignedVarint(long value) {
+        writeRawVarint(encodeZigZag(value));
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeRawVarint((field << 3) | wireType);
+    }
+
+    /**
+     * Write an int32, int64, uint32, uint64 or bool field.
+     */
+    public void writeVarint(int field, long value) {
+        writeTag(field, WIRE_TYPE_VARINT);
+        writeRawVarint(value);
+    }
+
+    /**
+     * Write a sint32 or sint64 field.
+     */
+    public void writeSignedVarint(int field, long value) {
+        writeTag(field, WIRE_TYPE_VARINT);
+        writeRawSignedVarint(value);
+    }
+
+    public void writeDouble(int field, double value) {
+        writeTag(field, WIRE_TYPE_FIXED64);
+        ensureCapacity(8);
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; ++i) {
+            buffer[size++] = (byte) (bits >>> (8 * i));
+        }
+    }
+
+    public void writeFloat(int field, float value) {
+        writeTag(field, WIRE_TYPE_FIXED32);
+        ensureCapacity(4);
+        int bits = Float.floatToIntBits(value);
+        for (int i = 0; i < 4; ++i) {
+            buffer[size++] = (byte) (bits >>> (8 * i));
+        }
+    }
+
+    /**
+     * Write an embedded message or a packed repeated field whose content has been written to
+     * another writer. Empty content is skipped like empty repeated fields in proto3.
+     */
+    public void writeBytes(int field, ProtobufWriter content) {
+        if (content.size == 0) {
+            return;
+        }
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeRawVarint(content.size);
+        ensureCapacity(content.size);
+        System.arraycopy(content.buffer, 0, buffer, size, content.size);
+        size += content.size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(buffer, 0, size);
+    }
+}
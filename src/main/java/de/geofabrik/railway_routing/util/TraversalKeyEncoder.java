@@ -0,0 +1,75 @@
+package de.geofabrik.railway_routing.util;
+
+import java.util.Base64;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+/**
+ * Compact string encoding of traversal keys.
+ *
+ * Consecutive edges of an OSM way get consecutive edge IDs during the import. Therefore the
+ * difference between two consecutive traversal keys of a matched path is usually the same
+ * (e.g. +2) for many keys. The keys are encoded as pairs of the difference to the previous key
+ * (zigzag varint) and the number of consecutive keys with this difference (varint). The result
+ * is encoded as base64 without padding, using the URL and filename safe alphabet.
+ */
+public class TraversalKeyEncoder {
+
+    public static String encode(IntArrayList keys) {
+        ProtobufWriter writer = new ProtobufWriter(keys.size() + 16);
+        long last = 0;
+        int i = 0;
+        while (i < keys.size()) {
+            long delta = keys.get(i) - last;
+            int run = 1;
+            while (i + run < keys.size() && (long) keys.get(i + run) - keys.get(i + run - 1) == delta) {
+                ++run;
+            }
+            writer.writeRawSignedVarint(delta);
+            writer.writeRawVarint(run);
+            i += run;
+            last = keys.get(i - 1);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(writer.toByteArray());
+    }
+
+    /**
+     * Decode traversal keys.
+     *
+     * @throws IllegalArgumentException if the string is not a valid encoding
+     */
+    public static IntArrayList decode(String encoded) {
+        byte[] bytes = Base64.getUrlDecoder().decode(encoded);
+        IntArrayList keys = new IntArrayList();
+        long last = 0;
+        int[] pos = {0};
+        while (pos[0] < bytes.length) {
+            long zigZag = readVarint(bytes, pos);
+            long delta = (zigZag >>> 1) ^ -(zigZag & 1);
+            long run = readVarint(bytes, pos);
+            if (run < 1 || run > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid run length " + run);
+            }
+            for (long r = 0; r < run; ++r) {
+                last += delta;
+                keys.add((int) last);
+            }
+        }
+        return keys;
+    }
+
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated varint");
+            }
+            byte b = bytes[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
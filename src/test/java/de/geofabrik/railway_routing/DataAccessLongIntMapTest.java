@@ -0,0 +1,59 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.RAMDirectory;
+
+public class DataAccessLongIntMapTest {
+
+    private static DataAccessLongIntMap createMap(long expectedSize) {
+        return new DataAccessLongIntMap(new RAMDirectory(), "test_map", DAType.RAM, expectedSize, -1);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        DataAccessLongIntMap map = createMap(10);
+        assertEquals(-1, map.get(42));
+        assertEquals(-1, map.put(42, 7));
+        assertEquals(-1, map.put(-42, -3));
+        assertEquals(-1, map.put(0, 0));
+        assertEquals(7, map.get(42));
+        assertEquals(-3, map.get(-42));
+        assertEquals(0, map.get(0));
+        assertEquals(7, map.put(42, 8));
+        assertEquals(8, map.get(42));
+        assertEquals(3, map.getSize());
+        assertEquals(-1, map.get(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testGrow() {
+        DataAccessLongIntMap map = createMap(10);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; ++i) {
+            long key = random.nextInt(100000) * 1000003L;
+            int value = random.nextInt();
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.getSize());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((long) entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(-1, map.get(1));
+        map.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinValueKey() {
+        createMap(10).put(Long.MIN_VALUE, 1);
+    }
+}
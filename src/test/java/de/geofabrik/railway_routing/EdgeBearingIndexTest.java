@@ -0,0 +1,94 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+public class EdgeBearingIndexTest {
+    /** about one metre in degrees of latitude */
+    private static final double METRE = 1 / 111195.0;
+
+    private final AngleCalc angleCalc = new AngleCalc();
+
+    private double calcOrientation(PointList points, boolean fromEnd, double lookAhead) {
+        return EdgeBearingIndex.calcOrientation(points, fromEnd, lookAhead, Helper.DIST_PLANE, angleCalc);
+    }
+
+    /**
+     * Geometry of a switch: a short segment to the east, then 100 m to the north.
+     */
+    private static PointList createKinkedEdge() {
+        PointList points = new PointList(3, false);
+        points.add(0, 0);
+        points.add(0, 2 * METRE);
+        points.add(100 * METRE, 2 * METRE);
+        return points;
+    }
+
+    @Test
+    public void testLookAheadSkipsShortFirstSegment() {
+        PointList points = createKinkedEdge();
+        // The first segment points to the east, the look-ahead point is 28 m to the north.
+        assertEquals(0, calcOrientation(points, false, 1), 1e-6);
+        assertEquals(Math.atan2(28, 2), calcOrientation(points, false, 30), 1e-3);
+    }
+
+    @Test
+    public void testFromEnd() {
+        PointList points = createKinkedEdge();
+        // looking south from the last point
+        assertEquals(-Math.PI / 2, calcOrientation(points, true, 30), 1e-6);
+    }
+
+    @Test
+    public void testEdgeShorterThanLookAhead() {
+        PointList points = createKinkedEdge();
+        assertEquals(Math.atan2(100, 2), calcOrientation(points, false, 500), 1e-3);
+        assertEquals(Math.atan2(-100, -2), calcOrientation(points, true, 500), 1e-3);
+    }
+
+    @Test
+    public void testDuplicatePoints() {
+        PointList points = new PointList(3, false);
+        points.add(0, 0);
+        points.add(0, 0);
+        points.add(0, 50 * METRE);
+        assertEquals(0, calcOrientation(points, false, 30), 1e-6);
+        assertEquals(Math.PI, calcOrientation(points, true, 30), 1e-6);
+    }
+
+    @Test
+    public void testQuantize() {
+        double step = 2 * Math.PI / 256;
+        for (double orientation = -Math.PI; orientation <= Math.PI; orientation += 0.01) {
+            double decoded = EdgeBearingIndex.dequantize(EdgeBearingIndex.quantize(orientation));
+            // π and -π are the same direction
+            double diff = Math.abs(decoded - orientation) % (2 * Math.PI);
+            assertEquals(0, Math.min(diff, 2 * Math.PI - diff), step / 2 + 1e-9);
+        }
+        assertEquals(0, EdgeBearingIndex.quantize(0));
+        assertEquals(-Math.PI, EdgeBearingIndex.dequantize(EdgeBearingIndex.quantize(Math.PI)), 1e-9);
+    }
+
+    @Test
+    public void testHeading() {
+        assertEquals(90, EdgeBearingIndex.toHeading(0), 1e-9);
+        assertEquals(0, EdgeBearingIndex.toHeading(Math.PI / 2), 1e-9);
+        assertEquals(180, EdgeBearingIndex.toHeading(-Math.PI / 2), 1e-9);
+        assertEquals(270, EdgeBearingIndex.toHeading(Math.PI), 1e-9);
+        assertEquals(270, EdgeBearingIndex.toHeading(-Math.PI), 1e-9);
+    }
+
+    @Test
+    public void testUndirectedDifference() {
+        assertEquals(0, EdgeBearingIndex.getUndirectedDifference(10, 190), 1e-9);
+        assertEquals(20, EdgeBearingIndex.getUndirectedDifference(350, 10), 1e-9);
+        assertEquals(20, EdgeBearingIndex.getUndirectedDifference(170, 10), 1e-9);
+        assertEquals(90, EdgeBearingIndex.getUndirectedDifference(0, 270), 1e-9);
+        assertEquals(45, EdgeBearingIndex.getUndirectedDifference(45, 0), 1e-9);
+    }
+}
@@ -0,0 +1,105 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+public class HeadingFilterTest {
+    /** about one metre in degrees of latitude */
+    private static final double METRE = 1 / 111195.0;
+
+    /**
+     * Track running 100 m to the north, standing for two points and turning to the east.
+     */
+    private static PointList createTrack() {
+        PointList points = new PointList(5, false);
+        points.add(0, 0);
+        points.add(100 * METRE, 0);
+        points.add(100 * METRE, 0);
+        points.add(100 * METRE, 0);
+        points.add(100 * METRE, 100 * METRE);
+        return points;
+    }
+
+    @Test
+    public void testDerivedHeadings() {
+        double[] headings = HeadingFilter.calcHeadings(createTrack(), null, Helper.DIST_PLANE);
+        assertEquals(0, headings[0], 1e-6);
+        assertEquals(0, headings[1], 1e-6);
+        // neighbours at the same position
+        assertTrue(Double.isNaN(headings[2]));
+        assertEquals(90, headings[3], 1e-6);
+        assertEquals(90, headings[4], 1e-6);
+    }
+
+    @Test
+    public void testCourses() {
+        double[] courses = {Double.NaN, 10, 185};
+        double[] headings = HeadingFilter.calcHeadings(createTrack(), courses, Helper.DIST_PLANE);
+        assertEquals(0, headings[0], 1e-6);
+        assertEquals(10, headings[1], 1e-6);
+        assertEquals(185, headings[2], 1e-6);
+        assertEquals(90, headings[3], 1e-6);
+    }
+
+    @Test
+    public void testLookup() {
+        PointList points = createTrack();
+        HeadingFilter filter = new HeadingFilter(points, null, 30);
+        assertEquals(0, filter.getHeading(points.getLat(0), points.getLon(0)), 1e-6);
+        assertEquals(90, filter.getHeading(points.getLat(4), points.getLon(4)), 1e-6);
+        assertTrue(Double.isNaN(filter.getHeading(50 * METRE, 0)));
+        // track running south-west to north-east
+        assertTrue(filter.accepts(45, 20));
+        assertTrue(filter.accepts(225, 20));
+        assertFalse(filter.accepts(135, 20));
+    }
+
+    @Test
+    public void testRepeatedCoordinates() {
+        PointList points = createTrack();
+        HeadingFilter filter = new HeadingFilter(points, null, 30);
+        // the observations 1 to 3 are at the same coordinates
+        assertEquals(0, filter.getHeading(points.getLat(0), points.getLon(0)), 1e-6);
+        assertEquals(0, filter.getHeading(points.getLat(1), points.getLon(1)), 1e-6);
+        assertTrue(Double.isNaN(filter.getHeading(points.getLat(2), points.getLon(2))));
+        assertEquals(90, filter.getHeading(points.getLat(3), points.getLon(3)), 1e-6);
+        assertEquals(90, filter.getHeading(points.getLat(4), points.getLon(4)), 1e-6);
+
+        // The map matching skips observations close to their predecessor.
+        filter = new HeadingFilter(points, null, 30);
+        assertEquals(0, filter.getHeading(points.getLat(0), points.getLon(0)), 1e-6);
+        assertEquals(0, filter.getHeading(points.getLat(3), points.getLon(3)), 1e-6);
+        assertEquals(90, filter.getHeading(points.getLat(4), points.getLon(4)), 1e-6);
+    }
+
+    @Test
+    public void testTrackPassingTwice() {
+        PointList points = new PointList(3, false);
+        points.add(0, 0);
+        points.add(100 * METRE, 0);
+        points.add(0, 0);
+        double[] courses = {0, 90, 180};
+        HeadingFilter filter = new HeadingFilter(points, courses, 30);
+        assertEquals(0, filter.getHeading(0, 0), 1e-6);
+        assertEquals(90, filter.getHeading(100 * METRE, 0), 1e-6);
+        assertEquals(180, filter.getHeading(0, 0), 1e-6);
+    }
+
+    @Test
+    public void testCount() {
+        HeadingFilter filter = new HeadingFilter(createTrack(), null, 30);
+        filter.count(4, 2);
+        filter.count(3, 1);
+        filter.count(5, 5);
+        assertEquals(12, filter.getCandidates());
+        assertEquals(4, filter.getPruned());
+        assertEquals(4 * 3 + 3 * 5, filter.getTransitions());
+        assertEquals(2 * 1 + 1 * 5, filter.getKeptTransitions());
+    }
+}
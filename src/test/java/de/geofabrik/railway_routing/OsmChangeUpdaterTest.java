@@ -0,0 +1,164 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.EdgeIterator;
+
+import de.geofabrik.railway_routing.http.FlagEncoderConfiguration;
+import de.geofabrik.railway_routing.util.OsmChangeReader;
+import de.geofabrik.railway_routing.util.OsmChangeReader.OsmChange;
+
+public class OsmChangeUpdaterTest {
+    private static final String PROFILE = "freight_diesel";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RailwayHopper hopper;
+    private RailFlagEncoder encoder;
+
+    /**
+     * Import crossing.osm: way 100 (nodes 1, 2, 10, 3) is crossed by way 200 (nodes 4, 10, 5) at
+     * an angle of 30 degrees. Node 10 is not tagged as a railway crossing yet.
+     */
+    @Before
+    public void setUp() throws IOException {
+        File osmFile = new File(folder.getRoot(), "crossing.osm");
+        try (InputStream in = getClass().getResourceAsStream("crossing.osm")) {
+            Files.copy(in, osmFile.toPath());
+        }
+        File graph = new File(folder.getRoot(), "graph");
+        CmdArgs args = new CmdArgs();
+        args.put("datareader.file", osmFile.getPath());
+        args.put("graph.location", graph.getPath());
+        args.put("profiles", PROFILE);
+        args.put("prepare.ch.weightings", "no");
+        args.put("prepare.min_network_size", 0);
+        args.put("datareader.updatable", true);
+        hopper = new RailwayHopper(args, Collections.<FlagEncoderConfiguration>emptyList());
+        hopper.setGraphHopperLocation(graph.getPath());
+        hopper.importOrLoad();
+        encoder = (RailFlagEncoder) hopper.getEncodingManager().getEncoder(PROFILE);
+    }
+
+    @After
+    public void tearDown() {
+        hopper.close();
+    }
+
+    private int findTowerNode(double lat, double lon) {
+        QueryResult qr = hopper.getLocationIndex().findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+        assertEquals(QueryResult.Position.TOWER, qr.getSnappedPosition());
+        return qr.getClosestNode();
+    }
+
+    /**
+     * Get the edge of a way at a tower node which leaves it towards the east or the west.
+     */
+    private int findEdge(int node, long wayId, boolean east) {
+        GraphHopperStorage ghs = hopper.getGraphHopperStorage();
+        NodeAccess na = ghs.getNodeAccess();
+        EdgeIterator iter = ghs.createEdgeExplorer().setBaseNode(node);
+        while (iter.next()) {
+            if (hopper.getOsmWayIdIndex().getOsmWayId(iter.getEdge()) == wayId
+                    && (na.getLon(iter.getAdjNode()) > na.getLon(node)) == east) {
+                return iter.getEdge();
+            }
+        }
+        throw new AssertionError("way " + wayId + " has no edge at node " + node);
+    }
+
+    private double getSpeed(int edge) {
+        return hopper.getGraphHopperStorage().getEdgeIteratorState(edge, Integer.MIN_VALUE)
+                .get(encoder.getAverageSpeedEnc());
+    }
+
+    private boolean isForbidden(int fromEdge, int node, int toEdge) {
+        TurnCostExtension tcs = (TurnCostExtension) hopper.getGraphHopperStorage().getExtension();
+        return Double.isInfinite(encoder.getTurnCost(tcs.getTurnCostFlags(fromEdge, node, toEdge)));
+    }
+
+    private static InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGeometryIsComplete() {
+        assertTrue(hopper.getOsmWayIdIndex().hasCompleteGeometries());
+        // node 2 is on the straight line between 1 and 10 and would be removed by the simplification
+        int node10 = findTowerNode(49.0, 8.41);
+        int edge = findEdge(node10, 100, false);
+        assertEquals(3, hopper.getGraphHopperStorage().getEdgeIteratorState(edge, Integer.MIN_VALUE)
+                .fetchWayGeometry(3).getSize());
+    }
+
+    @Test
+    public void testApplyTagChanges() {
+        int node10 = findTowerNode(49.0, 8.41);
+        int west = findEdge(node10, 100, false);
+        int east = findEdge(node10, 100, true);
+        int branch = findEdge(node10, 200, true);
+        double branchSpeedBefore = getSpeed(branch);
+        // 90 % of maxspeed=60 in steps of five km/h
+        assertEquals(54, getSpeed(west), 5);
+        // Without a crossing tag node 10 is handled like a switch.
+        assertFalse(isForbidden(west, node10, branch));
+        assertFalse(isForbidden(west, node10, east));
+
+        String osc = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\" generator=\"test\">\n"
+                + "<modify>\n"
+                + "  <node id=\"10\" version=\"2\" lat=\"49.0000000\" lon=\"8.4100000\">\n"
+                + "    <tag k=\"railway\" v=\"railway_crossing\"/>\n"
+                + "  </node>\n"
+                + "  <way id=\"100\" version=\"2\">\n"
+                + "    <nd ref=\"1\"/>\n"
+                + "    <nd ref=\"2\"/>\n"
+                + "    <nd ref=\"10\"/>\n"
+                + "    <nd ref=\"3\"/>\n"
+                + "    <tag k=\"railway\" v=\"rail\"/>\n"
+                + "    <tag k=\"usage\" v=\"main\"/>\n"
+                + "    <tag k=\"maxspeed\" v=\"40\"/>\n"
+                + "    <tag k=\"gauge\" v=\"1435\"/>\n"
+                + "  </way>\n"
+                + "</modify>\n"
+                + "</osmChange>\n";
+        OsmChange change = OsmChangeReader.read(toStream(osc));
+        OsmChangeUpdater updater = new OsmChangeUpdater(hopper);
+        updater.apply(change);
+        assertEquals(0, updater.getUnsupportedChanges());
+        assertEquals(1, updater.getUpdatedWays());
+        assertEquals(2, updater.getUpdatedEdges());
+        assertEquals(1, updater.getChangedCrossings());
+
+        assertEquals(36, getSpeed(west), 5);
+        assertEquals(getSpeed(west), getSpeed(east), 1e-6);
+        assertEquals(branchSpeedBefore, getSpeed(branch), 1e-6);
+        assertTrue(hopper.getCrossingIndex().isCrossing(node10));
+        // Trains cannot change the track at a railway crossing.
+        assertTrue(isForbidden(west, node10, branch));
+        assertFalse(isForbidden(west, node10, east));
+    }
+}
@@ -131,6 +131,34 @@ public class RailFlagEncoderTest {
         assertTrue(encoder.hasCompatibleElectricity(way9));
     }
 
+    @Test
+    public void testElectricalCompatibilitySharedBetweenEncoders() {
+        PMap properties = new PMap();
+        properties.put("electrifiedValues", "contact_line");
+        properties.put("acceptedVoltages", "15000");
+        properties.put("acceptedFrequencies", "16.7");
+        properties.put("name", "test");
+        encoder.initFromProperties(properties);
+        RailFlagEncoder e2 = new RailFlagEncoder();
+        PMap properties2 = new PMap();
+        properties2.put("electrifiedValues", "contact_line");
+        properties2.put("acceptedVoltages", "25000");
+        properties2.put("acceptedFrequencies", "50");
+        properties2.put("name", "test2");
+        e2.initFromProperties(properties2);
+        // both encoders evaluate the same way object, the second one reuses the parsed tags
+        ReaderWay way1 = getElectrifiedWay("contact_line", "15000;25000", "16.7;50");
+        assertTrue(encoder.hasCompatibleElectricity(way1));
+        assertTrue(e2.hasCompatibleElectricity(way1));
+        ReaderWay way2 = getElectrifiedWay("contact_line", "15000", "16.7");
+        assertTrue(encoder.hasCompatibleElectricity(way2));
+        assertFalse(e2.hasCompatibleElectricity(way2));
+        // grounded section
+        ReaderWay way3 = getElectrifiedWay("contact_line", "0", "0");
+        assertTrue(encoder.hasCompatibleElectricity(way3));
+        assertTrue(e2.hasCompatibleElectricity(way3));
+    }
+
     @Test
     public void testElectricalCompatibilityDiesel() {
         PMap properties = new PMap();
@@ -218,4 +246,36 @@ public class RailFlagEncoderTest {
         way.setTag("railway", "rail");
         assertEquals(e.getAccess(way), EncodingManager.Access.WAY);
     }
+
+    @Test
+    public void testAttributesNotStoredInTags() {
+        PMap properties = new PMap();
+        properties.put("electrifiedValues", "contact_line");
+        properties.put("acceptedVoltages", "15000");
+        properties.put("acceptedFrequencies", "16.7");
+        properties.put("acceptedGauges", "1435");
+        properties.put("name", "test");
+        encoder.initFromProperties(properties);
+        ReaderWay way = getElectrifiedWay("contact_line", "15000", "16.7");
+        way.setTag("gauge", "1435");
+        int tagCount = way.getTags().size();
+        assertEquals(EncodingManager.Access.WAY, encoder.getAccess(way));
+        assertEquals(tagCount, way.getTags().size());
+        for (Object value : way.getTags().values()) {
+            assertTrue(value instanceof String);
+        }
+        // another way with the same ID must not reuse the attributes of the first one
+        ReaderWay other = getElectrifiedWay("contact_line", "25000", "50");
+        other.setTag("gauge", "1435");
+        assertEquals(EncodingManager.Access.CAN_SKIP, encoder.getAccess(other));
+    }
+
+    @Test
+    public void testTurnCostsInSeconds() {
+        RailFlagEncoder e = new RailFlagEncoder(5, 5, 3, "rail");
+        EncodingManager.create(e);
+        assertEquals(0, e.getTurnCost(e.getTurnFlags(false, 0)), 0);
+        assertEquals(2 * 240, e.getTurnCost(e.getTurnFlags(false, 2)), 0);
+        assertTrue(Double.isInfinite(e.getTurnCost(e.getTurnFlags(true, 0))));
+    }
 }
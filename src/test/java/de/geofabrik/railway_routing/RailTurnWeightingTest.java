@@ -0,0 +1,107 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.PMap;
+
+public class RailTurnWeightingTest {
+    /** about one metre in degrees of latitude */
+    private static final double METRE = 1 / 111195.0;
+
+    private RailFlagEncoder encoder;
+    private GraphHopperStorage ghs;
+    private TurnCostExtension tcs;
+
+    /**
+     * A switch and a railway crossing.
+     *
+     * <pre>
+     *                    2         6
+     *                   /          |
+     *   0 ------------ 1 --------- 3 ---- 4
+     *                              |
+     *                              5
+     * </pre>
+     *
+     * The diverging track 1-2 leaves the switch at node 1 towards the north-east. Node 3 is a
+     * railway crossing with the track 5-6.
+     */
+    @Before
+    public void setUp() {
+        encoder = new RailFlagEncoder(new PMap("name=rail|max_turn_costs=3"));
+        tcs = new TurnCostExtension();
+        ghs = new GraphHopperStorage(new RAMDirectory(), EncodingManager.create(encoder), false, tcs).create(100);
+        NodeAccess na = ghs.getNodeAccess();
+        na.setNode(0, 0, 0);
+        na.setNode(1, 0, 200 * METRE);
+        na.setNode(2, 40 * METRE, 400 * METRE);
+        na.setNode(3, 0, 600 * METRE);
+        na.setNode(4, 0, 800 * METRE);
+        na.setNode(5, -200 * METRE, 600 * METRE);
+        na.setNode(6, 200 * METRE, 600 * METRE);
+        ghs.edge(0, 1, 200, true);
+        ghs.edge(1, 3, 400, true);
+        ghs.edge(1, 2, 204, true);
+        ghs.edge(3, 4, 200, true);
+        ghs.edge(5, 3, 200, true);
+        ghs.edge(3, 6, 200, true);
+        CrossingIndex crossings = new CrossingIndex(new RAMDirectory()).create(4);
+        crossings.setCrossing(3);
+        TurnCostBuffer turnCosts = new TurnCostBuffer();
+        new SwitchHandler(ghs, ghs.getEncodingManager().fetchEdgeEncoders(), crossings)
+                .handleSwitches(ghs, 0, ghs.getNodes(), turnCosts);
+        turnCosts.writeTo(tcs);
+    }
+
+    private void assertSameTurnWeights(double uTurnCosts) {
+        TurnCostTable table = TurnCostTable.create(ghs, tcs);
+        RailTurnWeighting withoutTable = new RailTurnWeighting(new FastestWeighting(encoder), tcs, uTurnCosts);
+        RailTurnWeighting withTable = new RailTurnWeighting(new FastestWeighting(encoder), tcs, table, uTurnCosts);
+        EdgeExplorer explorer = ghs.createEdgeExplorer();
+        IntArrayList edges = new IntArrayList();
+        int turnsWithCosts = 0;
+        for (int node = 0; node < ghs.getNodes(); ++node) {
+            edges.clear();
+            edges.add(EdgeIterator.NO_EDGE);
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edges.add(iter.getEdge());
+            }
+            for (int i = 0; i < edges.size(); ++i) {
+                for (int j = 0; j < edges.size(); ++j) {
+                    double expected = withoutTable.calcTurnWeight(edges.get(i), node, edges.get(j));
+                    assertEquals("turn " + edges.get(i) + "-" + node + "-" + edges.get(j), expected,
+                            withTable.calcTurnWeight(edges.get(i), node, edges.get(j)), 1e-9);
+                    if (i != j && expected != 0) {
+                        ++turnsWithCosts;
+                    }
+                }
+            }
+        }
+        // the switch and the crossing have turn costs
+        assertTrue(turnsWithCosts > 0);
+    }
+
+    @Test
+    public void testSameWeightsWithUTurnCosts() {
+        assertSameTurnWeights(120);
+    }
+
+    @Test
+    public void testSameWeightsWithForbiddenUTurns() {
+        assertSameTurnWeights(-1);
+    }
+}
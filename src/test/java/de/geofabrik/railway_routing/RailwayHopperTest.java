@@ -0,0 +1,259 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.railway_routing.http.FlagEncoderConfiguration;
+
+public class RailwayHopperTest {
+    private static final String PROFILE = "freight_diesel";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Copy an OSM extract of the test resources into a new directory and get the settings to
+     * import it into this directory.
+     */
+    private CmdArgs createArgs(String name, String extract) throws IOException {
+        File directory = folder.newFolder(name);
+        File osmFile = new File(directory, extract);
+        try (InputStream in = getClass().getResourceAsStream(extract)) {
+            Files.copy(in, osmFile.toPath());
+        }
+        CmdArgs args = new CmdArgs();
+        args.put("datareader.file", osmFile.getPath());
+        args.put("graph.location", new File(directory, "graph").getPath());
+        args.put("profiles", PROFILE);
+        args.put("prepare.ch.weightings", "no");
+        args.put("prepare.min_network_size", 0);
+        return args;
+    }
+
+    /**
+     * Settings to import crossing.osm, a switch and a crossing of two tracks.
+     */
+    private CmdArgs createArgs(String name) throws IOException {
+        return createArgs(name, "crossing.osm");
+    }
+
+    /**
+     * Import the graph or load it if it has been imported before.
+     */
+    private static RailwayHopper importOrLoad(CmdArgs args) {
+        RailwayHopper hopper = new RailwayHopper(args, Collections.<FlagEncoderConfiguration>emptyList());
+        // several chunks even for this small graph
+        hopper.setTurnCostChunkSize(2);
+        hopper.setGraphHopperLocation(args.get("graph.location", ""));
+        hopper.importOrLoad();
+        return hopper;
+    }
+
+    private RailwayHopper importGraph(String name, int turnCostThreads) throws IOException {
+        CmdArgs args = createArgs(name);
+        args.put("prepare.turn_costs.threads", turnCostThreads);
+        return importOrLoad(args);
+    }
+
+    /**
+     * Assert that two graphs have the same turn costs and return the number of turns with costs.
+     */
+    private static int assertSameTurnCosts(GraphHopperStorage expectedGraph, GraphHopperStorage actualGraph) {
+        TurnCostExtension expected = (TurnCostExtension) expectedGraph.getExtension();
+        TurnCostExtension actual = (TurnCostExtension) actualGraph.getExtension();
+        EdgeExplorer explorer = expectedGraph.createEdgeExplorer();
+        IntArrayList edges = new IntArrayList();
+        int turnsWithCosts = 0;
+        for (int node = 0; node < expectedGraph.getNodes(); ++node) {
+            edges.clear();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edges.add(iter.getEdge());
+            }
+            for (int i = 0; i < edges.size(); ++i) {
+                for (int j = 0; j < edges.size(); ++j) {
+                    long flags = expected.getTurnCostFlags(edges.get(i), node, edges.get(j));
+                    assertEquals("turn " + edges.get(i) + "-" + node + "-" + edges.get(j), flags,
+                            actual.getTurnCostFlags(edges.get(i), node, edges.get(j)));
+                    if (flags != 0) {
+                        ++turnsWithCosts;
+                    }
+                }
+            }
+        }
+        return turnsWithCosts;
+    }
+
+    /**
+     * Assert that two imports have the same nodes, edges, crossings and turn costs.
+     */
+    private static void assertSameGraph(RailwayHopper expected, RailwayHopper actual) {
+        GraphHopperStorage expectedGraph = expected.getGraphHopperStorage();
+        GraphHopperStorage actualGraph = actual.getGraphHopperStorage();
+        assertEquals(expectedGraph.getNodes(), actualGraph.getNodes());
+        assertEquals(expectedGraph.getAllEdges().length(), actualGraph.getAllEdges().length());
+        NodeAccess expectedNodes = expectedGraph.getNodeAccess();
+        NodeAccess actualNodes = actualGraph.getNodeAccess();
+        assertEquals(expected.getCrossingIndex().getCrossingCount(), actual.getCrossingIndex().getCrossingCount());
+        for (int node = 0; node < expectedGraph.getNodes(); ++node) {
+            assertEquals("node " + node, expectedNodes.getLat(node), actualNodes.getLat(node), 1e-7);
+            assertEquals("node " + node, expectedNodes.getLon(node), actualNodes.getLon(node), 1e-7);
+            assertEquals("node " + node, expected.getCrossingIndex().isCrossing(node),
+                    actual.getCrossingIndex().isCrossing(node));
+        }
+        FlagEncoder encoder = expected.getEncodingManager().getEncoder(PROFILE);
+        AllEdgesIterator iter = expectedGraph.getAllEdges();
+        while (iter.next()) {
+            int edge = iter.getEdge();
+            EdgeIteratorState other = actualGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            String message = "edge " + edge;
+            assertEquals(message, iter.getBaseNode(), other.getBaseNode());
+            assertEquals(message, iter.getAdjNode(), other.getAdjNode());
+            assertEquals(message, iter.getDistance(), other.getDistance(), 1e-3);
+            assertEquals(message, iter.get(encoder.getAccessEnc()), other.get(encoder.getAccessEnc()));
+            assertEquals(message, iter.getReverse(encoder.getAccessEnc()), other.getReverse(encoder.getAccessEnc()));
+            assertEquals(message, iter.get(encoder.getAverageSpeedEnc()), other.get(encoder.getAverageSpeedEnc()),
+                    1e-6);
+            assertEquals(message, expected.getOsmWayIdIndex().getOsmWayId(edge),
+                    actual.getOsmWayIdIndex().getOsmWayId(edge));
+            PointList expectedPoints = iter.fetchWayGeometry(3);
+            PointList actualPoints = other.fetchWayGeometry(3);
+            assertEquals(message, expectedPoints.getSize(), actualPoints.getSize());
+            for (int i = 0; i < expectedPoints.getSize(); ++i) {
+                assertEquals(message, expectedPoints.getLat(i), actualPoints.getLat(i), 1e-7);
+                assertEquals(message, expectedPoints.getLon(i), actualPoints.getLon(i), 1e-7);
+            }
+        }
+        assertSameTurnCosts(expectedGraph, actualGraph);
+    }
+
+    @Test
+    public void testParallelTurnCostsMatchSequential() throws IOException {
+        RailwayHopper sequential = importGraph("sequential", 1);
+        RailwayHopper parallel = importGraph("parallel", 4);
+        try {
+            GraphHopperStorage ghs = sequential.getGraphHopperStorage();
+            assertEquals(ghs.getNodes(), parallel.getGraphHopperStorage().getNodes());
+            assertEquals(ghs.getAllEdges().length(), parallel.getGraphHopperStorage().getAllEdges().length());
+            int turnsWithCosts = assertSameTurnCosts(ghs, parallel.getGraphHopperStorage());
+            // the switch at node 3 and the intersection at node 10 have turn costs
+            assertTrue(turnsWithCosts > 0);
+        } finally {
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    private void assertPrefilteredImportMatches(String extract) throws IOException {
+        RailwayHopper direct = importOrLoad(createArgs("direct", extract));
+        CmdArgs args = createArgs("prefiltered", extract);
+        args.put("datareader.prefilter", true);
+        args.put("datareader.prefilter.threads", 1);
+        RailwayHopper prefiltered = importOrLoad(args);
+        try {
+            assertSameGraph(direct, prefiltered);
+            // the extract is deleted after the import
+            assertFalse(new File(args.get("graph.location", ""), "prefiltered.osm").exists());
+        } finally {
+            direct.close();
+            prefiltered.close();
+        }
+    }
+
+    /**
+     * The prefilter drops the road, the lone node and the multipolygon of crossing.osm but keeps
+     * the turn restriction and the route relation. The import of the extract has to give the same
+     * graph as the import of the complete file.
+     */
+    @Test
+    public void testPrefilteredImportMatchesDirectImport() throws IOException {
+        assertPrefilteredImportMatches("crossing.osm");
+    }
+
+    @Test
+    public void testPrefilteredImportKeepsCrossings() throws IOException {
+        assertPrefilteredImportMatches("subnetwork.osm");
+    }
+
+    @Test
+    public void testTurnCostTable() throws IOException {
+        CmdArgs args = createArgs("lookup_table");
+        args.put("routing.turn_costs.lookup_table", true);
+        RailwayHopper imported = importOrLoad(args);
+        try {
+            assertNotNull(imported.getTurnCostTable());
+            assertTrue(imported.getTurnCostTable().getSize() > 0);
+        } finally {
+            imported.close();
+        }
+        RailwayHopper loaded = importOrLoad(args);
+        try {
+            assertNotNull(loaded.getTurnCostTable());
+            assertEquals(imported.getTurnCostTable().getSize(), loaded.getTurnCostTable().getSize());
+        } finally {
+            loaded.close();
+        }
+    }
+
+    @Test
+    public void testCrossingsAfterSubnetworkRemoval() throws IOException {
+        CmdArgs args = createArgs("subnetwork", "subnetwork.osm");
+        args.put("prepare.min_network_size", 3);
+        importOrLoad(args).close();
+        RailwayHopper hopper = importOrLoad(args);
+        try {
+            // the isolated track has been removed
+            assertEquals(5, hopper.getGraphHopperStorage().getNodes());
+            assertEquals(1, hopper.getCrossingIndex().getCrossingCount());
+            QueryResult qr = hopper.getLocationIndex().findClosest(49.0, 8.41, EdgeFilter.ALL_EDGES);
+            assertEquals(QueryResult.Position.TOWER, qr.getSnappedPosition());
+            int crossing = qr.getClosestNode();
+            for (int node = 0; node < hopper.getGraphHopperStorage().getNodes(); ++node) {
+                assertEquals("node " + node, node == crossing, hopper.getCrossingIndex().isCrossing(node));
+            }
+        } finally {
+            hopper.close();
+        }
+    }
+
+    @Test
+    public void testSimplifiedGraphCannotBeUpdated() throws IOException {
+        RailwayHopper hopper = importOrLoad(createArgs("simplified"));
+        try {
+            assertFalse(hopper.getOsmWayIdIndex().hasCompleteGeometries());
+            new OsmChangeUpdater(hopper);
+            fail("graphs with simplified geometries must not be updated");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("datareader.updatable=true"));
+        } finally {
+            hopper.close();
+        }
+    }
+}
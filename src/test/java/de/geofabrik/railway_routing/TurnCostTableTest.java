@@ -0,0 +1,52 @@
+package de.geofabrik.railway_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TurnCostTableTest {
+
+    @Test
+    public void testPutAndGet() {
+        TurnCostTable table = new TurnCostTable(100, 50, 4);
+        table.put(1, 2, 3, 5);
+        table.put(3, 2, 1, 6);
+        // same edges at the other node of parallel edges
+        table.put(1, 7, 3, 8);
+        assertEquals(5, table.getTurnCostFlags(1, 2, 3));
+        assertEquals(6, table.getTurnCostFlags(3, 2, 1));
+        assertEquals(8, table.getTurnCostFlags(1, 7, 3));
+        assertEquals(0, table.getTurnCostFlags(1, 2, 4));
+        assertEquals(0, table.getTurnCostFlags(0, 0, 0));
+        table.put(1, 2, 3, 9);
+        assertEquals(9, table.getTurnCostFlags(1, 2, 3));
+        assertEquals(3, table.getSize());
+    }
+
+    @Test
+    public void testGrow() {
+        TurnCostTable table = new TurnCostTable(10000, 10000, 1);
+        for (int edge = 0; edge < 5000; ++edge) {
+            table.put(edge, edge / 2, edge + 1, edge + 1L << 32);
+        }
+        assertEquals(5000, table.getSize());
+        for (int edge = 0; edge < 5000; ++edge) {
+            assertEquals(edge + 1L << 32, table.getTurnCostFlags(edge, edge / 2, edge + 1));
+            assertEquals(0, table.getTurnCostFlags(edge + 1, edge / 2, edge));
+        }
+    }
+
+    @Test
+    public void testCovers() {
+        TurnCostTable table = new TurnCostTable(100, 50, 4);
+        assertTrue(table.covers(0, 0, 99));
+        assertTrue(table.covers(99, 49, 0));
+        // virtual edges and nodes of a query graph
+        assertFalse(table.covers(100, 10, 5));
+        assertFalse(table.covers(5, 10, 100));
+        assertFalse(table.covers(5, 50, 6));
+        assertFalse(table.covers(-1, 10, 5));
+    }
+}
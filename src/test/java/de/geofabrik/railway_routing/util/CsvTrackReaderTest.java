@@ -0,0 +1,118 @@
+package de.geofabrik.railway_routing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.graphhopper.util.PointList;
+
+public class CsvTrackReaderTest {
+
+    private static InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static PointList read(String content) throws IOException {
+        return new CsvTrackReader(',', '"').read(toStream(content));
+    }
+
+    private static void assertFails(String content, String expectedMessage) throws IOException {
+        try {
+            read(content);
+            fail("reading " + content + " should fail");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        PointList points = read("latitude,longitude\n49.0,8.4\n\n49.1,8.5\n");
+        assertEquals(2, points.size());
+        assertEquals(49.0, points.getLat(0), 1e-9);
+        assertEquals(8.4, points.getLon(0), 1e-9);
+        assertEquals(49.1, points.getLat(1), 1e-9);
+        assertEquals(8.5, points.getLon(1), 1e-9);
+    }
+
+    @Test
+    public void testHeaderOrderAndCase() throws IOException {
+        PointList points = read("Longitude,LATITUDE\r\n8.4,49.0\r\n");
+        assertEquals(1, points.size());
+        assertEquals(49.0, points.getLat(0), 1e-9);
+        assertEquals(8.4, points.getLon(0), 1e-9);
+    }
+
+    @Test
+    public void testQuotedSeparators() throws IOException {
+        PointList points = read("\"name, station\",\"latitude\",\"longitude\"\n"
+                + "\"Karlsruhe, Hbf\",\"48.9935\",\"8.4003\"\n"
+                + "\"\"\"Durlach\"\", Bf\",48.9983,8.4694\n");
+        assertEquals(2, points.size());
+        assertEquals(48.9935, points.getLat(0), 1e-9);
+        assertEquals(8.4003, points.getLon(0), 1e-9);
+        assertEquals(48.9983, points.getLat(1), 1e-9);
+        assertEquals(8.4694, points.getLon(1), 1e-9);
+    }
+
+    @Test
+    public void testOtherSeparatorAndQuote() throws IOException {
+        PointList points = new CsvTrackReader(';', '\'').read(toStream(
+                "'time;zone';latitude;longitude\n'12:00;UTC';49.0;8.4\n"));
+        assertEquals(1, points.size());
+        assertEquals(49.0, points.getLat(0), 1e-9);
+        assertEquals(8.4, points.getLon(0), 1e-9);
+    }
+
+    @Test
+    public void testByteOrderMark() throws IOException {
+        PointList points = read("\uFEFFlatitude,longitude\n49.0,8.4\n");
+        assertEquals(1, points.size());
+        assertEquals(49.0, points.getLat(0), 1e-9);
+    }
+
+    @Test
+    public void testExtraColumns() throws IOException {
+        PointList points = read("latitude,longitude,speed\n49.0,8.4,80,extra\n49.1,8.5\n");
+        assertEquals(2, points.size());
+        assertEquals(8.4, points.getLon(0), 1e-9);
+        assertEquals(8.5, points.getLon(1), 1e-9);
+    }
+
+    @Test
+    public void testExponentNumbers() throws IOException {
+        PointList points = read("latitude,longitude\n4.9E1,8.4e0\n-4.9e+1,84E-1\n");
+        assertEquals(2, points.size());
+        assertEquals(49.0, points.getLat(0), 1e-9);
+        assertEquals(8.4, points.getLon(0), 1e-9);
+        assertEquals(-49.0, points.getLat(1), 1e-9);
+        assertEquals(8.4, points.getLon(1), 1e-9);
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException {
+        assertFails("", "empty");
+    }
+
+    @Test
+    public void testMissingHeaderColumn() throws IOException {
+        assertFails("lat,longitude\n49.0,8.4\n", "latitude");
+    }
+
+    @Test
+    public void testMissingColumns() throws IOException {
+        assertFails("latitude,longitude\n49.0,8.4\n49.1\n", "too few columns");
+    }
+
+    @Test
+    public void testInvalidCoordinate() throws IOException {
+        assertFails("latitude,longitude\n49.0,east\n", "invalid longitude");
+    }
+}
@@ -0,0 +1,86 @@
+package de.geofabrik.railway_routing.util;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FixedPointFormatTest {
+
+    private static String formatDouble(double value, int decimals) {
+        byte[] buffer = new byte[FixedPointFormat.MAX_LENGTH];
+        int length = FixedPointFormat.formatDouble(value, decimals, buffer, 0);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static String formatLong(long value) {
+        byte[] buffer = new byte[FixedPointFormat.MAX_LENGTH];
+        int length = FixedPointFormat.formatLong(value, buffer, 0);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testCoordinates() {
+        assertEquals("13.4", formatDouble(13.4, 7));
+        assertEquals("52.5200066", formatDouble(52.5200066, 7));
+        assertEquals("-0.1278", formatDouble(-0.1278, 7));
+        assertEquals("179.9999999", formatDouble(179.9999999, 7));
+        assertEquals("-180.0", formatDouble(-180, 7));
+    }
+
+    @Test
+    public void testRounding() {
+        assertEquals("1.2345679", formatDouble(1.23456789, 7));
+        assertEquals("10.0", formatDouble(9.99999999, 7));
+        assertEquals("0.001", formatDouble(0.0005, 3));
+    }
+
+    @Test
+    public void testZero() {
+        assertEquals("0.0", formatDouble(0, 7));
+        // no negative zero
+        assertEquals("0.0", formatDouble(-0.00000001, 7));
+        assertEquals("0.0", formatDouble(-0.0, 3));
+    }
+
+    @Test
+    public void testSpecialValues() {
+        assertEquals("NaN", formatDouble(Double.NaN, 7));
+        assertEquals("Infinity", formatDouble(Double.POSITIVE_INFINITY, 7));
+        assertEquals("-Infinity", formatDouble(Double.NEGATIVE_INFINITY, 7));
+        assertEquals(Double.toString(1e20), formatDouble(1e20, 3));
+    }
+
+    @Test
+    public void testLikeBigDecimal() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            double value = (random.nextDouble() - 0.5) * 360;
+            double expected = new BigDecimal(value).setScale(7, RoundingMode.HALF_UP).doubleValue();
+            // The scaled value is rounded in binary floating point, allow one unit of the last digit.
+            assertEquals(expected, Double.parseDouble(formatDouble(value, 7)), 1.01e-7);
+        }
+    }
+
+    @Test
+    public void testLong() {
+        assertEquals("0", formatLong(0));
+        assertEquals("7", formatLong(7));
+        assertEquals("-1234567890123", formatLong(-1234567890123L));
+        assertEquals(Long.toString(Long.MAX_VALUE), formatLong(Long.MAX_VALUE));
+        assertEquals(Long.toString(Long.MIN_VALUE), formatLong(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testPosition() {
+        byte[] buffer = new byte[2 * FixedPointFormat.MAX_LENGTH];
+        int pos = FixedPointFormat.formatDouble(13.4, 7, buffer, 0);
+        buffer[pos++] = ';';
+        pos = FixedPointFormat.formatLong(42, buffer, pos);
+        assertEquals("13.4;42", new String(buffer, 0, pos, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,124 @@
+package de.geofabrik.railway_routing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.geofabrik.railway_routing.util.GpxTrackReader.Track;
+
+public class GpxTrackReaderTest {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<gpx version=\"1.0\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/0\">\n";
+    private static final String FOOTER = "</gpx>\n";
+
+    private static InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Track> read(String body) {
+        return GpxTrackReader.read(toStream(HEADER + body + FOOTER));
+    }
+
+    private static void assertFails(String content, String expectedMessage) {
+        try {
+            GpxTrackReader.read(toStream(content));
+            fail("reading " + content + " should fail");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+
+    @Test
+    public void testMultipleTracksAndSegments() {
+        List<Track> tracks = read("<trk>\n"
+                + "  <name>first</name>\n"
+                + "  <trkseg>\n"
+                + "    <trkpt lat=\"49.0\" lon=\"8.4\"><ele>115</ele><time>2019-01-01T12:00:00Z</time></trkpt>\n"
+                + "    <trkpt lat=\"49.1\" lon=\"8.5\"/>\n"
+                + "  </trkseg>\n"
+                + "  <trkseg>\n"
+                + "    <trkpt lat=\"49.2\" lon=\"8.6\"/>\n"
+                + "  </trkseg>\n"
+                + "</trk>\n"
+                + "<trk>\n"
+                + "  <trkseg><trkpt lat=\"4.8E1\" lon=\"7.5e0\"/></trkseg>\n"
+                + "</trk>\n");
+        assertEquals(2, tracks.size());
+        Track first = tracks.get(0);
+        assertEquals("first", first.getName());
+        assertEquals(3, first.getPoints().size());
+        assertEquals(49.0, first.getPoints().getLat(0), 1e-9);
+        assertEquals(8.4, first.getPoints().getLon(0), 1e-9);
+        assertEquals(49.2, first.getPoints().getLat(2), 1e-9);
+        assertEquals(8.6, first.getPoints().getLon(2), 1e-9);
+        assertNull(first.getCourses());
+        Track second = tracks.get(1);
+        assertNull(second.getName());
+        assertEquals(1, second.getPoints().size());
+        assertEquals(48.0, second.getPoints().getLat(0), 1e-9);
+        assertEquals(7.5, second.getPoints().getLon(0), 1e-9);
+    }
+
+    @Test
+    public void testCourses() {
+        List<Track> tracks = read("<trk><trkseg>\n"
+                + "  <trkpt lat=\"49.0\" lon=\"8.4\"><course>90.5</course></trkpt>\n"
+                + "  <trkpt lat=\"49.1\" lon=\"8.5\"/>\n"
+                + "  <trkpt lat=\"49.2\" lon=\"8.6\"><course>north</course></trkpt>\n"
+                + "  <trkpt lat=\"49.3\" lon=\"8.7\"><extensions><course>10</course></extensions></trkpt>\n"
+                + "</trkseg></trk>\n");
+        assertEquals(1, tracks.size());
+        double[] courses = tracks.get(0).getCourses();
+        assertEquals(4, courses.length);
+        assertEquals(90.5, courses[0], 1e-9);
+        // no course, an invalid course and a course in an extension are ignored
+        assertTrue(Double.isNaN(courses[1]));
+        assertTrue(Double.isNaN(courses[2]));
+        assertTrue(Double.isNaN(courses[3]));
+    }
+
+    @Test
+    public void testNestedNames() {
+        List<Track> tracks = read("<metadata><name>document</name></metadata>\n"
+                + "<wpt lat=\"48.0\" lon=\"8.0\"><name>waypoint</name></wpt>\n"
+                + "<trk>\n"
+                + "  <trkseg>\n"
+                + "    <trkpt lat=\"49.0\" lon=\"8.4\"><name>point</name></trkpt>\n"
+                + "  </trkseg>\n"
+                + "  <name>track</name>\n"
+                + "</trk>\n");
+        assertEquals(1, tracks.size());
+        assertEquals("track", tracks.get(0).getName());
+        // waypoints do not belong to a track
+        assertEquals(1, tracks.get(0).getPoints().size());
+    }
+
+    @Test
+    public void testNoTracks() {
+        assertTrue(read("<wpt lat=\"48.0\" lon=\"8.0\"/>\n").isEmpty());
+    }
+
+    @Test
+    public void testMalformedXml() {
+        assertFails(HEADER + "<trk><trkseg><trkpt lat=\"49.0\" lon=\"8.4\"></trkseg></trk>" + FOOTER,
+                "Failed to parse GPX data stream");
+        assertFails(HEADER + "<trk><trkseg><trkpt lat=\"49.0\" lon=\"8.4\"/>", "Failed to parse GPX data stream");
+        assertFails("", "Failed to parse GPX data stream");
+    }
+
+    @Test
+    public void testInvalidCoordinates() {
+        assertFails(HEADER + "<trk><trkseg><trkpt lon=\"8.4\"/></trkseg></trk>" + FOOTER, "no lat attribute");
+        assertFails(HEADER + "<trk><trkseg><trkpt lat=\"49.0\" lon=\"east\"/></trkseg></trk>" + FOOTER,
+                "invalid lon attribute");
+    }
+}
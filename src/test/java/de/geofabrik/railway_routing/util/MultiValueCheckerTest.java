@@ -3,10 +3,13 @@ package de.geofabrik.railway_routing.util;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.carrotsearch.hppc.IntHashSet;
+
 public class MultiValueCheckerTest {
 
     private ArrayList<Integer> permittedInt;
@@ -87,4 +90,89 @@ public class MultiValueCheckerTest {
         assertFalse(MultiValueChecker.tagContainsDouble(tagValue, permittedDouble, false));
     }
 
+    @Test
+    public void testMalformedTokenIsSkipped() {
+        permittedInt.add(1435);
+        permittedDouble.add(16.7);
+        assertTrue(MultiValueChecker.tagContainsInt("unknown;1435", permittedInt, false));
+        assertTrue(MultiValueChecker.tagContainsInt("1000;;1435", permittedInt, false));
+        assertFalse(MultiValueChecker.tagContainsInt("1435mm", permittedInt, true));
+        assertTrue(MultiValueChecker.tagContainsDouble("50Hz;16.7", permittedDouble, false));
+        assertFalse(MultiValueChecker.tagContainsDouble("16.7.1", permittedDouble, true));
+        assertArrayEquals(new int[]{1000, 1435}, MultiValueChecker.parseIntValues("1000;narrow;1435"));
+        assertArrayEquals(new int[0], MultiValueChecker.parseIntValues("yes"));
+        assertNull(MultiValueChecker.parseIntValues(""));
+    }
+
+    @Test
+    public void testWhitespaceAroundTokens() {
+        assertArrayEquals(new int[]{15000, 25000}, MultiValueChecker.parseIntValues("15000; 25000 "));
+        assertArrayEquals(new double[]{16.7, 50}, MultiValueChecker.parseDoubleValues(" 16.7 ;50"), 0);
+    }
+
+    @Test
+    public void testParseIntLikeJdk() {
+        String[] values = {"0", "1435", "-750", "+3000", "2147483647", "-2147483648", "2147483648",
+                "-2147483649", "99999999999", "1,5", "1.0", "-", "+", "abc", "0x10"};
+        for (String v : values) {
+            long expected;
+            try {
+                expected = Integer.parseInt(v);
+            } catch (NumberFormatException e) {
+                expected = MultiValueChecker.INVALID_INT;
+            }
+            assertEquals(v, expected, MultiValueChecker.parseInt(v, 0, v.length()));
+        }
+    }
+
+    @Test
+    public void testParseDoubleLikeJdk() {
+        String[] values = {"0", "16.7", "16.67", "50", "25.0", "-16.7", "+50", ".5", "5.", "0.1",
+                "3.141592653589793", "1234567890.1234567890123"};
+        for (String v : values) {
+            assertEquals(v, Double.parseDouble(v), MultiValueChecker.parseDouble(v, 0, v.length()), 0);
+        }
+        String[] malformed = {"", ".", "-", "1,5", "16.7.1", "1e3", "NaN", "Infinity", "50Hz"};
+        for (String v : malformed) {
+            assertTrue(v, Double.isNaN(MultiValueChecker.parseDouble(v, 0, v.length())));
+        }
+    }
+
+    @Test
+    public void testPrimitiveAndListVariantsAgree() {
+        String[] values = {null, "", "1435", "1000;1435", "1435;1668", "762", "15000", "25000;15000",
+                "3000;1500", "750", "600;750", "yes", "1435;x"};
+        int[] sorted = {750, 1435, 3000, 15000};
+        IntHashSet set = new IntHashSet();
+        for (int v : sorted) {
+            set.add(v);
+            permittedInt.add(v);
+        }
+        for (String v : values) {
+            for (boolean resultIfNull : new boolean[]{true, false}) {
+                boolean expected = MultiValueChecker.tagContainsInt(v, permittedInt, resultIfNull);
+                assertEquals(v, expected, MultiValueChecker.tagContainsInt(v, sorted, resultIfNull));
+                assertEquals(v, expected, MultiValueChecker.tagContainsInt(v, set, resultIfNull));
+                assertEquals(v, expected, MultiValueChecker.containsAny(MultiValueChecker.parseIntValues(v), sorted, resultIfNull));
+            }
+        }
+    }
+
+    @Test
+    public void testPrimitiveAndListVariantsAgreeDouble() {
+        String[] values = {null, "", "16.7", "16.67", "50", "16.7;50", "0", "60", "25;50", "dc"};
+        double[] sorted = {0, 16.7, 50};
+        for (double v : sorted) {
+            permittedDouble.add(v);
+        }
+        Arrays.sort(sorted);
+        for (String v : values) {
+            for (boolean resultIfNull : new boolean[]{true, false}) {
+                boolean expected = MultiValueChecker.tagContainsDouble(v, permittedDouble, resultIfNull);
+                assertEquals(v, expected, MultiValueChecker.tagContainsDouble(v, sorted, resultIfNull));
+                assertEquals(v, expected, MultiValueChecker.containsAny(MultiValueChecker.parseDoubleValues(v), sorted, resultIfNull));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,91 @@
+package de.geofabrik.railway_routing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+
+import de.geofabrik.railway_routing.util.OsmChangeReader.Action;
+import de.geofabrik.railway_routing.util.OsmChangeReader.OsmChange;
+
+public class OsmChangeReaderTest {
+
+    private static InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadChange() {
+        String osc = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<osmChange version=\"0.6\" generator=\"test\">\n"
+                + "<modify>\n"
+                + "  <node id=\"1\" version=\"2\" lat=\"49.01\" lon=\"8.4\">\n"
+                + "    <tag k=\"railway\" v=\"railway_crossing\"/>\n"
+                + "  </node>\n"
+                + "  <way id=\"10\" version=\"3\">\n"
+                + "    <nd ref=\"1\"/>\n"
+                + "    <nd ref=\"2\"/>\n"
+                + "    <nd ref=\"3\"/>\n"
+                + "    <tag k=\"railway\" v=\"rail\"/>\n"
+                + "    <tag k=\"maxspeed\" v=\"120\"/>\n"
+                + "  </way>\n"
+                + "</modify>\n"
+                + "<delete>\n"
+                + "  <way id=\"11\" version=\"4\"/>\n"
+                + "  <relation id=\"5\" version=\"2\"><member type=\"way\" ref=\"10\" role=\"\"/></relation>\n"
+                + "</delete>\n"
+                + "<create>\n"
+                + "  <node id=\"4\" version=\"1\" lat=\"49.02\" lon=\"8.5\"/>\n"
+                + "</create>\n"
+                + "</osmChange>\n";
+        OsmChange change = OsmChangeReader.read(toStream(osc));
+        assertEquals(2, change.getNodes().size());
+        ReaderNode node = change.getNodes().get(1L);
+        assertEquals(49.01, node.getLat(), 1e-9);
+        assertEquals(8.4, node.getLon(), 1e-9);
+        assertTrue(node.hasTag("railway", "railway_crossing"));
+        assertEquals(Action.MODIFY, change.getNodeAction(1));
+        assertEquals(Action.CREATE, change.getNodeAction(4));
+
+        assertEquals(2, change.getWays().size());
+        ReaderWay way = change.getWays().get(10L);
+        assertEquals(3, way.getNodes().size());
+        assertEquals(3, way.getNodes().get(2));
+        assertEquals("120", way.getTag("maxspeed"));
+        assertEquals(Action.MODIFY, change.getWayAction(10));
+        assertEquals(Action.DELETE, change.getWayAction(11));
+        assertNull(change.getWayAction(5));
+    }
+
+    @Test
+    public void testLastVersionWins() {
+        String first = "<osmChange version=\"0.6\"><create><way id=\"7\"><nd ref=\"1\"/><nd ref=\"2\"/>"
+                + "<tag k=\"railway\" v=\"construction\"/></way></create></osmChange>";
+        String second = "<osmChange version=\"0.6\"><modify><way id=\"7\"><nd ref=\"1\"/><nd ref=\"2\"/>"
+                + "<tag k=\"railway\" v=\"rail\"/></way></modify></osmChange>";
+        OsmChange change = new OsmChange();
+        OsmChangeReader.read(toStream(first), change);
+        OsmChangeReader.read(toStream(second), change);
+        assertEquals(1, change.getWays().size());
+        assertEquals("rail", change.getWays().get(7L).getTag("railway"));
+        assertEquals(Action.MODIFY, change.getWayAction(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongRootElement() {
+        OsmChangeReader.read(toStream("<osm version=\"0.6\"><node id=\"1\" lat=\"1\" lon=\"2\"/></osm>"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedXml() {
+        OsmChangeReader.read(toStream("<osmChange version=\"0.6\"><modify><way id=\"1\"></modify>"));
+    }
+}
@@ -0,0 +1,86 @@
+package de.geofabrik.railway_routing.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ProtobufWriterTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void testVarint() {
+        // example from the Protocol Buffers encoding documentation
+        ProtobufWriter writer = new ProtobufWriter();
+        writer.writeVarint(1, 150);
+        assertArrayEquals(bytes(0x08, 0x96, 0x01), writer.toByteArray());
+    }
+
+    @Test
+    public void testNegativeVarintUsesTenBytes() {
+        ProtobufWriter writer = new ProtobufWriter();
+        writer.writeRawVarint(-1);
+        assertArrayEquals(bytes(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01), writer.toByteArray());
+    }
+
+    @Test
+    public void testZigZag() {
+        assertEquals(0, ProtobufWriter.encodeZigZag(0));
+        assertEquals(1, ProtobufWriter.encodeZigZag(-1));
+        assertEquals(2, ProtobufWriter.encodeZigZag(1));
+        assertEquals(3, ProtobufWriter.encodeZigZag(-2));
+        assertEquals(4294967294L, ProtobufWriter.encodeZigZag(2147483647));
+        assertEquals(-1L, ProtobufWriter.encodeZigZag(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testSignedVarint() {
+        ProtobufWriter writer = new ProtobufWriter();
+        writer.writeSignedVarint(2, -64);
+        assertArrayEquals(bytes(0x10, 0x7F), writer.toByteArray());
+    }
+
+    @Test
+    public void testFixed() {
+        ProtobufWriter writer = new ProtobufWriter();
+        writer.writeDouble(1, 1.0);
+        writer.writeFloat(2, 1.0f);
+        assertArrayEquals(bytes(0x09, 0, 0, 0, 0, 0, 0, 0xF0, 0x3F, 0x15, 0, 0, 0x80, 0x3F), writer.toByteArray());
+    }
+
+    @Test
+    public void testPackedField() {
+        // example from the Protocol Buffers encoding documentation
+        ProtobufWriter packed = new ProtobufWriter();
+        packed.writeRawVarint(3);
+        packed.writeRawVarint(270);
+        packed.writeRawVarint(86942);
+        ProtobufWriter writer = new ProtobufWriter();
+        writer.writeBytes(4, packed);
+        assertArrayEquals(bytes(0x22, 0x06, 0x03, 0x8E, 0x02, 0x9E, 0xA7, 0x05), writer.toByteArray());
+    }
+
+    @Test
+    public void testEmptyFieldIsSkipped() {
+        ProtobufWriter writer = new ProtobufWriter();
+        writer.writeBytes(4, new ProtobufWriter());
+        assertEquals(0, writer.size());
+    }
+
+    @Test
+    public void testGrowth() {
+        ProtobufWriter writer = new ProtobufWriter(1);
+        for (int i = 0; i < 1000; ++i) {
+            writer.writeRawVarint(300);
+        }
+        assertEquals(2000, writer.size());
+        writer.clear();
+        assertEquals(0, writer.size());
+    }
+}
@@ -0,0 +1,62 @@
+package de.geofabrik.railway_routing.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+public class TraversalKeyEncoderTest {
+
+    private static void assertRoundTrip(IntArrayList keys) {
+        IntArrayList decoded = TraversalKeyEncoder.decode(TraversalKeyEncoder.encode(keys));
+        assertEquals(keys, decoded);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals("", TraversalKeyEncoder.encode(new IntArrayList()));
+        assertRoundTrip(new IntArrayList());
+    }
+
+    @Test
+    public void testEdgesOfOneWay() {
+        IntArrayList keys = new IntArrayList();
+        for (int i = 0; i < 100; ++i) {
+            keys.add(2 * (500 + i));
+        }
+        assertRoundTrip(keys);
+        // (1000, 1), (2, 99) need five bytes
+        assertEquals(5, TraversalKeyEncoder.encode(keys).length() * 3 / 4);
+    }
+
+    @Test
+    public void testReverseDirection() {
+        assertRoundTrip(IntArrayList.from(201, 199, 197, 195, 4, 6, 8, 3));
+    }
+
+    @Test
+    public void testExtremeValues() {
+        assertRoundTrip(IntArrayList.from(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE - 1, 1));
+    }
+
+    @Test
+    public void testRandomKeys() {
+        Random random = new Random(42);
+        IntArrayList keys = new IntArrayList();
+        int key = 0;
+        for (int i = 0; i < 10000; ++i) {
+            key = random.nextInt(10) == 0 ? random.nextInt(Integer.MAX_VALUE) : key + 2;
+            keys.add(key);
+        }
+        assertRoundTrip(keys);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedInput() {
+        // varint with continuation bit but no further byte
+        TraversalKeyEncoder.decode("gA");
+    }
+}